@@ -20,6 +20,7 @@ public class LoginActivity extends AppCompatActivity {
     @BindView(R.id.sip_account) EditText mAccount;
     @BindView(R.id.sip_password) EditText mPassword;
     @BindView(R.id.sip_server) EditText mServer;
+    private RegistrationCallback mRegistrationCallback;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -29,7 +30,7 @@ public class LoginActivity extends AppCompatActivity {
 
         if (!LinphoneService.isReady()) {
             EasyLinphone.startService(this);
-            EasyLinphone.addCallback(new RegistrationCallback() {
+            mRegistrationCallback = new RegistrationCallback() {
                 @Override
                 public void registrationOk() {
                     super.registrationOk();
@@ -44,12 +45,19 @@ public class LoginActivity extends AppCompatActivity {
                     Log.e(TAG, "registrationFailed: ");
                     Toast.makeText(LoginActivity.this, "登录失败！", Toast.LENGTH_SHORT).show();
                 }
-            }, null);
+            };
+            EasyLinphone.addCallback(mRegistrationCallback, null);
         } else {
             goToMainActivity();
         }
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        EasyLinphone.removeCallback(mRegistrationCallback, null);
+    }
+
     @OnClick(R.id.press_login)
     public void login() {
         String account = mAccount.getText().toString();
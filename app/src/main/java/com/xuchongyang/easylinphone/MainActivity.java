@@ -12,8 +12,8 @@ import android.widget.EditText;
 
 import com.xuchongyang.easyphone.EasyLinphone;
 import com.xuchongyang.easyphone.callback.PhoneCallback;
-
-import org.linphone.core.LinphoneCall;
+import com.xuchongyang.easyphone.callback.ResultCallback;
+import com.xuchongyang.easyphone.linphone.CallSession;
 
 import butterknife.BindView;
 import butterknife.ButterKnife;
@@ -26,6 +26,8 @@ public class MainActivity extends AppCompatActivity {
     @BindView(R.id.accept_call) Button mCallIn;
     @BindView(R.id.toggle_speaker) Button mToggleSpeaker;
     @BindView(R.id.toggle_mute) Button mToggleMute;
+    private PhoneCallback mPhoneCallback;
+    private String mIncomingCallId;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -33,10 +35,11 @@ public class MainActivity extends AppCompatActivity {
         setContentView(R.layout.activity_main);
         ButterKnife.bind(this);
 
-        EasyLinphone.addCallback(null, new PhoneCallback() {
+        mPhoneCallback = new PhoneCallback() {
             @Override
-            public void incomingCall(LinphoneCall linphoneCall) {
-                super.incomingCall(linphoneCall);
+            public void incomingCall(CallSession session) {
+                super.incomingCall(session);
+                mIncomingCallId = session == null ? null : session.getCallId();
                 // 开启铃声免提
                 EasyLinphone.toggleSpeaker(true);
                 mCallIn.setVisibility(View.VISIBLE);
@@ -53,7 +56,12 @@ public class MainActivity extends AppCompatActivity {
             public void callConnected() {
                 super.callConnected();
                 // 视频通话默认免提，语音通话默认非免提
-                EasyLinphone.toggleSpeaker(EasyLinphone.getVideoEnabled());
+                EasyLinphone.getVideoEnabled().addCallback(new ResultCallback<Boolean>() {
+                    @Override
+                    public void onSuccess(Boolean isVideoEnabled) {
+                        EasyLinphone.toggleSpeaker(isVideoEnabled);
+                    }
+                });
                 // 所有通话默认非静音
                 EasyLinphone.toggleMicro(false);
                 mCallIn.setVisibility(View.GONE);
@@ -64,13 +72,21 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void callEnd() {
                 super.callEnd();
+                mIncomingCallId = null;
                 sendBroadcast(new Intent(VideoActivity.RECEIVE_FINISH_VIDEO_ACTIVITY));
                 mCallIn.setVisibility(View.GONE);
                 mHangUp.setVisibility(View.GONE);
                 mToggleMute.setVisibility(View.GONE);
                 mToggleSpeaker.setVisibility(View.GONE);
             }
-        });
+        };
+        EasyLinphone.addCallback(null, mPhoneCallback);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        EasyLinphone.removeCallback(null, mPhoneCallback);
     }
 
     @OnClick(R.id.audio_call)
@@ -93,19 +109,38 @@ public class MainActivity extends AppCompatActivity {
 
     @OnClick(R.id.accept_call)
     public void acceptCall() {
-        EasyLinphone.acceptCall();
-        if (EasyLinphone.getVideoEnabled()) {
-            startActivity(new Intent(MainActivity.this, VideoActivity.class));
+        if (mIncomingCallId != null) {
+            EasyLinphone.acceptCall(mIncomingCallId);
+        } else {
+            EasyLinphone.acceptCall();
         }
+        EasyLinphone.getVideoEnabled().addCallback(new ResultCallback<Boolean>() {
+            @Override
+            public void onSuccess(Boolean isVideoEnabled) {
+                if (isVideoEnabled) {
+                    startActivity(new Intent(MainActivity.this, VideoActivity.class));
+                }
+            }
+        });
     }
 
     @OnClick(R.id.toggle_mute)
     public void toggleMute() {
-        EasyLinphone.toggleMicro(!EasyLinphone.getLC().isMicMuted());
+        EasyLinphone.isMicMuted().addCallback(new ResultCallback<Boolean>() {
+            @Override
+            public void onSuccess(Boolean isMicMuted) {
+                EasyLinphone.toggleMicro(!isMicMuted);
+            }
+        });
     }
 
     @OnClick(R.id.toggle_speaker)
     public void toggleSpeaker() {
-        EasyLinphone.toggleSpeaker(!EasyLinphone.getLC().isSpeakerEnabled());
+        EasyLinphone.isSpeakerEnabled().addCallback(new ResultCallback<Boolean>() {
+            @Override
+            public void onSuccess(Boolean isSpeakerEnabled) {
+                EasyLinphone.toggleSpeaker(!isSpeakerEnabled);
+            }
+        });
     }
 }
@@ -9,6 +9,7 @@ import android.support.v7.app.AppCompatActivity;
 import android.view.SurfaceView;
 
 import com.xuchongyang.easyphone.EasyLinphone;
+import com.xuchongyang.easyphone.callback.ResultCallback;
 
 import butterknife.BindView;
 import butterknife.ButterKnife;
@@ -61,12 +62,22 @@ public class VideoActivity extends AppCompatActivity {
 
     @OnClick(R.id.video_mute)
     public void mute() {
-        EasyLinphone.toggleMicro(!EasyLinphone.getLC().isMicMuted());
+        EasyLinphone.isMicMuted().addCallback(new ResultCallback<Boolean>() {
+            @Override
+            public void onSuccess(Boolean isMicMuted) {
+                EasyLinphone.toggleMicro(!isMicMuted);
+            }
+        });
     }
 
     @OnClick(R.id.video_speaker)
     public void speaker() {
-        EasyLinphone.toggleSpeaker(!EasyLinphone.getLC().isSpeakerEnabled());
+        EasyLinphone.isSpeakerEnabled().addCallback(new ResultCallback<Boolean>() {
+            @Override
+            public void onSuccess(Boolean isSpeakerEnabled) {
+                EasyLinphone.toggleSpeaker(!isSpeakerEnabled);
+            }
+        });
     }
 
     public class FinishVideoActivityReceiver extends BroadcastReceiver {
@@ -3,22 +3,54 @@ package com.xuchongyang.easyphone;
 import android.content.Context;
 import android.content.Intent;
 import android.opengl.GLSurfaceView;
+import android.os.SystemClock;
+import android.util.Log;
 import android.view.SurfaceView;
 
 import com.xuchongyang.easyphone.callback.PhoneCallback;
 import com.xuchongyang.easyphone.callback.RegistrationCallback;
+import com.xuchongyang.easyphone.callback.ResultCallback;
+import com.xuchongyang.easyphone.linphone.AccountPool;
+import com.xuchongyang.easyphone.linphone.CallLatencyTracker;
+import com.xuchongyang.easyphone.linphone.CallRegistry;
+import com.xuchongyang.easyphone.linphone.CallSession;
+import com.xuchongyang.easyphone.linphone.CallStatsCollector;
+import com.xuchongyang.easyphone.linphone.CallStatsSummary;
+import com.xuchongyang.easyphone.linphone.ChatHistory;
+import com.xuchongyang.easyphone.linphone.ChatMessage;
+import com.xuchongyang.easyphone.linphone.CodecPolicy;
+import com.xuchongyang.easyphone.linphone.ConfigKey;
+import com.xuchongyang.easyphone.linphone.ConfigKeys;
+import com.xuchongyang.easyphone.linphone.CoreCommand;
+import com.xuchongyang.easyphone.linphone.CoreFuture;
+import com.xuchongyang.easyphone.linphone.DefaultCodecPolicy;
+import com.xuchongyang.easyphone.linphone.DefaultVideoQualityPolicy;
+import com.xuchongyang.easyphone.linphone.DialJob;
+import com.xuchongyang.easyphone.linphone.DialQueue;
+import com.xuchongyang.easyphone.linphone.IterateStats;
+import com.xuchongyang.easyphone.linphone.LatencyHistogram;
 import com.xuchongyang.easyphone.linphone.LinphoneManager;
 import com.xuchongyang.easyphone.linphone.LinphoneUtils;
+import com.xuchongyang.easyphone.linphone.MetricsRegistry;
+import com.xuchongyang.easyphone.linphone.MetricsSnapshot;
+import com.xuchongyang.easyphone.linphone.VideoQualityController;
+import com.xuchongyang.easyphone.linphone.VideoQualityLevel;
+import com.xuchongyang.easyphone.linphone.VideoQualityPolicy;
 import com.xuchongyang.easyphone.linphone.PhoneBean;
+import com.xuchongyang.easyphone.linphone.RegistrationMonitor;
+import com.xuchongyang.easyphone.linphone.StallWatchdog;
 import com.xuchongyang.easyphone.service.LinphoneService;
 
 import org.linphone.core.LinphoneCall;
 import org.linphone.core.LinphoneCallParams;
 import org.linphone.core.LinphoneCore;
 import org.linphone.core.LinphoneCoreException;
+import org.linphone.core.LinphoneProxyConfig;
 import org.linphone.mediastream.video.AndroidVideoWindowImpl;
 
-import static java.lang.Thread.sleep;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Created by Mark Xu on 2017/9/20.
@@ -26,12 +58,15 @@ import static java.lang.Thread.sleep;
  */
 
 public class EasyLinphone {
-    private static ServiceWaitThread mServiceWaitThread;
+    private static final String TAG = "EasyLinphone";
+    /**
+     * 等待 LinphoneService 启动的默认超时时长
+     */
+    public static final long DEFAULT_READY_TIMEOUT_MS = 10000;
     private static String mUsername, mPassword, mServerIP;
     private static AndroidVideoWindowImpl mAndroidVideoWindow;
     private static SurfaceView mRenderingView;
     private static SurfaceView mPreviewView;
-    private static LinphoneCore mLinphoneCore;
 
     /**
      * 开启服务
@@ -45,6 +80,14 @@ public class EasyLinphone {
         }
     }
 
+    /**
+     * 服务重启后未调用 setAccount 时，使用默认账号的服务器
+     */
+    private static String getDefaultDomain(LinphoneCore linphoneCore) {
+        LinphoneProxyConfig proxyConfig = linphoneCore.getDefaultProxyConfig();
+        return proxyConfig == null ? null : proxyConfig.getDomain();
+    }
+
     /**
      * 设置 sip 账户信息
      * @param username sip 账户
@@ -58,158 +101,556 @@ public class EasyLinphone {
     }
 
     /**
-     * 添加注册状态、通话状态回调
+     * 设置需要注册的全部账号，与当前账号比较后只添加、移除或更新有变化的账号
+     * @param accounts 账号列表，第一个作为默认账号
+     * @return 操作结果
+     */
+    public static CoreFuture<Void> setAccounts(List<PhoneBean> accounts) {
+        return LinphoneManager.setAccounts(accounts);
+    }
+
+    /**
+     * 添加或更新一个账号，不影响其他账号
+     * @param account 账号信息
+     * @return 操作结果
+     */
+    public static CoreFuture<Void> addAccount(PhoneBean account) {
+        return LinphoneManager.addAccount(account);
+    }
+
+    /**
+     * 注销并移除一个账号
+     * @param identity 账号标识，见 {@link AccountPool#identityOf(PhoneBean)}
+     * @return 操作结果
+     */
+    public static CoreFuture<Void> removeAccount(String identity) {
+        return LinphoneManager.removeAccount(identity);
+    }
+
+    /**
+     * 获取各账号的注册状态，可在任意线程调用
+     * @return 账号标识到注册状态的快照，服务未启动时返回空表
+     */
+    public static Map<String, LinphoneCore.RegistrationState> getAccountStates() {
+        AccountPool accountPool = LinphoneManager.getAccountPool();
+        if (accountPool == null) {
+            return Collections.emptyMap();
+        }
+        return accountPool.getStates();
+    }
+
+    /**
+     * 获取各账号的注册统计，包括 REGISTER 往返耗时和按原因分类的失败次数，可在任意线程调用
+     * @return 账号标识到统计的映射，服务未启动时返回空表
+     */
+    public static Map<String, RegistrationMonitor.Health> getRegistrationHealth() {
+        RegistrationMonitor registrationMonitor = LinphoneManager.getRegistrationMonitor();
+        if (registrationMonitor == null) {
+            return Collections.emptyMap();
+        }
+        return registrationMonitor.getAllHealth();
+    }
+
+    /**
+     * 添加注册状态、通话状态回调，可添加多个，回调在主线程中执行，服务未启动时也可添加
      * @param phoneCallback 通话回调
      * @param registrationCallback 注册状态回调
      */
     public static void addCallback(RegistrationCallback registrationCallback,
                                    PhoneCallback phoneCallback) {
-        if (LinphoneService.isReady()) {
-            LinphoneService.addRegistrationCallback(registrationCallback);
-            LinphoneService.addPhoneCallback(phoneCallback);
-        } else {
-            mServiceWaitThread = new ServiceWaitThread(registrationCallback, phoneCallback);
-            mServiceWaitThread.start();
-        }
+        LinphoneService.addRegistrationCallback(registrationCallback);
+        LinphoneService.addPhoneCallback(phoneCallback);
     }
 
     /**
-     * 登录
+     * 移除注册状态、通话状态回调
+     * @param registrationCallback 注册状态回调，可为 null
+     * @param phoneCallback 通话回调，可为 null
+     */
+    public static void removeCallback(RegistrationCallback registrationCallback,
+                                      PhoneCallback phoneCallback) {
+        LinphoneService.removeRegistrationCallback(registrationCallback);
+        LinphoneService.removePhoneCallback(phoneCallback);
+    }
+
+    /**
+     * 登录，LinphoneService 启动完毕后自动执行
      */
     public static void login() {
-        new Thread(new Runnable() {
+        login(DEFAULT_READY_TIMEOUT_MS, null);
+    }
+
+    /**
+     * 登录，LinphoneService 启动完毕后自动执行
+     * @param timeoutMillis 等待服务启动的超时时长，小于等于 0 表示不超时
+     * @param callback 登录请求结果回调，可为 null；注册结果仍通过 RegistrationCallback 通知
+     */
+    public static void login(long timeoutMillis, final ResultCallback<Void> callback) {
+        LinphoneService.whenReady(timeoutMillis, new ResultCallback<Void>() {
             @Override
-            public void run() {
-                while (!LinphoneService.isReady()) {
-                    try {
-                        sleep(80);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
+            public void onSuccess(Void result) {
+                CoreFuture<Void> future = LinphoneManager.submit(new CoreCommand<Void>() {
+                    @Override
+                    public Void execute(LinphoneCore linphoneCore) throws LinphoneCoreException {
+                        loginToServer();
+                        return null;
                     }
+                });
+                if (callback != null) {
+                    future.addCallback(callback);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                Log.e(TAG, "login: LinphoneService is not ready", throwable);
+                if (callback != null) {
+                    callback.onFailure(throwable);
                 }
-                loginToServer();
             }
-        }).start();
+        });
     }
 
     /**
      * 登录 SIP 服务器
+     * @throws LinphoneCoreException LinphoneCoreException
      */
-    private static void loginToServer() {
-        try {
-            if (mUsername == null || mPassword == null || mServerIP == null) {
-                throw new RuntimeException("The sip account is not configured.");
-            }
-            LinphoneUtils.getInstance().registerUserAuth(mUsername, mPassword, mServerIP);
-        } catch (LinphoneCoreException e) {
-            e.printStackTrace();
+    private static void loginToServer() throws LinphoneCoreException {
+        if (mUsername == null || mPassword == null || mServerIP == null) {
+            throw new IllegalStateException("The sip account is not configured.");
         }
+        LinphoneUtils.getInstance().registerUserAuth(mUsername, mPassword, mServerIP);
     }
 
     /**
      * 呼叫指定号码
+     * 所有错误都通过结果返回：号码为空时为 IllegalArgumentException，服务未就绪或没有账号时为 IllegalStateException，
+     * 呼叫失败时为 LinphoneCoreException
      * @param num 呼叫号码
+     * @param isVideoCall 是否为视频通话
+     * @return 呼叫结果，之后通过 {@link CallSession#getCallId()} 操作该通话
      */
-    public static void callTo(String num, boolean isVideoCall) {
-        if (!LinphoneService.isReady() || !LinphoneManager.isInstantiated()) {
-            throw new RuntimeException("LinphoneService is not ready or the LinphoneManager is not instantiated");
+    public static CoreFuture<CallSession> callTo(final String num, final boolean isVideoCall) {
+        if (num == null || num.length() == 0) {
+            return CoreFuture.failed(new IllegalArgumentException("Number is empty"));
         }
-        if (!num.equals("")) {
-            PhoneBean phone = new PhoneBean();
-            phone.setUserName(num);
-            phone.setHost(mServerIP);
-            LinphoneUtils.getInstance().startSingleCallingTo(phone, isVideoCall);
+        if (!LinphoneService.isReady() || !LinphoneManager.isInstantiated()) {
+            return CoreFuture.failed(new IllegalStateException(
+                    "LinphoneService is not ready or the LinphoneManager is not instantiated"));
         }
+        final String serverIP = mServerIP;
+        final long requestTime = SystemClock.elapsedRealtime();
+        return LinphoneManager.submit(new CoreCommand<CallSession>() {
+            @Override
+            public CallSession execute(LinphoneCore linphoneCore) throws LinphoneCoreException {
+                String host = serverIP != null ? serverIP : getDefaultDomain(linphoneCore);
+                if (host == null) {
+                    throw new IllegalStateException("The sip account is not configured.");
+                }
+                PhoneBean phone = new PhoneBean();
+                phone.setUserName(num);
+                phone.setHost(host);
+                LinphoneCall call = LinphoneUtils.getInstance().startSingleCallingTo(phone, isVideoCall, requestTime);
+                // OutgoingInit 在 invite 中同步回调，CallRegistry 此时已登记该通话
+                CallSession session = call == null ? null : LinphoneManager.getCallRegistry().getSession(call);
+                if (session == null) {
+                    throw new LinphoneCoreException("Cannot call " + num + "@" + host);
+                }
+                return session;
+            }
+        });
     }
 
     /**
      * 接听来电
+     * @return 操作结果
      */
-    public static void acceptCall() {
-        try {
-            LinphoneManager.getLc().acceptCall(LinphoneManager.getLc().getCurrentCall());
-        } catch (LinphoneCoreException e) {
-            e.printStackTrace();
-        }
+    public static CoreFuture<Void> acceptCall() {
+        return LinphoneManager.submit(new CoreCommand<Void>() {
+            @Override
+            public Void execute(LinphoneCore linphoneCore) throws LinphoneCoreException {
+                // 已有通话时新的呼入不是当前通话，优先接听最近振铃的呼入
+                CallRegistry callRegistry = LinphoneManager.getCallRegistry();
+                CallSession incoming = callRegistry.getLatestIncoming();
+                callRegistry.accept(linphoneCore, incoming != null ? incoming.getCall() : linphoneCore.getCurrentCall());
+                return null;
+            }
+        });
     }
 
     /**
      * 挂断当前通话
+     * @return 操作结果
      */
-    public static void hangUp() {
-        LinphoneUtils.getInstance().hangUp();
+    public static CoreFuture<Void> hangUp() {
+        return LinphoneManager.submit(new CoreCommand<Void>() {
+            @Override
+            public Void execute(LinphoneCore linphoneCore) {
+                LinphoneUtils.getInstance().hangUp();
+                return null;
+            }
+        });
     }
 
     /**
      * 暂停通话
+     * @return 操作结果
      */
-    public static void pauseCall() {
-        mLinphoneCore = LinphoneManager.getLcIfManagerNotDestroyOrNull();
-        if (mLinphoneCore != null) {
-            LinphoneCall linphoneCall = mLinphoneCore.getCurrentCall();
-            mLinphoneCore.pauseCall(linphoneCall);
-        }
+    public static CoreFuture<Void> pauseCall() {
+        return LinphoneManager.submit(new CoreCommand<Void>() {
+            @Override
+            public Void execute(LinphoneCore linphoneCore) {
+                linphoneCore.pauseCall(linphoneCore.getCurrentCall());
+                return null;
+            }
+        });
     }
 
     /**
      * 恢复通话
+     * @return 操作结果
+     */
+    public static CoreFuture<Void> resumeCall() {
+        return LinphoneManager.submit(new CoreCommand<Void>() {
+            @Override
+            public Void execute(LinphoneCore linphoneCore) {
+                linphoneCore.resumeCall(linphoneCore.getCurrentCall());
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 获取所有进行中的通话，可在任意线程调用
+     * @return 通话列表，按创建时间排序；服务未启动时返回空列表
+     */
+    public static List<CallSession> getCalls() {
+        CallRegistry callRegistry = LinphoneManager.getCallRegistry();
+        if (callRegistry == null) {
+            return Collections.emptyList();
+        }
+        return callRegistry.getSessions();
+    }
+
+    /**
+     * 接听指定通话
+     * @param callId 通话 ID，见 {@link CallSession#getCallId()}
+     * @return 操作结果
+     */
+    public static CoreFuture<Void> acceptCall(final String callId) {
+        return LinphoneManager.submit(new CoreCommand<Void>() {
+            @Override
+            public Void execute(LinphoneCore linphoneCore) throws LinphoneCoreException {
+                LinphoneManager.getCallRegistry().accept(linphoneCore, callId);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 挂断指定通话
+     * @param callId 通话 ID
+     * @return 操作结果
+     */
+    public static CoreFuture<Void> hangUp(final String callId) {
+        return LinphoneManager.submit(new CoreCommand<Void>() {
+            @Override
+            public Void execute(LinphoneCore linphoneCore) {
+                LinphoneManager.getCallRegistry().terminate(linphoneCore, callId);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 保持指定通话
+     * @param callId 通话 ID
+     * @return 操作结果
+     */
+    public static CoreFuture<Void> pauseCall(final String callId) {
+        return LinphoneManager.submit(new CoreCommand<Void>() {
+            @Override
+            public Void execute(LinphoneCore linphoneCore) {
+                LinphoneManager.getCallRegistry().hold(linphoneCore, callId);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 恢复指定通话，当前通话会被保持
+     * @param callId 通话 ID
+     * @return 操作结果
+     */
+    public static CoreFuture<Void> resumeCall(final String callId) {
+        return LinphoneManager.submit(new CoreCommand<Void>() {
+            @Override
+            public Void execute(LinphoneCore linphoneCore) {
+                LinphoneManager.getCallRegistry().resume(linphoneCore, callId);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 切换到指定通话：保持当前通话，接听或恢复目标通话
+     * @param callId 通话 ID
+     * @return 操作结果
+     */
+    public static CoreFuture<Void> switchCall(final String callId) {
+        return LinphoneManager.submit(new CoreCommand<Void>() {
+            @Override
+            public Void execute(LinphoneCore linphoneCore) throws LinphoneCoreException {
+                LinphoneManager.getCallRegistry().switchTo(linphoneCore, callId);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 把指定通话加入本地会议，超出参与人数上限或 CPU 余量不足以组成会议时失败
+     * @param callId 通话 ID
+     * @return 操作结果
+     */
+    public static CoreFuture<Void> addToConference(final String callId) {
+        return LinphoneManager.submit(new CoreCommand<Void>() {
+            @Override
+            public Void execute(LinphoneCore linphoneCore) {
+                CallSession session = LinphoneManager.getCallRegistry().getSession(callId);
+                if (session == null) {
+                    throw new IllegalArgumentException("No call with id " + callId);
+                }
+                LinphoneManager.getConferenceManager().add(linphoneCore, session.getCall());
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 把所有进行中的通话合并到本地会议，超出参与人数上限的通话保持不变
+     * CPU 余量不足以组成至少两路通话的会议时失败，结果为 IllegalStateException
+     * @return 新加入会议的通话数
+     */
+    public static CoreFuture<Integer> mergeCallsIntoConference() {
+        return LinphoneManager.submit(new CoreCommand<Integer>() {
+            @Override
+            public Integer execute(LinphoneCore linphoneCore) {
+                return LinphoneManager.getConferenceManager().mergeAll(linphoneCore);
+            }
+        });
+    }
+
+    /**
+     * 把指定通话移出会议
+     * @param callId 通话 ID
+     * @return 操作结果
+     */
+    public static CoreFuture<Void> removeFromConference(final String callId) {
+        return LinphoneManager.submit(new CoreCommand<Void>() {
+            @Override
+            public Void execute(LinphoneCore linphoneCore) {
+                CallSession session = LinphoneManager.getCallRegistry().getSession(callId);
+                if (session != null) {
+                    LinphoneManager.getConferenceManager().remove(linphoneCore, session.getCall());
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 结束会议并挂断所有参与者
+     * @return 操作结果
+     */
+    public static CoreFuture<Void> terminateConference() {
+        return LinphoneManager.submit(new CoreCommand<Void>() {
+            @Override
+            public Void execute(LinphoneCore linphoneCore) {
+                LinphoneManager.getConferenceManager().terminate(linphoneCore);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 根据当前 CPU 余量获取会议参与人数上限
+     * @return 通话数上限，不含本机
+     */
+    public static CoreFuture<Integer> getConferenceLimit() {
+        return LinphoneManager.submit(new CoreCommand<Integer>() {
+            @Override
+            public Integer execute(LinphoneCore linphoneCore) {
+                return LinphoneManager.getConferenceManager().getParticipantLimit(linphoneCore);
+            }
+        });
+    }
+
+    /**
+     * 获取会议中各参与者的音量
+     * @return 通话 ID 到接收音量（dBm0）的映射
+     */
+    public static CoreFuture<Map<String, Float>> getConferenceLevels() {
+        return LinphoneManager.submit(new CoreCommand<Map<String, Float>>() {
+            @Override
+            public Map<String, Float> execute(LinphoneCore linphoneCore) {
+                return LinphoneManager.getConferenceManager().getLevels(linphoneCore);
+            }
+        });
+    }
+
+    /**
+     * 批量外呼，按外呼队列的并发上限和拨号间隔依次拨打，未接通时自动重试
+     * @param numbers 号码列表
+     * @param isVideoCall 是否为视频通话
+     * @return 每个号码对应的 DialJob，可用于查询结果
+     */
+    public static List<DialJob> dialAll(List<String> numbers, boolean isVideoCall) {
+        DialQueue dialQueue = LinphoneManager.getDialQueue();
+        if (dialQueue == null) {
+            throw new IllegalStateException("LinphoneManager not started");
+        }
+        return dialQueue.enqueue(numbers, isVideoCall);
+    }
+
+    /**
+     * 取消外呼队列中尚未拨打的号码
      */
-    public static void resumeCall() {
-        mLinphoneCore = LinphoneManager.getLcIfManagerNotDestroyOrNull();
-        if (mLinphoneCore != null) {
-            LinphoneCall linphoneCall = mLinphoneCore.getCurrentCall();
-            mLinphoneCore.resumeCall(linphoneCall);
+    public static void cancelDialQueue() {
+        DialQueue dialQueue = LinphoneManager.getDialQueue();
+        if (dialQueue != null) {
+            dialQueue.cancelAll();
         }
     }
 
+    /**
+     * 发送文本消息
+     * @param num 对方号码
+     * @param text 消息内容
+     * @return 已保存的消息
+     */
+    public static CoreFuture<ChatMessage> sendMessage(String num, String text) {
+        return LinphoneManager.sendMessage(num, mServerIP, text);
+    }
+
+    /**
+     * 把会话中的消息标记为已读
+     * @param peer 对方地址，与 {@link ChatMessage#getPeer()} 相同
+     * @return 操作结果
+     */
+    public static CoreFuture<Void> markAsRead(String peer) {
+        return LinphoneManager.markAsRead(peer);
+    }
+
+    /**
+     * 获取聊天记录，可分页查询会话、遍历消息、读取未读数，收到消息时通知监听
+     * @return ChatHistory
+     */
+    public static ChatHistory getChatHistory() {
+        ChatHistory chatHistory = LinphoneManager.getChatHistory();
+        if (chatHistory == null) {
+            throw new IllegalStateException("LinphoneManager not started");
+        }
+        return chatHistory;
+    }
+
     /**
      * 切换静音
      * @param isMicMuted 是否静音
+     * @return 操作结果
      */
-    public static void toggleMicro(boolean isMicMuted) {
-        LinphoneUtils.getInstance().toggleMicro(isMicMuted);
+    public static CoreFuture<Void> toggleMicro(final boolean isMicMuted) {
+        return LinphoneManager.submit(new CoreCommand<Void>() {
+            @Override
+            public Void execute(LinphoneCore linphoneCore) {
+                LinphoneUtils.getInstance().toggleMicro(isMicMuted);
+                return null;
+            }
+        });
     }
 
     /**
      * 切换免提
      * @param isSpeakerEnabled 是否免提
+     * @return 操作结果
      */
-    public static void toggleSpeaker(boolean isSpeakerEnabled) {
-        LinphoneUtils.getInstance().toggleSpeaker(isSpeakerEnabled);
+    public static CoreFuture<Void> toggleSpeaker(final boolean isSpeakerEnabled) {
+        return LinphoneManager.submit(new CoreCommand<Void>() {
+            @Override
+            public Void execute(LinphoneCore linphoneCore) {
+                LinphoneUtils.getInstance().toggleSpeaker(isSpeakerEnabled);
+                return null;
+            }
+        });
     }
 
-    private static class ServiceWaitThread extends Thread {
-        private PhoneCallback mPhoneCallback;
-        private RegistrationCallback mRegistrationCallback;
+    /**
+     * 立即校准当前机型指定音频路由的回声消除，结果保存后之后的通话使用
+     * 校准会播放提示音，由应用在空闲且不会打扰用户时调用，如用户在设置中手动触发
+     * @param speaker true 校准外放，false 校准听筒
+     * @return 操作结果，有通话或正在校准时以 IllegalStateException 失败
+     */
+    public static CoreFuture<Void> recalibrateEcho(final boolean speaker) {
+        return LinphoneManager.submit(new CoreCommand<Void>() {
+            @Override
+            public Void execute(LinphoneCore linphoneCore) {
+                LinphoneManager.getEchoCalibrator().recalibrate(speaker);
+                return null;
+            }
+        });
+    }
 
-        ServiceWaitThread(RegistrationCallback registrationCallback, PhoneCallback phoneCallback) {
-            mRegistrationCallback = registrationCallback;
-            mPhoneCallback = phoneCallback;
-        }
+    /**
+     * 是否静音
+     * @return 是否静音
+     */
+    public static CoreFuture<Boolean> isMicMuted() {
+        return LinphoneManager.submit(new CoreCommand<Boolean>() {
+            @Override
+            public Boolean execute(LinphoneCore linphoneCore) {
+                return linphoneCore.isMicMuted();
+            }
+        });
+    }
 
-        @Override
-        public void run() {
-            super.run();
-            while (!LinphoneService.isReady()) {
-                try {
-                    sleep(80);
-                } catch (InterruptedException e) {
-                    throw new RuntimeException("waiting thread sleep() has been interrupted");
-                }
+    /**
+     * 是否免提
+     * @return 是否免提
+     */
+    public static CoreFuture<Boolean> isSpeakerEnabled() {
+        return LinphoneManager.submit(new CoreCommand<Boolean>() {
+            @Override
+            public Boolean execute(LinphoneCore linphoneCore) {
+                return linphoneCore.isSpeakerEnabled();
             }
-            LinphoneService.addPhoneCallback(mPhoneCallback);
-            LinphoneService.addRegistrationCallback(mRegistrationCallback);
-            mServiceWaitThread = null;
-        }
+        });
+    }
+
+    /**
+     * 在 Linphone 核心线程中执行自定义命令
+     * @param command 命令
+     * @param <T> 结果类型
+     * @return 命令结果
+     */
+    public static <T> CoreFuture<T> submit(CoreCommand<T> command) {
+        return LinphoneManager.submit(command);
     }
 
     /**
      * 判断当前通话为视频通话还是语音通话
      * @return 是否为视频通话
      */
-    public static boolean getVideoEnabled() {
-        LinphoneCallParams remoteParams = LinphoneManager.getLc().getCurrentCall().getRemoteParams();
-        return remoteParams != null && remoteParams.getVideoEnabled();
+    public static CoreFuture<Boolean> getVideoEnabled() {
+        return LinphoneManager.submit(new CoreCommand<Boolean>() {
+            @Override
+            public Boolean execute(LinphoneCore linphoneCore) {
+                LinphoneCall currentCall = linphoneCore.getCurrentCall();
+                if (currentCall == null) {
+                    return false;
+                }
+                LinphoneCallParams remoteParams = currentCall.getRemoteParams();
+                return remoteParams != null && remoteParams.getVideoEnabled();
+            }
+        });
     }
 
     /**
@@ -255,9 +696,7 @@ public class EasyLinphone {
         }
 
         if (mAndroidVideoWindow != null) {
-            synchronized (mAndroidVideoWindow) {
-                LinphoneManager.getLc().setVideoWindow(mAndroidVideoWindow);
-            }
+            setVideoWindow(mAndroidVideoWindow);
         }
     }
 
@@ -266,9 +705,7 @@ public class EasyLinphone {
      */
     public static void onVideoPause() {
         if (mAndroidVideoWindow != null) {
-            synchronized (mAndroidVideoWindow) {
-                LinphoneManager.getLc().setVideoWindow(null);
-            }
+            setVideoWindow(null);
         }
 
         if (mRenderingView != null) {
@@ -295,27 +732,125 @@ public class EasyLinphone {
         preview.setZOrderMediaOverlay(true); // Needed to be able to display control layout over
     }
 
-    private static void setVideoWindow(Object o) {
-        LinphoneManager.getLc().setVideoWindow(o);
+    private static void setVideoWindow(final Object o) {
+        LinphoneManager.submit(new CoreCommand<Void>() {
+            @Override
+            public Void execute(LinphoneCore linphoneCore) {
+                linphoneCore.setVideoWindow(o);
+                return null;
+            }
+        });
     }
 
     private static void removeVideoWindow() {
-        LinphoneCore linphoneCore = LinphoneManager.getLc();
-        if (linphoneCore != null) {
-            linphoneCore.setVideoWindow(null);
-        }
+        setVideoWindow(null);
     }
 
-    private static void setPreviewWindow(Object o) {
-        LinphoneManager.getLc().setPreviewWindow(o);
+    private static void setPreviewWindow(final Object o) {
+        LinphoneManager.submit(new CoreCommand<Void>() {
+            @Override
+            public Void execute(LinphoneCore linphoneCore) {
+                linphoneCore.setPreviewWindow(o);
+                return null;
+            }
+        });
     }
 
     private static void removePreviewWindow() {
-        LinphoneManager.getLc().setPreviewWindow(null);
+        setPreviewWindow(null);
+    }
+
+    /**
+     * 获取通话质量统计，可在任意线程调用
+     * @param callId 通话 ID，可通过 LinphoneUtils.getCallId() 获取
+     * @param isVideo 是否获取视频流统计
+     * @return 统计快照，无数据时返回 null
+     */
+    public static CallStatsSummary getCallStats(String callId, boolean isVideo) {
+        return CallStatsCollector.getInstance().getSummary(callId, isVideo);
+    }
+
+    /**
+     * 设置视频质量调整策略，默认使用 {@link DefaultVideoQualityPolicy}
+     * @param policy VideoQualityPolicy
+     * @return 操作结果
+     */
+    public static CoreFuture<Void> setVideoQualityPolicy(VideoQualityPolicy policy) {
+        return LinphoneManager.setVideoQualityPolicy(policy);
+    }
+
+    /**
+     * 获取当前视频质量档位，可在任意线程调用
+     * @return VideoQualityLevel，服务未启动时返回 null
+     */
+    public static VideoQualityLevel getVideoQualityLevel() {
+        VideoQualityController controller = LinphoneManager.getVideoQualityController();
+        return controller == null ? null : controller.getCurrentLevel();
+    }
+
+    /**
+     * 设置编码格式策略，默认使用 {@link DefaultCodecPolicy}
+     * @param policy CodecPolicy
+     * @return 操作结果
+     */
+    public static CoreFuture<Void> setCodecPolicy(CodecPolicy policy) {
+        return LinphoneManager.setCodecPolicy(policy);
+    }
+
+    /**
+     * 设置 NAT 保活唤醒间隔，默认只按注册有效期唤醒；UDP 传输且 NAT 映射超时较短时使用
+     * @param intervalMillis 间隔，小于等于 0 表示不额外唤醒
+     * @return 操作结果
+     */
+    public static CoreFuture<Void> setNatKeepAliveInterval(long intervalMillis) {
+        return LinphoneManager.setNatKeepAliveInterval(intervalMillis);
+    }
+
+    /**
+     * 重新加载配置文件并增量应用到运行中的 LinphoneCore，不重启服务，注册和通话不中断
+     * 文件中未出现的配置项保持不变，可用的配置项见 {@link ConfigKeys}；也可通过 ConfigStore.edit() 在核心线程中修改
+     * @param path 配置文件路径，格式与 .linphonerc 相同
+     * @return 值发生变化的配置项，文件不存在时以 IllegalArgumentException 失败
+     */
+    public static CoreFuture<List<ConfigKey<?>>> reloadConfig(String path) {
+        return LinphoneManager.reloadConfig(path);
+    }
+
+    /**
+     * 获取 iterate 调度统计
+     * @return IterateStats，服务未启动时返回 null
+     */
+    public static IterateStats getIterateStats() {
+        return LinphoneManager.getIterateStats();
+    }
+
+    /**
+     * 获取库的指标快照，可在任意线程调用，toText() 可序列化为文本用于上传
+     * @return MetricsSnapshot
+     */
+    public static MetricsSnapshot getMetrics() {
+        return MetricsRegistry.getInstance().snapshot();
+    }
+
+    /**
+     * 获取卡顿监控，可查询 iterate()、核心线程命令和回调分发中超过阈值的次数和最长耗时
+     * @return StallWatchdog
+     */
+    public static StallWatchdog getStallWatchdog() {
+        return StallWatchdog.getInstance();
+    }
+
+    /**
+     * 获取通话建立阶段的耗时分布
+     * @param phase 阶段
+     * @return 当前快照，可查询 p50、p99 等百分位
+     */
+    public static LatencyHistogram.Snapshot getCallLatency(CallLatencyTracker.Phase phase) {
+        return CallLatencyTracker.getInstance().getHistogram(phase).snapshot();
     }
 
     /**
-     * 获取 LinphoneCore
+     * 获取 LinphoneCore，只能在 Linphone 核心线程中使用，其他线程请通过 {@link #submit(CoreCommand)} 访问
      * @return LinphoneCore
      */
     public static LinphoneCore getLC() {
@@ -1,6 +1,7 @@
 package com.xuchongyang.easyphone.callback;
 
-import org.linphone.core.LinphoneCall;
+import com.xuchongyang.easyphone.linphone.CallSession;
+import com.xuchongyang.easyphone.linphone.CallStatsSummary;
 
 /**
  * Created by Mark Xu on 17/3/13.
@@ -10,9 +11,9 @@ import org.linphone.core.LinphoneCall;
 public abstract class PhoneCallback {
     /**
      * 来电状态
-     * @param linphoneCall
+     * @param session 来电，通过 {@link CallSession#getCallId()} 接听或挂断
      */
-    public void incomingCall(LinphoneCall linphoneCall) {}
+    public void incomingCall(CallSession session) {}
 
     /**
      * 呼叫初始化
@@ -38,4 +39,10 @@ public abstract class PhoneCallback {
      * 连接失败
      */
     public void error() {}
+
+    /**
+     * 通话质量统计更新，音频流、视频流分别回调，约每秒一次
+     * @param summary 统计快照
+     */
+    public void callStatsUpdated(CallStatsSummary summary) {}
 }
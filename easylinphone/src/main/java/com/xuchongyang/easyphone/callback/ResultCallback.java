@@ -0,0 +1,19 @@
+package com.xuchongyang.easyphone.callback;
+
+/**
+ * 异步操作结果回调，在主线程中执行
+ */
+
+public abstract class ResultCallback<T> {
+    /**
+     * 操作成功
+     * @param result 操作结果
+     */
+    public void onSuccess(T result) {}
+
+    /**
+     * 操作失败
+     * @param throwable 失败原因
+     */
+    public void onFailure(Throwable throwable) {}
+}
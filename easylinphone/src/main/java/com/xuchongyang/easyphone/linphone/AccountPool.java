@@ -0,0 +1,442 @@
+package com.xuchongyang.easyphone.linphone;
+
+import org.linphone.core.LinphoneAddress;
+import org.linphone.core.LinphoneAuthInfo;
+import org.linphone.core.LinphoneCore;
+import org.linphone.core.LinphoneCoreException;
+import org.linphone.core.LinphoneCoreFactory;
+import org.linphone.core.LinphoneProxyConfig;
+import org.linphone.core.LpConfig;
+import org.linphone.mediastream.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 多账号注册池：保存期望的账号集合，与 LinphoneCore 中已有的账号比较后只应用差异
+ * 账号集合和最近一次注册信息保存在 LpConfig 中，服务重启后自动恢复并重新注册
+ * 修改方法在 Linphone 核心线程中调用，账号状态可在任意线程读取
+ */
+
+public class AccountPool {
+    private static final String TAG = "AccountPool";
+    private static final String SECTION = "account_pool";
+    private static final String ACCOUNT_SECTION_PREFIX = "account_pool_";
+
+    private final Map<String, PhoneBean> mAccounts = new LinkedHashMap<>();
+    private final ConcurrentHashMap<String, LinphoneCore.RegistrationState> mStates = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Long> mLastRegistrations = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<Listener> mListeners = new CopyOnWriteArrayList<>();
+    private final Factory mFactory;
+    private LinphoneCore mLc;
+
+    /**
+     * 账号注册状态监听，在 Linphone 核心线程中回调
+     */
+    public interface Listener {
+        void onAccountStateChanged(String identity, LinphoneCore.RegistrationState state);
+    }
+
+    /**
+     * 地址和认证信息的创建，单元测试时替换
+     */
+    interface Factory {
+        LinphoneAddress createAddress(String uri) throws LinphoneCoreException;
+
+        LinphoneAuthInfo createAuthInfo(String userName, String password, String domain);
+    }
+
+    private static final Factory CORE_FACTORY = new Factory() {
+        @Override
+        public LinphoneAddress createAddress(String uri) throws LinphoneCoreException {
+            return LinphoneCoreFactory.instance().createLinphoneAddress(uri);
+        }
+
+        @Override
+        public LinphoneAuthInfo createAuthInfo(String userName, String password, String domain) {
+            return LinphoneCoreFactory.instance().createAuthInfo(userName, null, password, null, null, domain);
+        }
+    };
+
+    AccountPool() {
+        this(CORE_FACTORY);
+    }
+
+    AccountPool(Factory factory) {
+        mFactory = factory;
+    }
+
+    /**
+     * 账号标识，解析后重新拼接，服务器中的端口与 LinphoneProxyConfig 中的地址格式一致
+     * @param bean 账号信息
+     * @return "sip:用户名@域名[:端口]"
+     */
+    public static String identityOf(PhoneBean bean) {
+        return identityOf(bean, CORE_FACTORY);
+    }
+
+    private static String identityOf(PhoneBean bean, Factory factory) {
+        String identity = "sip:" + bean.getUserName() + "@" + bean.getHost();
+        try {
+            LinphoneAddress address = factory.createAddress(identity);
+            return address == null ? identity : identityOf(address);
+        } catch (LinphoneCoreException e) {
+            return identity;
+        }
+    }
+
+    /**
+     * 账号标识，与 {@link #identityOf(PhoneBean)} 格式一致
+     * @param proxyConfig LinphoneProxyConfig
+     * @return 账号标识
+     */
+    public static String identityOf(LinphoneProxyConfig proxyConfig) {
+        LinphoneAddress address = proxyConfig.getAddress();
+        if (address == null) {
+            return proxyConfig.getIdentity();
+        }
+        return identityOf(address);
+    }
+
+    private static String identityOf(LinphoneAddress address) {
+        int port = address.getPort();
+        return "sip:" + address.getUserName() + "@" + address.getDomain() + (port > 0 ? ":" + port : "");
+    }
+
+    /**
+     * 开始工作，恢复上次保存的账号并重新注册
+     * @param linphoneCore LinphoneCore
+     */
+    void start(LinphoneCore linphoneCore) {
+        mLc = linphoneCore;
+        restore();
+    }
+
+    void stop() {
+        mLc = null;
+        mStates.clear();
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * 设置期望的账号集合，不在集合中的账号将被注销并移除
+     * @param accounts 账号列表，第一个作为默认账号
+     * @throws LinphoneCoreException 账号创建失败
+     */
+    void setAccounts(List<PhoneBean> accounts) throws LinphoneCoreException {
+        mAccounts.clear();
+        for (PhoneBean bean : accounts) {
+            mAccounts.put(identityOf(bean, mFactory), copyOf(bean));
+        }
+        save();
+        reconcile();
+    }
+
+    /**
+     * 添加或更新账号，已存在且信息未变化时不做任何操作
+     * @param bean 账号信息
+     * @throws LinphoneCoreException 账号创建失败
+     */
+    void addAccount(PhoneBean bean) throws LinphoneCoreException {
+        mAccounts.put(identityOf(bean, mFactory), copyOf(bean));
+        save();
+        reconcile();
+    }
+
+    /**
+     * 移除账号
+     * @param identity 账号标识
+     * @throws LinphoneCoreException LinphoneCoreException
+     */
+    void removeAccount(String identity) throws LinphoneCoreException {
+        if (mAccounts.remove(identity) != null) {
+            save();
+            reconcile();
+        }
+    }
+
+    /**
+     * 获取期望的账号集合
+     * @return 账号列表
+     */
+    List<PhoneBean> getAccounts() {
+        return new ArrayList<>(mAccounts.values());
+    }
+
+    /**
+     * 获取账号的注册状态
+     * @param identity 账号标识
+     * @return 注册状态，账号不存在时返回 null
+     */
+    public LinphoneCore.RegistrationState getState(String identity) {
+        return mStates.get(identity);
+    }
+
+    /**
+     * 获取所有账号的注册状态
+     * @return 账号标识到注册状态的快照
+     */
+    public Map<String, LinphoneCore.RegistrationState> getStates() {
+        return Collections.unmodifiableMap(new HashMap<>(mStates));
+    }
+
+    /**
+     * 注册状态变化
+     * @param proxyConfig 账号
+     * @param state 注册状态
+     */
+    void onRegistrationState(LinphoneProxyConfig proxyConfig, LinphoneCore.RegistrationState state) {
+        if (proxyConfig == null) {
+            return;
+        }
+        String identity = identityOf(proxyConfig);
+        if (!mAccounts.containsKey(identity)) {
+            return;
+        }
+        mStates.put(identity, state);
+        if (state == LinphoneCore.RegistrationState.RegistrationOk) {
+            saveRegistration(identity, proxyConfig.getExpires());
+        }
+        for (Listener listener : mListeners) {
+            listener.onAccountStateChanged(identity, state);
+        }
+    }
+
+    /**
+     * 获取账号最近一次注册成功的时间
+     * @param identity 账号标识
+     * @return 时间戳，ms，未注册过时返回 0
+     */
+    public long getLastRegistrationTime(String identity) {
+        Long time = mLastRegistrations.get(identity);
+        return time == null ? 0 : time;
+    }
+
+    /**
+     * 从 LpConfig 恢复账号，密码取自 liblinphone 保存的认证信息
+     */
+    private void restore() {
+        LpConfig config = mLc.getConfig();
+        int count = config.getInt(SECTION, "count", 0);
+        if (count == 0) {
+            return;
+        }
+        int span = StartupTracer.getInstance().begin("restoreAccounts");
+        mAccounts.clear();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            String section = ACCOUNT_SECTION_PREFIX + i;
+            PhoneBean bean = new PhoneBean();
+            bean.setUserName(config.getString(section, "username", null));
+            bean.setHost(config.getString(section, "host", null));
+            bean.setDisplayName(config.getString(section, "display_name", null));
+            if (bean.getUserName() == null || bean.getHost() == null) {
+                continue;
+            }
+            LinphoneAuthInfo authInfo = mLc.findAuthInfo(bean.getUserName(), null, bean.getHost());
+            if (authInfo != null) {
+                bean.setPassword(authInfo.getPassword());
+            }
+            String identity = identityOf(bean, mFactory);
+            mAccounts.put(identity, bean);
+            long lastOk = parseLong(config.getString(section, "last_ok", "0"));
+            mLastRegistrations.put(identity, lastOk);
+            int expires = config.getInt(section, "expires", 0);
+            Log.i(TAG, "Restore account " + identity + ", last registered " + (now - lastOk) / 1000
+                    + " s ago, binding " + (now - lastOk < expires * 1000L ? "still valid" : "expired"));
+        }
+        try {
+            reconcile();
+        } catch (LinphoneCoreException e) {
+            e.printStackTrace();
+        }
+        // 不等待 liblinphone 的刷新周期，立即重新注册
+        for (LinphoneProxyConfig proxyConfig : mLc.getProxyConfigList()) {
+            proxyConfig.refreshRegister();
+        }
+        LinphoneManager.wakeUp();
+        StartupTracer.getInstance().end(span);
+    }
+
+    private void save() {
+        if (mLc == null) {
+            return;
+        }
+        LpConfig config = mLc.getConfig();
+        int index = 0;
+        for (PhoneBean bean : mAccounts.values()) {
+            String section = ACCOUNT_SECTION_PREFIX + index++;
+            String previousIdentity = "sip:" + config.getString(section, "username", "") + "@"
+                    + config.getString(section, "host", "");
+            String identity = identityOf(bean, mFactory);
+            if (!previousIdentity.equals(identity)) {
+                // 该位置换成了另一个账号，改写为该账号自己的注册时间
+                config.setString(section, "last_ok", String.valueOf(getLastRegistrationTime(identity)));
+                config.setInt(section, "expires", 0);
+            }
+            config.setString(section, "username", bean.getUserName());
+            config.setString(section, "host", bean.getHost());
+            config.setString(section, "display_name", bean.getDisplayName());
+        }
+        config.setInt(SECTION, "count", index);
+        config.sync();
+    }
+
+    private void saveRegistration(String identity, int expires) {
+        int index = indexOf(identity);
+        if (mLc == null || index < 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        mLastRegistrations.put(identity, now);
+        LpConfig config = mLc.getConfig();
+        String section = ACCOUNT_SECTION_PREFIX + index;
+        config.setString(section, "last_ok", String.valueOf(now));
+        config.setInt(section, "expires", expires);
+        config.sync();
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private int indexOf(String identity) {
+        int index = 0;
+        for (String key : mAccounts.keySet()) {
+            if (key.equals(identity)) {
+                return index;
+            }
+            index++;
+        }
+        return -1;
+    }
+
+    /**
+     * 比较期望账号与当前账号，移除多余的，添加缺少的，更新密码变化的
+     * 新账号在同一次 iterate 中一起发出 REGISTER
+     */
+    private void reconcile() throws LinphoneCoreException {
+        if (mLc == null) {
+            return;
+        }
+        Map<String, LinphoneProxyConfig> current = new HashMap<>();
+        for (LinphoneProxyConfig proxyConfig : mLc.getProxyConfigList()) {
+            String identity = identityOf(proxyConfig);
+            if (!mAccounts.containsKey(identity) || current.containsKey(identity)) {
+                // 不再需要的账号，以及之前重复添加的账号
+                Log.d(TAG, "Remove account " + identity);
+                removeProxyConfig(proxyConfig);
+                if (!mAccounts.containsKey(identity)) {
+                    mStates.remove(identity);
+                    mLastRegistrations.remove(identity);
+                }
+            } else {
+                current.put(identity, proxyConfig);
+            }
+        }
+
+        LinphoneProxyConfig defaultProxyConfig = null;
+        boolean changed = false;
+        for (Map.Entry<String, PhoneBean> entry : mAccounts.entrySet()) {
+            String identity = entry.getKey();
+            PhoneBean bean = entry.getValue();
+            LinphoneProxyConfig proxyConfig = current.get(identity);
+            if (proxyConfig == null) {
+                Log.d(TAG, "Add account " + identity);
+                proxyConfig = addProxyConfig(bean);
+                mStates.put(identity, LinphoneCore.RegistrationState.RegistrationNone);
+                changed = true;
+            } else if (updateAuthInfo(bean)) {
+                Log.d(TAG, "Update password of " + identity);
+                proxyConfig.refreshRegister();
+                changed = true;
+            }
+            if (defaultProxyConfig == null) {
+                defaultProxyConfig = proxyConfig;
+            }
+        }
+        if (defaultProxyConfig != null && defaultProxyConfig != mLc.getDefaultProxyConfig()) {
+            mLc.setDefaultProxyConfig(defaultProxyConfig);
+        }
+        if (changed) {
+            LinphoneManager.wakeUp();
+        }
+    }
+
+    private LinphoneProxyConfig addProxyConfig(PhoneBean bean) throws LinphoneCoreException {
+        String host = bean.getHost();
+        LinphoneAddress proxyAddress = mFactory.createAddress("sip:" + host);
+        LinphoneAddress identityAddress = mFactory.createAddress(identityOf(bean, mFactory));
+        if (bean.getDisplayName() != null) {
+            identityAddress.setDisplayName(bean.getDisplayName());
+        }
+        LinphoneProxyConfig proxyConfig = mLc.createProxyConfig(identityAddress.asString(),
+                proxyAddress.asStringUriOnly(), proxyAddress.asStringUriOnly(), true);
+        proxyConfig.enableAvpf(false);
+        proxyConfig.setAvpfRRInterval(0);
+        proxyConfig.enableQualityReporting(false);
+        proxyConfig.setQualityReportingCollector(null);
+        proxyConfig.setQualityReportingInterval(0);
+        proxyConfig.enableRegister(true);
+        updateAuthInfo(bean);
+        mLc.addProxyConfig(proxyConfig);
+        return proxyConfig;
+    }
+
+    private void removeProxyConfig(LinphoneProxyConfig proxyConfig) {
+        // removeProxyConfig 会先注销再移除
+        mLc.removeProxyConfig(proxyConfig);
+        LinphoneAddress address = proxyConfig.getAddress();
+        if (address != null) {
+            LinphoneAuthInfo authInfo = mLc.findAuthInfo(address.getUserName(), null, address.getDomain());
+            if (authInfo != null) {
+                mLc.removeAuthInfo(authInfo);
+            }
+        }
+    }
+
+    /**
+     * 添加认证信息，已存在且密码相同时不做修改
+     * @return 是否有修改
+     */
+    private boolean updateAuthInfo(PhoneBean bean) {
+        LinphoneAuthInfo authInfo = mLc.findAuthInfo(bean.getUserName(), null, bean.getHost());
+        if (authInfo != null) {
+            if (bean.getPassword() != null && bean.getPassword().equals(authInfo.getPassword())) {
+                return false;
+            }
+            mLc.removeAuthInfo(authInfo);
+        }
+        mLc.addAuthInfo(mFactory.createAuthInfo(bean.getUserName(), bean.getPassword(), bean.getHost()));
+        return authInfo != null;
+    }
+
+    private static PhoneBean copyOf(PhoneBean bean) {
+        if (bean.getUserName() == null || bean.getHost() == null) {
+            throw new IllegalArgumentException("userName and host must not be null");
+        }
+        PhoneBean copy = new PhoneBean();
+        copy.setDisplayName(bean.getDisplayName());
+        copy.setUserName(bean.getUserName());
+        copy.setHost(bean.getHost());
+        copy.setPassword(bean.getPassword());
+        return copy;
+    }
+}
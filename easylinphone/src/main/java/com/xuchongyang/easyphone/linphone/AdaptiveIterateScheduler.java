@@ -0,0 +1,158 @@
+package com.xuchongyang.easyphone.linphone;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import org.linphone.core.LinphoneCore;
+import org.linphone.core.LinphoneProxyConfig;
+
+/**
+ * 自适应 iterate 调度器：有通话或事务进行时按固定短间隔执行，空闲时指数退避
+ * liblinphone 没有暴露 SIP 套接字，收到 INVITE 不会唤醒调度器；已注册时退避上限更低，来电振铃的延迟不超过该上限
+ */
+
+public class AdaptiveIterateScheduler implements IterateScheduler, Runnable {
+    public static final long DEFAULT_ACTIVE_INTERVAL_MS = 20;
+    public static final long DEFAULT_MAX_IDLE_INTERVAL_MS = 500;
+    public static final long DEFAULT_MAX_REGISTERED_IDLE_INTERVAL_MS = 100;
+    public static final long DEFAULT_WAKE_UP_HOLD_MS = 3000;
+
+    private final long mActiveIntervalMs;
+    private final long mMaxIdleIntervalMs;
+    private final long mMaxRegisteredIdleIntervalMs;
+    private final long mWakeUpHoldMs;
+    private final IterateStats mStats = new IterateStats();
+
+    private LinphoneCore mLc;
+    private Handler mHandler;
+    private volatile boolean mRunning;
+    private volatile long mActiveUntil;
+    private volatile long mCurrentIntervalMs;
+
+    public AdaptiveIterateScheduler() {
+        this(DEFAULT_ACTIVE_INTERVAL_MS, DEFAULT_MAX_IDLE_INTERVAL_MS, DEFAULT_WAKE_UP_HOLD_MS);
+    }
+
+    /**
+     * 构造方法，已注册时的退避上限为 min(maxIdleIntervalMs, DEFAULT_MAX_REGISTERED_IDLE_INTERVAL_MS)
+     * @param activeIntervalMs 活跃时的 iterate 间隔
+     * @param maxIdleIntervalMs 空闲退避的最大间隔
+     * @param wakeUpHoldMs 每次唤醒后保持活跃间隔的时长
+     */
+    public AdaptiveIterateScheduler(long activeIntervalMs, long maxIdleIntervalMs, long wakeUpHoldMs) {
+        this(activeIntervalMs, maxIdleIntervalMs,
+                Math.max(activeIntervalMs, Math.min(maxIdleIntervalMs, DEFAULT_MAX_REGISTERED_IDLE_INTERVAL_MS)),
+                wakeUpHoldMs);
+    }
+
+    /**
+     * 构造方法
+     * @param activeIntervalMs 活跃时的 iterate 间隔
+     * @param maxIdleIntervalMs 未注册时空闲退避的最大间隔
+     * @param maxRegisteredIdleIntervalMs 有账号已注册时空闲退避的最大间隔，即来电最长等待 iterate 的时间
+     * @param wakeUpHoldMs 每次唤醒后保持活跃间隔的时长
+     */
+    public AdaptiveIterateScheduler(long activeIntervalMs, long maxIdleIntervalMs, long maxRegisteredIdleIntervalMs,
+                                    long wakeUpHoldMs) {
+        if (activeIntervalMs <= 0 || maxIdleIntervalMs < activeIntervalMs
+                || maxRegisteredIdleIntervalMs < activeIntervalMs || maxRegisteredIdleIntervalMs > maxIdleIntervalMs) {
+            throw new IllegalArgumentException("Invalid iterate intervals: active=" + activeIntervalMs
+                    + " maxIdle=" + maxIdleIntervalMs + " maxRegisteredIdle=" + maxRegisteredIdleIntervalMs);
+        }
+        mActiveIntervalMs = activeIntervalMs;
+        mMaxIdleIntervalMs = maxIdleIntervalMs;
+        mMaxRegisteredIdleIntervalMs = maxRegisteredIdleIntervalMs;
+        mWakeUpHoldMs = wakeUpHoldMs;
+    }
+
+    @Override
+    public synchronized void start(LinphoneCore linphoneCore, Looper looper) {
+        if (mRunning) {
+            throw new IllegalStateException("Iterate scheduler is already started");
+        }
+        mLc = linphoneCore;
+        mHandler = new Handler(looper);
+        mCurrentIntervalMs = mActiveIntervalMs;
+        mActiveUntil = SystemClock.uptimeMillis() + mWakeUpHoldMs;
+        mStats.reset();
+        mRunning = true;
+        mHandler.post(this);
+    }
+
+    @Override
+    public synchronized void stop() {
+        mRunning = false;
+        if (mHandler != null) {
+            mHandler.removeCallbacks(this);
+        }
+        mLc = null;
+    }
+
+    @Override
+    public void wakeUp() {
+        mActiveUntil = SystemClock.uptimeMillis() + mWakeUpHoldMs;
+        Handler handler = mHandler;
+        if (mRunning && handler != null && mCurrentIntervalMs > mActiveIntervalMs) {
+            // 正处于退避状态，立即执行一次并回到活跃间隔；与 run() 末尾的重新调度互斥，保证只有一条调度链
+            synchronized (this) {
+                handler.removeCallbacks(this);
+                handler.post(this);
+            }
+        }
+    }
+
+    @Override
+    public IterateStats getStats() {
+        return mStats;
+    }
+
+    @Override
+    public void run() {
+        LinphoneCore lc = mLc;
+        if (!mRunning || lc == null) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        lc.iterate();
+        mStats.record(start, System.nanoTime());
+        StallWatchdog.getInstance().end("iterate", start);
+
+        synchronized (this) {
+            if (!mRunning) {
+                return;
+            }
+            if (isActive(lc)) {
+                mCurrentIntervalMs = mActiveIntervalMs;
+            } else {
+                long maxIntervalMs = isRegistered(lc) ? mMaxRegisteredIdleIntervalMs : mMaxIdleIntervalMs;
+                mCurrentIntervalMs = Math.min(mCurrentIntervalMs * 2, maxIntervalMs);
+            }
+            // iterate() 中的回调或其他线程的提交可能已调用 wakeUp() 再次投递，先移除，只保留下一次
+            mHandler.removeCallbacks(this);
+            mHandler.postDelayed(this, mCurrentIntervalMs);
+        }
+    }
+
+    /**
+     * 是否有通话或未完成的事务
+     * @param lc LinphoneCore
+     * @return 是否需要保持活跃间隔
+     */
+    private boolean isActive(LinphoneCore lc) {
+        return lc.getCallsNb() > 0 || SystemClock.uptimeMillis() < mActiveUntil;
+    }
+
+    /**
+     * 是否有账号已注册，已注册时可能随时收到来电
+     */
+    private static boolean isRegistered(LinphoneCore lc) {
+        for (LinphoneProxyConfig proxyConfig : lc.getProxyConfigList()) {
+            if (proxyConfig.isRegistered()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,344 @@
+package com.xuchongyang.easyphone.linphone;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.SystemClock;
+
+import org.linphone.mediastream.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 资源文件导入：并行复制 raw 资源到应用目录，通过清单记录每个文件的应用版本和内容摘要
+ * 应用版本未变的文件直接跳过；版本变化时重新导入，内容有变化的文件先写临时文件再原子替换
+ * 大多数启动时全部跳过，只有两个及以上资源需要复制时才创建线程池
+ */
+
+public class AssetProvisioner {
+    private static final String TAG = "AssetProvisioner";
+    private static final String MANIFEST_FILE = "assets.manifest";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_THREADS = 4;
+
+    /**
+     * 内容变化时替换
+     */
+    public static final int MODE_REPLACE_IF_CHANGED = 0;
+    /**
+     * 仅在文件不存在时复制，用于运行时会被修改的文件，如 .linphonerc
+     */
+    public static final int MODE_COPY_IF_MISSING = 1;
+
+    private final Context mContext;
+    private final File mBaseDir;
+    private final List<Asset> mAssets = new ArrayList<>();
+
+    public AssetProvisioner(Context context) {
+        mContext = context;
+        mBaseDir = context.getFilesDir();
+    }
+
+    /**
+     * 添加资源
+     * @param resourceId raw 资源 ID
+     * @param target 目标文件路径，必须位于 filesDir 下
+     * @param mode MODE_REPLACE_IF_CHANGED 或 MODE_COPY_IF_MISSING
+     * @return 当前 AssetProvisioner
+     */
+    public AssetProvisioner add(int resourceId, String target, int mode) {
+        mAssets.add(new Asset(resourceId, new File(target), mode));
+        return this;
+    }
+
+    /**
+     * 导入所有资源，阻塞至全部完成
+     * @return 每个资源的导入结果
+     * @throws IOException 任一资源导入失败
+     */
+    public List<Result> provision() throws IOException {
+        final String version = getAppVersion();
+        final Properties manifest = loadManifest();
+        Result[] slots = new Result[mAssets.size()];
+        List<Integer> pending = new ArrayList<>();
+        for (int i = 0; i < slots.length; i++) {
+            Asset asset = mAssets.get(i);
+            String recorded = manifest.getProperty(asset.mTarget.getName());
+            if (isUpToDate(asset, version, recorded)) {
+                slots[i] = new Result(asset.mTarget.getName(), Result.SKIPPED, 0,
+                        SystemClock.elapsedRealtimeNanos(), recorded);
+            } else {
+                pending.add(i);
+            }
+        }
+        if (pending.size() == 1) {
+            int index = pending.get(0);
+            Asset asset = mAssets.get(index);
+            slots[index] = provision(asset, version, manifest.getProperty(asset.mTarget.getName()));
+        } else if (pending.size() > 1) {
+            copyInParallel(pending, slots, version, manifest);
+        }
+        List<Result> results = Arrays.asList(slots);
+
+        boolean changed = false;
+        for (Result result : results) {
+            Log.d(TAG, result);
+            if (result.mEntry != null && !result.mEntry.equals(manifest.getProperty(result.mName))) {
+                manifest.setProperty(result.mName, result.mEntry);
+                changed = true;
+            }
+        }
+        if (changed) {
+            saveManifest(manifest);
+        }
+        return Collections.unmodifiableList(results);
+    }
+
+    private void copyInParallel(List<Integer> pending, Result[] slots, final String version,
+                                final Properties manifest) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(MAX_THREADS, pending.size()));
+        try {
+            List<Future<Result>> futures = new ArrayList<>(pending.size());
+            for (int index : pending) {
+                final Asset asset = mAssets.get(index);
+                final String recorded = manifest.getProperty(asset.mTarget.getName());
+                futures.add(executor.submit(new Callable<Result>() {
+                    @Override
+                    public Result call() throws Exception {
+                        return provision(asset, version, recorded);
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                slots[pending.get(i)] = futures.get(i).get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Asset provisioning interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Asset provisioning failed", cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 文件已存在且无需重新导入，不读取资源
+     */
+    private static boolean isUpToDate(Asset asset, String version, String recorded) {
+        if (!asset.mTarget.exists()) {
+            return false;
+        }
+        return asset.mMode == MODE_COPY_IF_MISSING || (recorded != null && version.equals(versionOf(recorded)));
+    }
+
+    private Result provision(Asset asset, String version, String recorded) throws IOException {
+        long start = SystemClock.elapsedRealtimeNanos();
+        File target = asset.mTarget;
+        String name = target.getName();
+        File temp = new File(target.getPath() + TEMP_SUFFIX);
+        String hash;
+        long bytes = 0;
+        InputStream inputStream = mContext.getResources().openRawResource(asset.mResourceId);
+        FileOutputStream outputStream = new FileOutputStream(temp);
+        try {
+            ReadableByteChannel source = Channels.newChannel(inputStream);
+            FileChannel sink = outputStream.getChannel();
+            MessageDigest digest = newDigest();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            while (source.read(buffer) != -1) {
+                buffer.flip();
+                bytes += buffer.remaining();
+                // 摘要读取副本的位置，原缓冲区直接写入文件，不再复制到数组
+                digest.update(buffer.duplicate());
+                while (buffer.hasRemaining()) {
+                    sink.write(buffer);
+                }
+                buffer.clear();
+            }
+            sink.force(true);
+            hash = toHex(digest.digest());
+        } finally {
+            outputStream.close();
+            inputStream.close();
+        }
+
+        // 新版本内容未变化的文件保留原文件，只更新清单中的版本
+        if (target.exists() && recorded != null && hash.equals(hashOf(recorded))) {
+            temp.delete();
+            return new Result(name, Result.UNCHANGED, bytes, start, version + ":" + hash);
+        }
+        if (!temp.renameTo(target)) {
+            temp.delete();
+            throw new IOException("Cannot replace " + target);
+        }
+        return new Result(name, Result.COPIED, bytes, start, version + ":" + hash);
+    }
+
+    private String getAppVersion() {
+        try {
+            PackageInfo packageInfo = mContext.getPackageManager().getPackageInfo(mContext.getPackageName(), 0);
+            // 调试安装时 versionCode 可能不变，加上更新时间
+            return packageInfo.versionCode + "-" + packageInfo.lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            e.printStackTrace();
+            return "0";
+        }
+    }
+
+    private Properties loadManifest() {
+        Properties manifest = new Properties();
+        File file = new File(mBaseDir, MANIFEST_FILE);
+        if (!file.exists()) {
+            return manifest;
+        }
+        try {
+            FileInputStream inputStream = new FileInputStream(file);
+            try {
+                manifest.load(inputStream);
+            } finally {
+                inputStream.close();
+            }
+        } catch (IOException e) {
+            // 清单损坏时当作首次导入
+            e.printStackTrace();
+            manifest.clear();
+        }
+        return manifest;
+    }
+
+    private void saveManifest(Properties manifest) throws IOException {
+        File file = new File(mBaseDir, MANIFEST_FILE);
+        File temp = new File(mBaseDir, MANIFEST_FILE + TEMP_SUFFIX);
+        FileOutputStream outputStream = new FileOutputStream(temp);
+        try {
+            manifest.store(outputStream, null);
+            outputStream.getFD().sync();
+        } finally {
+            outputStream.close();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+
+    private static String versionOf(String entry) {
+        int index = entry.indexOf(':');
+        return index < 0 ? entry : entry.substring(0, index);
+    }
+
+    private static String hashOf(String entry) {
+        int index = entry.indexOf(':');
+        return index < 0 ? "" : entry.substring(index + 1);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] digits = "0123456789abcdef".toCharArray();
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = digits[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = digits[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    private static class Asset {
+        final int mResourceId;
+        final File mTarget;
+        final int mMode;
+
+        Asset(int resourceId, File target, int mode) {
+            mResourceId = resourceId;
+            mTarget = target;
+            mMode = mode;
+        }
+    }
+
+    /**
+     * 单个资源的导入结果
+     */
+    public static class Result {
+        /**
+         * 已复制或替换
+         */
+        public static final int COPIED = 0;
+        /**
+         * 重新读取后内容未变化，未替换
+         */
+        public static final int UNCHANGED = 1;
+        /**
+         * 版本未变或文件已存在，未读取
+         */
+        public static final int SKIPPED = 2;
+
+        private final String mName;
+        private final int mStatus;
+        private final long mBytes;
+        private final long mNanos;
+        private final String mEntry;
+
+        Result(String name, int status, long bytes, long startNanos, String entry) {
+            mName = name;
+            mStatus = status;
+            mBytes = bytes;
+            mNanos = SystemClock.elapsedRealtimeNanos() - startNanos;
+            mEntry = entry;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public int getStatus() {
+            return mStatus;
+        }
+
+        public long getBytes() {
+            return mBytes;
+        }
+
+        public long getNanos() {
+            return mNanos;
+        }
+
+        @Override
+        public String toString() {
+            String status = mStatus == COPIED ? "copied" : mStatus == UNCHANGED ? "unchanged" : "skipped";
+            return mName + " " + status + ", " + mBytes + " bytes in " + (mNanos / 1000) + " us";
+        }
+    }
+}
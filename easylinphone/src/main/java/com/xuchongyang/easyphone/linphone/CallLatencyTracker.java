@@ -0,0 +1,172 @@
+package com.xuchongyang.easyphone.linphone;
+
+import android.os.SystemClock;
+
+import org.linphone.core.LinphoneCall;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 通话建立各阶段的耗时统计，每个阶段一个 LatencyHistogram，登记在 MetricsRegistry 的 call.setup.* 下
+ * 状态更新在 Linphone 核心线程中调用，查询可在任意线程调用
+ */
+
+public class CallLatencyTracker {
+    private static volatile CallLatencyTracker sInstance;
+    private final LatencyHistogram[] mHistograms = new LatencyHistogram[Phase.values().length];
+    private final Map<String, Timeline> mTimelines = new HashMap<>();
+
+    /**
+     * 通话建立阶段
+     */
+    public enum Phase {
+        /**
+         * 呼出：OutgoingInit 到 OutgoingProgress（INVITE 发出）
+         */
+        OUTGOING_PROGRESS,
+        /**
+         * 呼出：OutgoingInit 到 OutgoingRinging，即拨号后延迟
+         */
+        OUTGOING_RINGING,
+        /**
+         * 呼出：OutgoingInit 到 Connected
+         */
+        OUTGOING_CONNECTED,
+        /**
+         * 呼出：OutgoingInit 到首次 StreamsRunning
+         */
+        OUTGOING_STREAMS_RUNNING,
+        /**
+         * 呼入：接听到 Connected
+         */
+        INCOMING_ACCEPT_CONNECTED,
+        /**
+         * 呼入：接听到首次 StreamsRunning
+         */
+        INCOMING_ACCEPT_STREAMS_RUNNING
+    }
+
+    /**
+     * 获取 CallLatencyTracker 实例
+     * @return CallLatencyTracker 实例
+     */
+    public static CallLatencyTracker getInstance() {
+        if (sInstance == null) {
+            synchronized (CallLatencyTracker.class) {
+                if (sInstance == null) {
+                    sInstance = new CallLatencyTracker();
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    private CallLatencyTracker() {
+        for (Phase phase : Phase.values()) {
+            mHistograms[phase.ordinal()] = MetricsRegistry.getInstance()
+                    .histogram("call.setup." + phase.name().toLowerCase(Locale.US));
+        }
+    }
+
+    /**
+     * 获取阶段的直方图
+     * @param phase 阶段
+     * @return LatencyHistogram
+     */
+    public LatencyHistogram getHistogram(Phase phase) {
+        return mHistograms[phase.ordinal()];
+    }
+
+    /**
+     * 获取所有阶段的快照并清空，用于按时间窗口上报
+     * @return 阶段到快照的映射
+     */
+    public Map<Phase, LatencyHistogram.Snapshot> snapshotAndReset() {
+        Map<Phase, LatencyHistogram.Snapshot> snapshots = new HashMap<>();
+        for (Phase phase : Phase.values()) {
+            snapshots.put(phase, mHistograms[phase.ordinal()].snapshotAndReset());
+        }
+        return snapshots;
+    }
+
+    /**
+     * 接听来电，在 Linphone 核心线程中调用
+     * @param linphoneCall 通话
+     */
+    void onAccept(LinphoneCall linphoneCall) {
+        Timeline timeline = timelineOf(LinphoneUtils.getCallId(linphoneCall));
+        if (timeline != null && timeline.mAcceptTime == 0) {
+            timeline.mAcceptTime = SystemClock.elapsedRealtime();
+        }
+    }
+
+    /**
+     * 通话状态变化，在 Linphone 核心线程中调用
+     * @param linphoneCall 通话
+     * @param state 通话状态
+     */
+    void onCallState(LinphoneCall linphoneCall, LinphoneCall.State state) {
+        String callId = LinphoneUtils.getCallId(linphoneCall);
+        if (callId == null) {
+            return;
+        }
+        if (state == LinphoneCall.State.CallReleased || state == LinphoneCall.State.CallEnd
+                || state == LinphoneCall.State.Error) {
+            mTimelines.remove(callId);
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        if (state == LinphoneCall.State.OutgoingInit) {
+            Timeline timeline = timelineOf(callId);
+            timeline.mInitTime = now;
+            return;
+        }
+        Timeline timeline = mTimelines.get(callId);
+        if (timeline == null) {
+            return;
+        }
+        if (state == LinphoneCall.State.OutgoingProgress) {
+            recordOnce(timeline, Phase.OUTGOING_PROGRESS, timeline.mInitTime, now);
+        } else if (state == LinphoneCall.State.OutgoingRinging) {
+            recordOnce(timeline, Phase.OUTGOING_RINGING, timeline.mInitTime, now);
+        } else if (state == LinphoneCall.State.Connected) {
+            recordOnce(timeline, Phase.OUTGOING_CONNECTED, timeline.mInitTime, now);
+            recordOnce(timeline, Phase.INCOMING_ACCEPT_CONNECTED, timeline.mAcceptTime, now);
+        } else if (state == LinphoneCall.State.StreamsRunning) {
+            recordOnce(timeline, Phase.OUTGOING_STREAMS_RUNNING, timeline.mInitTime, now);
+            recordOnce(timeline, Phase.INCOMING_ACCEPT_STREAMS_RUNNING, timeline.mAcceptTime, now);
+        }
+    }
+
+    private Timeline timelineOf(String callId) {
+        if (callId == null) {
+            return null;
+        }
+        Timeline timeline = mTimelines.get(callId);
+        if (timeline == null) {
+            timeline = new Timeline();
+            mTimelines.put(callId, timeline);
+        }
+        return timeline;
+    }
+
+    /**
+     * 每个阶段每路通话只记录一次，重新协商产生的 StreamsRunning 不计入
+     */
+    private void recordOnce(Timeline timeline, Phase phase, long startTime, long now) {
+        int bit = 1 << phase.ordinal();
+        if (startTime == 0 || (timeline.mRecorded & bit) != 0) {
+            return;
+        }
+        timeline.mRecorded |= bit;
+        mHistograms[phase.ordinal()].record(now - startTime);
+    }
+
+    private static class Timeline {
+        long mInitTime;
+        long mAcceptTime;
+        int mRecorded;
+    }
+}
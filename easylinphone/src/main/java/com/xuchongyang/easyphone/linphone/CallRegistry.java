@@ -0,0 +1,176 @@
+package com.xuchongyang.easyphone.linphone;
+
+import org.linphone.core.LinphoneCall;
+import org.linphone.core.LinphoneCore;
+import org.linphone.core.LinphoneCoreException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 通话登记表，按 Call-ID 保存所有进行中的通话，支持同时管理多路通话
+ * 查询方法可在任意线程调用，操作通话的方法在 Linphone 核心线程中调用
+ */
+
+public class CallRegistry {
+    private final ConcurrentHashMap<String, CallSession> mSessions = new ConcurrentHashMap<>();
+    private static final Comparator<CallSession> BY_CREATE_TIME = new Comparator<CallSession>() {
+        @Override
+        public int compare(CallSession lhs, CallSession rhs) {
+            long diff = lhs.getCreateTime() - rhs.getCreateTime();
+            return diff < 0 ? -1 : (diff == 0 ? 0 : 1);
+        }
+    };
+
+    /**
+     * 通话状态变化，在 Linphone 核心线程中调用
+     * @param linphoneCall 通话
+     * @param state 通话状态
+     */
+    void onCallState(LinphoneCall linphoneCall, LinphoneCall.State state) {
+        String callId = LinphoneUtils.getCallId(linphoneCall);
+        if (callId == null) {
+            return;
+        }
+        if (state == LinphoneCall.State.CallReleased) {
+            CallSession session = mSessions.remove(callId);
+            if (session != null) {
+                session.setState(state);
+            }
+            return;
+        }
+        CallSession session = mSessions.get(callId);
+        if (session == null) {
+            mSessions.put(callId, new CallSession(callId, linphoneCall, state));
+        } else {
+            session.setState(state);
+        }
+    }
+
+    void clear() {
+        mSessions.clear();
+    }
+
+    /**
+     * 获取通话
+     * @param callId 通话 ID
+     * @return CallSession，不存在时返回 null
+     */
+    public CallSession getSession(String callId) {
+        return callId == null ? null : mSessions.get(callId);
+    }
+
+    /**
+     * 获取通话
+     * @param linphoneCall 通话
+     * @return CallSession，不存在时返回 null
+     */
+    public CallSession getSession(LinphoneCall linphoneCall) {
+        return getSession(LinphoneUtils.getCallId(linphoneCall));
+    }
+
+    /**
+     * 获取所有进行中的通话
+     * @return 通话列表，按创建时间排序
+     */
+    public List<CallSession> getSessions() {
+        List<CallSession> sessions = new ArrayList<>(mSessions.values());
+        Collections.sort(sessions, BY_CREATE_TIME);
+        return sessions;
+    }
+
+    /**
+     * 最近一个正在振铃的呼入通话
+     * @return CallSession，没有时返回 null
+     */
+    public CallSession getLatestIncoming() {
+        CallSession latest = null;
+        for (CallSession session : mSessions.values()) {
+            LinphoneCall.State state = session.getState();
+            if ((state == LinphoneCall.State.IncomingReceived || state == LinphoneCall.State.CallIncomingEarlyMedia)
+                    && (latest == null || session.getCreateTime() > latest.getCreateTime())) {
+                latest = session;
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * 接听指定通话
+     * @param linphoneCore LinphoneCore
+     * @param callId 通话 ID
+     * @throws LinphoneCoreException 接听失败
+     */
+    public void accept(LinphoneCore linphoneCore, String callId) throws LinphoneCoreException {
+        accept(linphoneCore, require(callId));
+    }
+
+    /**
+     * 接听通话，并记录接听时间用于统计接通耗时
+     * @param linphoneCore LinphoneCore
+     * @param linphoneCall 通话
+     * @throws LinphoneCoreException 接听失败
+     */
+    public void accept(LinphoneCore linphoneCore, LinphoneCall linphoneCall) throws LinphoneCoreException {
+        CallLatencyTracker.getInstance().onAccept(linphoneCall);
+        linphoneCore.acceptCall(linphoneCall);
+    }
+
+    /**
+     * 保持指定通话
+     * @param linphoneCore LinphoneCore
+     * @param callId 通话 ID
+     */
+    public void hold(LinphoneCore linphoneCore, String callId) {
+        linphoneCore.pauseCall(require(callId));
+    }
+
+    /**
+     * 恢复指定通话，liblinphone 会先保持当前通话
+     * @param linphoneCore LinphoneCore
+     * @param callId 通话 ID
+     */
+    public void resume(LinphoneCore linphoneCore, String callId) {
+        linphoneCore.resumeCall(require(callId));
+    }
+
+    /**
+     * 挂断指定通话
+     * @param linphoneCore LinphoneCore
+     * @param callId 通话 ID
+     */
+    public void terminate(LinphoneCore linphoneCore, String callId) {
+        linphoneCore.terminateCall(require(callId));
+    }
+
+    /**
+     * 切换到指定通话：保持当前通话，接听或恢复目标通话
+     * @param linphoneCore LinphoneCore
+     * @param callId 通话 ID
+     * @throws LinphoneCoreException 接听失败
+     */
+    public void switchTo(LinphoneCore linphoneCore, String callId) throws LinphoneCoreException {
+        LinphoneCall target = require(callId);
+        LinphoneCall current = linphoneCore.getCurrentCall();
+        if (current != null && current != target) {
+            linphoneCore.pauseCall(current);
+        }
+        LinphoneCall.State state = target.getState();
+        if (state == LinphoneCall.State.IncomingReceived || state == LinphoneCall.State.CallIncomingEarlyMedia) {
+            accept(linphoneCore, target);
+        } else if (state == LinphoneCall.State.Paused) {
+            linphoneCore.resumeCall(target);
+        }
+    }
+
+    private LinphoneCall require(String callId) {
+        CallSession session = getSession(callId);
+        if (session == null) {
+            throw new IllegalArgumentException("No call with id " + callId);
+        }
+        return session.getCall();
+    }
+}
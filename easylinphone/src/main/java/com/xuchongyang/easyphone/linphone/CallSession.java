@@ -0,0 +1,99 @@
+package com.xuchongyang.easyphone.linphone;
+
+import android.os.SystemClock;
+
+import org.linphone.core.LinphoneAddress;
+import org.linphone.core.LinphoneCall;
+
+/**
+ * 单个通话的状态，由 CallRegistry 根据 callState 更新
+ * 除 {@link #getCall()} 外的方法可在任意线程调用
+ */
+
+public class CallSession {
+    private final String mCallId;
+    private final LinphoneCall mCall;
+    private final String mRemoteAddress;
+    private final boolean mIncoming;
+    private final long mCreateTime;
+    private volatile LinphoneCall.State mState;
+    private volatile long mConnectTime;
+
+    CallSession(String callId, LinphoneCall linphoneCall, LinphoneCall.State state) {
+        mCallId = callId;
+        mCall = linphoneCall;
+        LinphoneAddress address = linphoneCall.getRemoteAddress();
+        mRemoteAddress = address == null ? null : address.asStringUriOnly();
+        mIncoming = state == LinphoneCall.State.IncomingReceived;
+        mCreateTime = SystemClock.elapsedRealtime();
+        mState = state;
+    }
+
+    void setState(LinphoneCall.State state) {
+        if (state == LinphoneCall.State.Connected && mConnectTime == 0) {
+            mConnectTime = SystemClock.elapsedRealtime();
+        }
+        mState = state;
+    }
+
+    /**
+     * 获取通话 ID
+     * @return SIP Call-ID
+     */
+    public String getCallId() {
+        return mCallId;
+    }
+
+    /**
+     * 获取通话对象，只能在 Linphone 核心线程中使用
+     * @return LinphoneCall
+     */
+    public LinphoneCall getCall() {
+        return mCall;
+    }
+
+    /**
+     * 获取对方地址
+     * @return 对方 SIP 地址
+     */
+    public String getRemoteAddress() {
+        return mRemoteAddress;
+    }
+
+    /**
+     * 是否为呼入通话
+     * @return 是否为呼入
+     */
+    public boolean isIncoming() {
+        return mIncoming;
+    }
+
+    /**
+     * 获取当前状态
+     * @return 通话状态
+     */
+    public LinphoneCall.State getState() {
+        return mState;
+    }
+
+    /**
+     * 获取创建时间
+     * @return SystemClock.elapsedRealtime() 时间，ms
+     */
+    public long getCreateTime() {
+        return mCreateTime;
+    }
+
+    /**
+     * 获取接通时间
+     * @return SystemClock.elapsedRealtime() 时间，ms，未接通时返回 0
+     */
+    public long getConnectTime() {
+        return mConnectTime;
+    }
+
+    @Override
+    public String toString() {
+        return "CallSession{" + mCallId + ", " + mRemoteAddress + ", " + mState + "}";
+    }
+}
@@ -0,0 +1,156 @@
+package com.xuchongyang.easyphone.linphone;
+
+import android.os.SystemClock;
+
+import org.linphone.core.LinphoneAddress;
+import org.linphone.core.LinphoneCall;
+import org.linphone.core.LinphoneCallParams;
+import org.linphone.core.LinphoneCore;
+import org.linphone.core.LinphoneCoreException;
+import org.linphone.mediastream.Log;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 呼叫建立缓存：缓存解析后的地址和预先创建的音频、视频通话参数，重拨时省去解析和参数创建
+ * 同时统计从发起呼叫到 INVITE 发出（OutgoingProgress）的耗时
+ * 除耗时统计的读取方法外，所有方法在 Linphone 核心线程中调用
+ */
+
+public class CallSetupCache {
+    private static final String TAG = "CallSetupCache";
+    private static final int MAX_ADDRESSES = 32;
+
+    private final LinkedHashMap<String, LinphoneAddress> mAddresses =
+            new LinkedHashMap<String, LinphoneAddress>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, LinphoneAddress> eldest) {
+                    return size() > MAX_ADDRESSES;
+                }
+            };
+    private final Map<String, Long> mPendingSetups = new HashMap<>();
+    private LinphoneCore mLc;
+    private LinphoneCallParams mAudioParams;
+    private LinphoneCallParams mVideoParams;
+    private volatile long mLastSetupMillis = -1;
+    private volatile long mTotalSetupMillis;
+    private volatile int mSetupCount;
+
+    void start(LinphoneCore linphoneCore) {
+        mLc = linphoneCore;
+        prewarm();
+    }
+
+    void stop() {
+        mAddresses.clear();
+        mPendingSetups.clear();
+        mAudioParams = null;
+        mVideoParams = null;
+        mLc = null;
+    }
+
+    /**
+     * 预先创建通话参数模板
+     */
+    void prewarm() {
+        if (mLc == null) {
+            return;
+        }
+        mAudioParams = mLc.createCallParams(null);
+        mAudioParams.setVideoEnabled(false);
+        mVideoParams = mLc.createCallParams(null);
+        mVideoParams.setVideoEnabled(true);
+        mVideoParams.enableLowBandwidth(false);
+    }
+
+    /**
+     * 重新创建通话参数模板，网络变化后默认参数可能不同
+     */
+    void invalidateParams() {
+        prewarm();
+    }
+
+    /**
+     * 获取呼叫地址，优先使用缓存
+     * @param userName 号码
+     * @param host 服务器
+     * @return LinphoneAddress，多次呼叫共用同一个对象，发起呼叫时 liblinphone 会复制
+     * @throws LinphoneCoreException 地址无法解析
+     */
+    LinphoneAddress getAddress(String userName, String host) throws LinphoneCoreException {
+        String key = userName + "@" + host;
+        LinphoneAddress address = mAddresses.get(key);
+        if (address == null) {
+            address = mLc.interpretUrl(key);
+            mAddresses.put(key, address);
+        }
+        return address;
+    }
+
+    /**
+     * 获取通话参数模板
+     * @param isVideoCall 是否为视频通话
+     * @return LinphoneCallParams，发起呼叫时 liblinphone 会复制
+     */
+    LinphoneCallParams getParams(boolean isVideoCall) {
+        if (mAudioParams == null) {
+            prewarm();
+        }
+        return isVideoCall ? mVideoParams : mAudioParams;
+    }
+
+    /**
+     * 记录呼叫发起时间
+     * @param linphoneCall 新建的通话
+     * @param requestTime 调用方请求呼叫的时间，SystemClock.elapsedRealtime()
+     */
+    void onInvite(LinphoneCall linphoneCall, long requestTime) {
+        String callId = LinphoneUtils.getCallId(linphoneCall);
+        if (callId != null) {
+            mPendingSetups.put(callId, requestTime);
+        }
+    }
+
+    /**
+     * 通话状态变化
+     * @param linphoneCall 通话
+     * @param state 通话状态
+     */
+    void onCallState(LinphoneCall linphoneCall, LinphoneCall.State state) {
+        if (mPendingSetups.isEmpty()) {
+            return;
+        }
+        if (state == LinphoneCall.State.OutgoingProgress) {
+            Long requestTime = mPendingSetups.remove(LinphoneUtils.getCallId(linphoneCall));
+            if (requestTime != null) {
+                long setupMillis = SystemClock.elapsedRealtime() - requestTime;
+                mLastSetupMillis = setupMillis;
+                mTotalSetupMillis += setupMillis;
+                mSetupCount++;
+                Log.d(TAG, "Call setup took " + setupMillis + " ms");
+            }
+        } else if (state == LinphoneCall.State.Error || state == LinphoneCall.State.CallEnd
+                || state == LinphoneCall.State.CallReleased) {
+            mPendingSetups.remove(LinphoneUtils.getCallId(linphoneCall));
+        }
+    }
+
+    /**
+     * 最近一次从发起呼叫到 INVITE 发出的耗时
+     * @return 耗时，ms，尚无记录时返回 -1
+     */
+    public long getLastSetupMillis() {
+        return mLastSetupMillis;
+    }
+
+    /**
+     * 平均呼叫建立耗时
+     * @return 耗时，ms，尚无记录时返回 -1
+     */
+    public long getAverageSetupMillis() {
+        int count = mSetupCount;
+        return count == 0 ? -1 : mTotalSetupMillis / count;
+    }
+}
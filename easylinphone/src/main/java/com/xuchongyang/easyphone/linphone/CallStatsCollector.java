@@ -0,0 +1,173 @@
+package com.xuchongyang.easyphone.linphone;
+
+import org.linphone.core.LinphoneCall;
+import org.linphone.core.LinphoneCallStats;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 通话质量统计收集器，按通话保存最近的采样并计算滑动统计
+ */
+
+public class CallStatsCollector {
+    /**
+     * 每个媒体流保留的采样数，callStatsUpdated 约每秒一次
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 30;
+
+    private static volatile CallStatsCollector sInstance;
+    private final Map<String, CallStats> mCalls = new HashMap<>();
+    private final CopyOnWriteArrayList<Listener> mListeners = new CopyOnWriteArrayList<>();
+    private final int mWindowSize;
+
+    /**
+     * 统计更新监听，在 Linphone 核心线程中回调
+     */
+    public interface Listener {
+        void onCallStatsUpdated(LinphoneCall linphoneCall, CallStatsSummary summary);
+    }
+
+    /**
+     * 获取 CallStatsCollector 实例
+     * @return CallStatsCollector 实例
+     */
+    public static CallStatsCollector getInstance() {
+        if (sInstance == null) {
+            synchronized (CallStatsCollector.class) {
+                if (sInstance == null) {
+                    sInstance = new CallStatsCollector(DEFAULT_WINDOW_SIZE);
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    private CallStatsCollector(int windowSize) {
+        mWindowSize = windowSize;
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * 记录一次统计更新，在 Linphone 核心线程中调用
+     * @param linphoneCall 通话
+     * @param stats 统计数据
+     * @return 更新后的统计快照
+     */
+    CallStatsSummary record(LinphoneCall linphoneCall, LinphoneCallStats stats) {
+        String callId = LinphoneUtils.getCallId(linphoneCall);
+        if (callId == null || stats == null) {
+            return null;
+        }
+        boolean video = stats.getMediaType() == LinphoneCallStats.MediaType.Video;
+        CallStatsSummary summary;
+        synchronized (mCalls) {
+            CallStats callStats = mCalls.get(callId);
+            if (callStats == null) {
+                callStats = new CallStats(mWindowSize);
+                mCalls.put(callId, callStats);
+            }
+            MediaStats mediaStats = video ? callStats.mVideo : callStats.mAudio;
+            mediaStats.add(stats);
+            summary = mediaStats.summarize(callId, video);
+        }
+        for (Listener listener : mListeners) {
+            listener.onCallStatsUpdated(linphoneCall, summary);
+        }
+        return summary;
+    }
+
+    /**
+     * 获取通话的统计快照
+     * @param callId 通话 ID
+     * @param isVideo 是否为视频流
+     * @return 统计快照，无数据时返回 null
+     */
+    public CallStatsSummary getSummary(String callId, boolean isVideo) {
+        synchronized (mCalls) {
+            CallStats callStats = mCalls.get(callId);
+            if (callStats == null) {
+                return null;
+            }
+            MediaStats mediaStats = isVideo ? callStats.mVideo : callStats.mAudio;
+            return mediaStats.isEmpty() ? null : mediaStats.summarize(callId, isVideo);
+        }
+    }
+
+    /**
+     * 释放通话的统计数据
+     * @param callId 通话 ID
+     */
+    void release(String callId) {
+        if (callId == null) {
+            return;
+        }
+        synchronized (mCalls) {
+            mCalls.remove(callId);
+        }
+    }
+
+    private static class CallStats {
+        final MediaStats mAudio;
+        final MediaStats mVideo;
+
+        CallStats(int windowSize) {
+            mAudio = new MediaStats(windowSize);
+            mVideo = new MediaStats(windowSize);
+        }
+    }
+
+    private static class MediaStats {
+        private final FloatRingBuffer[] mBuffers = new FloatRingBuffer[CallStatsSummary.METRICS.length];
+
+        MediaStats(int windowSize) {
+            for (int i = 0; i < mBuffers.length; i++) {
+                mBuffers[i] = new FloatRingBuffer(windowSize);
+            }
+        }
+
+        boolean isEmpty() {
+            return mBuffers[0].size() == 0;
+        }
+
+        void add(LinphoneCallStats stats) {
+            // 到达抖动和往返时延单位为秒
+            put(CallStatsSummary.Metric.JITTER, stats.getReceiverInterarrivalJitter() * 1000);
+            put(CallStatsSummary.Metric.RECEIVER_LOSS_RATE, stats.getReceiverLossRate());
+            put(CallStatsSummary.Metric.SENDER_LOSS_RATE, stats.getSenderLossRate());
+            put(CallStatsSummary.Metric.ROUND_TRIP_DELAY, stats.getRoundTripDelay() * 1000);
+            put(CallStatsSummary.Metric.UPLOAD_BANDWIDTH, stats.getUploadBandwidth());
+            put(CallStatsSummary.Metric.DOWNLOAD_BANDWIDTH, stats.getDownloadBandwidth());
+            put(CallStatsSummary.Metric.JITTER_BUFFER_SIZE, stats.getJitterBufferSize());
+            put(CallStatsSummary.Metric.LOCAL_JITTER, stats.getSenderInterarrivalJitter() * 1000);
+        }
+
+        private void put(CallStatsSummary.Metric metric, float value) {
+            mBuffers[metric.ordinal()].add(value);
+        }
+
+        CallStatsSummary summarize(String callId, boolean video) {
+            int count = mBuffers.length;
+            float[] last = new float[count];
+            float[] mean = new float[count];
+            float[] min = new float[count];
+            float[] max = new float[count];
+            for (int i = 0; i < count; i++) {
+                FloatRingBuffer buffer = mBuffers[i];
+                last[i] = buffer.last();
+                mean[i] = buffer.mean();
+                min[i] = buffer.min();
+                max[i] = buffer.max();
+            }
+            return new CallStatsSummary(callId, video, mBuffers[0].size(), last, mean, min, max);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.xuchongyang.easyphone.linphone;
+
+import java.util.Locale;
+
+/**
+ * 单个通话某一媒体流的质量统计快照，不可变
+ */
+
+public class CallStatsSummary {
+    /**
+     * 统计指标
+     */
+    public enum Metric {
+        /** 对端报告的到达抖动，即我方发送的流在对端的抖动，ms */
+        JITTER,
+        /** 接收丢包率，% */
+        RECEIVER_LOSS_RATE,
+        /** 发送丢包率（对端报告），% */
+        SENDER_LOSS_RATE,
+        /** 往返时延，ms */
+        ROUND_TRIP_DELAY,
+        /** 上行带宽，kbit/s */
+        UPLOAD_BANDWIDTH,
+        /** 下行带宽，kbit/s */
+        DOWNLOAD_BANDWIDTH,
+        /** 抖动缓冲大小，ms */
+        JITTER_BUFFER_SIZE,
+        /** 本端测得的到达抖动，即接收的流的抖动，ms */
+        LOCAL_JITTER
+    }
+
+    static final Metric[] METRICS = Metric.values();
+
+    private final String mCallId;
+    private final boolean mVideo;
+    private final int mSampleCount;
+    private final float[] mLast;
+    private final float[] mMean;
+    private final float[] mMin;
+    private final float[] mMax;
+
+    CallStatsSummary(String callId, boolean video, int sampleCount,
+                     float[] last, float[] mean, float[] min, float[] max) {
+        mCallId = callId;
+        mVideo = video;
+        mSampleCount = sampleCount;
+        mLast = last;
+        mMean = mean;
+        mMin = min;
+        mMax = max;
+    }
+
+    public String getCallId() {
+        return mCallId;
+    }
+
+    /**
+     * 是否为视频流统计
+     * @return true 为视频流，false 为音频流
+     */
+    public boolean isVideo() {
+        return mVideo;
+    }
+
+    /**
+     * 统计窗口内的采样数
+     * @return 采样数
+     */
+    public int getSampleCount() {
+        return mSampleCount;
+    }
+
+    public float getLast(Metric metric) {
+        return mLast[metric.ordinal()];
+    }
+
+    public float getMean(Metric metric) {
+        return mMean[metric.ordinal()];
+    }
+
+    public float getMin(Metric metric) {
+        return mMin[metric.ordinal()];
+    }
+
+    public float getMax(Metric metric) {
+        return mMax[metric.ordinal()];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("CallStatsSummary{callId=").append(mCallId)
+                .append(", ").append(mVideo ? "video" : "audio")
+                .append(", samples=").append(mSampleCount);
+        for (Metric metric : METRICS) {
+            int i = metric.ordinal();
+            builder.append(", ").append(metric.name().toLowerCase(Locale.US))
+                    .append("=").append(mLast[i])
+                    .append("/").append(mMean[i])
+                    .append("/").append(mMax[i]);
+        }
+        return builder.append("}").toString();
+    }
+}
@@ -0,0 +1,370 @@
+package com.xuchongyang.easyphone.linphone;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+
+import org.linphone.core.LinphoneAddress;
+import org.linphone.core.LinphoneChatMessage;
+import org.linphone.core.LinphoneChatRoom;
+import org.linphone.core.LinphoneCore;
+import org.linphone.core.LinphoneCoreException;
+import org.linphone.core.LinphoneCoreFactory;
+import org.linphone.mediastream.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 聊天记录：收发消息，按会话分页查询 linphone-history.db，维护各会话的未读数
+ * 查询按 (utc, id) 倒序翻页，使用 (remoteContact, utc) 索引，与会话总条数无关；未读数启动时统计一次，之后随收到和已读增量更新
+ * 数据库由 liblinphone 写入，这里以只读方式查询，标记已读通过 liblinphone 完成
+ * liblinphone 自带 SQLite，与系统 SQLite 同时写同一文件时 POSIX 锁会互相失效，索引只在 liblinphone 打开数据库之前建立
+ * 查询方法可在任意线程调用，数据量大时请在后台线程调用；其余方法在 Linphone 核心线程中调用
+ */
+
+public class ChatHistory {
+    private static final String TAG = "ChatHistory";
+    /**
+     * history 表 direction 列的取值，与 LinphoneChatMessageDir 一致
+     */
+    static final int DIRECTION_OUTGOING = 0;
+    private static final int DIRECTION_INCOMING = 1;
+    /**
+     * forEach 每次读取的条数，内存中只保留一批
+     */
+    static final int BATCH_SIZE = 200;
+    private static final String SELECT = "SELECT id, remoteContact, direction, message, url, read, utc FROM history";
+    private static final String CREATE_INDEX =
+            "CREATE INDEX IF NOT EXISTS history_remote_utc ON history (remoteContact, utc)";
+
+    private final LinphoneCoreThread mCoreThread;
+    private final String mDatabasePath;
+    private final ConcurrentHashMap<String, Integer> mUnreadCounts = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<Listener> mListeners = new CopyOnWriteArrayList<>();
+    private final Runnable mLoadTask = new Runnable() {
+        @Override
+        public void run() {
+            loadUnreadCounts();
+        }
+    };
+    private LinphoneCore mLc;
+    private boolean mUnreadLoaded;
+    private SQLiteDatabase mDatabase;
+    private boolean mClosed;
+
+    /**
+     * 收到消息监听，在 Linphone 核心线程中回调
+     */
+    public interface Listener {
+        void onMessageReceived(ChatMessage message, int unreadCount);
+    }
+
+    /**
+     * 逐条遍历聊天记录
+     */
+    public interface Visitor {
+        /**
+         * @param message 聊天记录
+         * @return 是否继续遍历
+         */
+        boolean visit(ChatMessage message);
+    }
+
+    ChatHistory(LinphoneCoreThread coreThread, String databasePath) {
+        mCoreThread = coreThread;
+        mDatabasePath = databasePath;
+    }
+
+    /**
+     * 建立索引，在 setChatDatabasePath 之前调用，此时 liblinphone 尚未打开数据库
+     * 首次安装时数据库由 liblinphone 创建，下次启动时建立索引
+     */
+    void prepare() {
+        if (!new File(mDatabasePath).exists()) {
+            return;
+        }
+        SQLiteDatabase database = null;
+        try {
+            database = SQLiteDatabase.openDatabase(mDatabasePath, null, SQLiteDatabase.OPEN_READWRITE);
+            database.execSQL(CREATE_INDEX);
+        } catch (SQLiteException e) {
+            e.printStackTrace();
+        } finally {
+            if (database != null) {
+                database.close();
+            }
+        }
+    }
+
+    /**
+     * 开始工作，设置 ChatDatabasePath 之后调用；统计未读数推迟到启动完成后进行
+     * @param linphoneCore LinphoneCore
+     */
+    void start(LinphoneCore linphoneCore) {
+        mLc = linphoneCore;
+        mCoreThread.post(mLoadTask);
+    }
+
+    /**
+     * 停止工作，在 LinphoneCore 销毁之后调用，关闭连接时不会释放 liblinphone 持有的锁
+     */
+    void stop() {
+        mCoreThread.removeCallbacks(mLoadTask);
+        mLc = null;
+        mUnreadLoaded = false;
+        mUnreadCounts.clear();
+        synchronized (this) {
+            mClosed = true;
+            if (mDatabase != null) {
+                mDatabase.close();
+                mDatabase = null;
+            }
+        }
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * 发送文本消息
+     * @param peer 对方地址
+     * @param text 消息内容
+     * @return 已保存的消息
+     */
+    ChatMessage send(LinphoneAddress peer, String text) {
+        LinphoneChatRoom chatRoom = mLc.getChatRoom(peer);
+        LinphoneChatMessage message = chatRoom.createLinphoneChatMessage(text);
+        chatRoom.sendChatMessage(message);
+        MetricsRegistry.getInstance().counter("chat.sent").increment();
+        return ChatMessage.from(message);
+    }
+
+    /**
+     * 把会话中的消息标记为已读
+     * @param peer 对方地址，与 {@link ChatMessage#getPeer()} 相同
+     * @throws LinphoneCoreException 地址无效
+     */
+    void markAsRead(String peer) throws LinphoneCoreException {
+        LinphoneAddress address = LinphoneCoreFactory.instance().createLinphoneAddress(peer);
+        mLc.getChatRoom(address).markAsRead();
+        mUnreadCounts.remove(peer);
+    }
+
+    /**
+     * 收到消息，更新未读数并通知监听
+     * @param chatRoom 会话
+     * @param message 消息
+     */
+    void onMessageReceived(LinphoneChatRoom chatRoom, LinphoneChatMessage message) {
+        if (mLc == null) {
+            return;
+        }
+        ChatMessage chatMessage = ChatMessage.from(message);
+        String peer = chatRoom.getPeerAddress().asStringUriOnly();
+        if (!mUnreadLoaded) {
+            // 启动时未能统计，现在统计；消息已写入数据库，会被统计在内
+            loadUnreadCounts();
+        } else if (!message.isRead()) {
+            Integer count = mUnreadCounts.get(peer);
+            mUnreadCounts.put(peer, count == null ? 1 : count + 1);
+        }
+        int unreadCount = getUnreadCount(peer);
+        for (Listener listener : mListeners) {
+            listener.onMessageReceived(chatMessage, unreadCount);
+        }
+    }
+
+    /**
+     * 获取会话的未读数
+     * @param peer 对方地址
+     * @return 未读数
+     */
+    public int getUnreadCount(String peer) {
+        Integer count = mUnreadCounts.get(peer);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * 获取所有会话的未读数
+     * @return 对方地址到未读数的映射，不含没有未读的会话
+     */
+    public Map<String, Integer> getUnreadCounts() {
+        return Collections.unmodifiableMap(new HashMap<>(mUnreadCounts));
+    }
+
+    /**
+     * 获取未读总数
+     * @return 未读总数
+     */
+    public int getTotalUnreadCount() {
+        int total = 0;
+        for (Integer count : mUnreadCounts.values()) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * 获取所有会话，按最后一条消息的时间倒序
+     * @return 对方地址
+     */
+    public List<String> getConversations() {
+        List<String> peers = new ArrayList<>();
+        SQLiteDatabase database = getDatabase();
+        if (database == null) {
+            return peers;
+        }
+        Cursor cursor = null;
+        try {
+            cursor = database.rawQuery("SELECT remoteContact, MAX(utc) FROM history"
+                    + " GROUP BY remoteContact ORDER BY 2 DESC", null);
+            while (cursor.moveToNext()) {
+                peers.add(cursor.getString(0));
+            }
+        } catch (SQLiteException e) {
+            e.printStackTrace();
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return peers;
+    }
+
+    /**
+     * 分页查询会话中的消息，从新到旧
+     * @param peer 对方地址
+     * @param before 上一页的最后一条，为 null 时从最新一条开始
+     * @param limit 每页条数
+     * @return 消息，少于 limit 条表示没有更早的消息
+     */
+    public List<ChatMessage> getMessages(String peer, ChatMessage before, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        List<ChatMessage> messages = new ArrayList<>(Math.min(limit, BATCH_SIZE));
+        SQLiteDatabase database = getDatabase();
+        if (database == null) {
+            return messages;
+        }
+        Cursor cursor = null;
+        try {
+            cursor = database.rawQuery(pageSql(before, limit), pageArgs(peer, before));
+            while (cursor.moveToNext()) {
+                messages.add(ChatMessage.from(cursor));
+            }
+        } catch (SQLiteException e) {
+            e.printStackTrace();
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * 一页消息的查询语句，before 不为 null 时从 (utc, id) 小于它的消息开始
+     */
+    static String pageSql(ChatMessage before, int limit) {
+        if (before == null) {
+            return SELECT + " WHERE remoteContact = ? ORDER BY utc DESC, id DESC LIMIT " + limit;
+        }
+        // utc <= ? 可以使用索引定位，同一秒内的消息再按 id 区分
+        return SELECT + " WHERE remoteContact = ? AND utc <= ? AND (utc < ? OR id < ?)"
+                + " ORDER BY utc DESC, id DESC LIMIT " + limit;
+    }
+
+    /**
+     * pageSql 的参数
+     */
+    static String[] pageArgs(String peer, ChatMessage before) {
+        if (before == null) {
+            return new String[]{peer};
+        }
+        String utc = String.valueOf(before.getTime() / 1000);
+        return new String[]{peer, utc, utc, String.valueOf(before.getId())};
+    }
+
+    /**
+     * 从新到旧遍历会话中的消息，每次只读取一批，不会把整个会话载入内存
+     * @param peer 对方地址
+     * @param before 从该条之前开始，为 null 时从最新一条开始
+     * @param visitor 返回 false 时停止遍历
+     */
+    public void forEach(String peer, ChatMessage before, Visitor visitor) {
+        ChatMessage last = before;
+        while (true) {
+            List<ChatMessage> batch = getMessages(peer, last, BATCH_SIZE);
+            for (ChatMessage message : batch) {
+                if (!visitor.visit(message)) {
+                    return;
+                }
+            }
+            if (batch.size() < BATCH_SIZE) {
+                return;
+            }
+            last = batch.get(batch.size() - 1);
+        }
+    }
+
+    /**
+     * 以只读方式打开数据库，liblinphone 尚未创建数据库时返回 null
+     */
+    private synchronized SQLiteDatabase getDatabase() {
+        if (mDatabase != null || mClosed || !new File(mDatabasePath).exists()) {
+            return mDatabase;
+        }
+        try {
+            mDatabase = SQLiteDatabase.openDatabase(mDatabasePath, null, SQLiteDatabase.OPEN_READONLY);
+        } catch (SQLiteException e) {
+            e.printStackTrace();
+        }
+        return mDatabase;
+    }
+
+    private void loadUnreadCounts() {
+        if (mLc == null) {
+            return;
+        }
+        if (!new File(mDatabasePath).exists()) {
+            // 还没有任何消息，之后收到的消息逐条计数
+            mUnreadCounts.clear();
+            mUnreadLoaded = true;
+            return;
+        }
+        SQLiteDatabase database = getDatabase();
+        if (database == null) {
+            return;
+        }
+        Cursor cursor = null;
+        try {
+            cursor = database.rawQuery("SELECT remoteContact, COUNT(*) FROM history"
+                    + " WHERE read = 0 AND direction = " + DIRECTION_INCOMING + " GROUP BY remoteContact", null);
+            mUnreadCounts.clear();
+            while (cursor.moveToNext()) {
+                mUnreadCounts.put(cursor.getString(0), cursor.getInt(1));
+            }
+            mUnreadLoaded = true;
+            Log.d(TAG, "Loaded unread counts of " + mUnreadCounts.size() + " conversations");
+        } catch (SQLiteException e) {
+            e.printStackTrace();
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.xuchongyang.easyphone.linphone;
+
+import android.database.Cursor;
+
+import org.linphone.core.LinphoneAddress;
+import org.linphone.core.LinphoneChatMessage;
+
+/**
+ * 一条聊天记录，对应 linphone-history.db 中 history 表的一行，不可变，可在任意线程读取
+ */
+
+public class ChatMessage {
+    private final long mId;
+    private final String mPeer;
+    private final String mText;
+    private final String mUrl;
+    private final boolean mOutgoing;
+    private final boolean mRead;
+    private final long mTime;
+
+    private ChatMessage(long id, String peer, String text, String url, boolean outgoing, boolean read, long time) {
+        mId = id;
+        mPeer = peer;
+        mText = text;
+        mUrl = url;
+        mOutgoing = outgoing;
+        mRead = read;
+        mTime = time;
+    }
+
+    /**
+     * 从 LinphoneChatMessage 创建，在 Linphone 核心线程中调用
+     * @param message LinphoneChatMessage
+     * @return ChatMessage
+     */
+    static ChatMessage from(LinphoneChatMessage message) {
+        LinphoneAddress peer = message.getPeerAddress();
+        return new ChatMessage(message.getStorageId(), peer == null ? null : peer.asStringUriOnly(),
+                message.getText(), message.getExternalBodyUrl(), message.isOutgoing(), message.isRead(),
+                message.getTime());
+    }
+
+    /**
+     * 从 ChatHistory 查询结果的当前行创建
+     * @param cursor 列顺序为 id, remoteContact, direction, message, url, read, utc
+     * @return ChatMessage
+     */
+    static ChatMessage from(Cursor cursor) {
+        return new ChatMessage(cursor.getLong(0), cursor.getString(1), cursor.getString(3), cursor.getString(4),
+                cursor.getInt(2) == ChatHistory.DIRECTION_OUTGOING, cursor.getInt(5) != 0, cursor.getLong(6) * 1000);
+    }
+
+    /**
+     * 获取消息 ID，同一数据库中唯一
+     * @return history 表中的 id
+     */
+    public long getId() {
+        return mId;
+    }
+
+    /**
+     * 获取对方地址
+     * @return 对方 SIP 地址，不含显示名
+     */
+    public String getPeer() {
+        return mPeer;
+    }
+
+    public String getText() {
+        return mText;
+    }
+
+    /**
+     * 获取外部内容地址，文件消息使用
+     * @return 地址，文本消息为 null
+     */
+    public String getUrl() {
+        return mUrl;
+    }
+
+    public boolean isOutgoing() {
+        return mOutgoing;
+    }
+
+    public boolean isRead() {
+        return mRead;
+    }
+
+    /**
+     * 获取消息时间
+     * @return 时间戳，ms，精度为秒
+     */
+    public long getTime() {
+        return mTime;
+    }
+
+    @Override
+    public String toString() {
+        return "ChatMessage{" + mId + ", " + (mOutgoing ? "to " : "from ") + mPeer + ", " + mTime + "}";
+    }
+}
@@ -0,0 +1,165 @@
+package com.xuchongyang.easyphone.linphone;
+
+import android.os.Process;
+import android.os.SystemClock;
+
+import org.linphone.core.LinphoneCall;
+import org.linphone.core.LinphoneCallParams;
+import org.linphone.core.LinphoneCore;
+import org.linphone.core.LpConfig;
+import org.linphone.core.PayloadType;
+import org.linphone.mediastream.Log;
+
+/**
+ * 编码格式 CPU 开销统计：通话媒体流运行期间按进程 CPU 时间增量估算所用编码的开销
+ * 没有通话时同样采样进程的空闲开销，编码开销为通话期间的占用减去空闲开销，即每路通话增加的占用
+ * 时长按 uptimeMillis 计算，不含深度睡眠；进程采样包含界面和网络的开销，单次误差较大，
+ * 因此结果按多次采样的衰减平均保存在 LpConfig 中，累计 {@link #MIN_SAMPLES} 次后才用于排序
+ * 所有方法在 Linphone 核心线程中调用
+ */
+
+public class CodecCostTracker {
+    private static final String TAG = "CodecCostTracker";
+    /**
+     * 版本 1 的 codec_cost 记录的是进程总占用，含空闲开销，不再读取
+     */
+    private static final String SECTION = "codec_cost_v2";
+    private static final String IDLE_KEY = "idle";
+    private static final String SAMPLES_SUFFIX = ".samples";
+    /**
+     * 少于该时长的采样误差太大，丢弃
+     */
+    private static final long MIN_SAMPLE_MILLIS = 10000;
+    /**
+     * 采样次数达到该值后结果才可用
+     */
+    private static final int MIN_SAMPLES = 3;
+    /**
+     * 新采样的最小权重，采样较少时按算术平均，之后按该权重衰减旧值
+     */
+    private static final float SMOOTHING = 0.25f;
+
+    private LinphoneCall mCall;
+    private String mCodec;
+    private long mStartCpuTime;
+    private long mStartTime;
+    private long mIdleStartCpuTime;
+    private long mIdleStartTime;
+
+    /**
+     * 通话状态变化，媒体流运行时开始采样，离开该状态时结束采样
+     * 多路通话同时进行时无法区分各编码的开销，不采样；最后一路通话释放后开始采样空闲开销，有新通话时结束
+     * @param linphoneCore LinphoneCore
+     * @param linphoneCall 通话
+     * @param state 通话状态
+     */
+    void onCallStateChanged(LinphoneCore linphoneCore, LinphoneCall linphoneCall, LinphoneCall.State state) {
+        finishIdle(linphoneCore);
+        if (state == LinphoneCall.State.StreamsRunning) {
+            finish(linphoneCore);
+            if (linphoneCore.getCallsNb() == 1) {
+                begin(linphoneCall);
+            }
+        } else if (linphoneCall == mCall) {
+            finish(linphoneCore);
+        }
+        if (state == LinphoneCall.State.CallReleased && linphoneCore.getCallsNb() == 0) {
+            mIdleStartCpuTime = Process.getElapsedCpuTime();
+            mIdleStartTime = SystemClock.uptimeMillis();
+        }
+    }
+
+    /**
+     * 获取编码的 CPU 开销
+     * @param linphoneCore LinphoneCore
+     * @param codec 编码，"mime/rate"
+     * @return 每路通话增加的单核占用比例，采样不足时返回 -1
+     */
+    public float getCpuLoad(LinphoneCore linphoneCore, String codec) {
+        LpConfig config = linphoneCore.getConfig();
+        if (config.getInt(SECTION, codec + SAMPLES_SUFFIX, 0) < MIN_SAMPLES) {
+            return -1f;
+        }
+        return config.getFloat(SECTION, codec, -1f);
+    }
+
+    /**
+     * 获取没有通话时的进程 CPU 开销
+     * @param linphoneCore LinphoneCore
+     * @return 单核占用比例，采样不足时返回 0
+     */
+    public float getIdleLoad(LinphoneCore linphoneCore) {
+        LpConfig config = linphoneCore.getConfig();
+        if (config.getInt(SECTION, IDLE_KEY + SAMPLES_SUFFIX, 0) < MIN_SAMPLES) {
+            return 0f;
+        }
+        return Math.max(0, config.getFloat(SECTION, IDLE_KEY, 0f));
+    }
+
+    private void begin(LinphoneCall linphoneCall) {
+        LinphoneCallParams params = linphoneCall.getCurrentParams();
+        if (params == null) {
+            return;
+        }
+        // 视频编码的开销远大于音频，有视频时只统计视频编码
+        PayloadType payloadType = params.getVideoEnabled() ? params.getUsedVideoCodec() : params.getUsedAudioCodec();
+        if (payloadType == null) {
+            return;
+        }
+        mCall = linphoneCall;
+        mCodec = CodecSelector.keyOf(payloadType);
+        mStartCpuTime = Process.getElapsedCpuTime();
+        mStartTime = SystemClock.uptimeMillis();
+    }
+
+    private void finish(LinphoneCore linphoneCore) {
+        if (mCall == null) {
+            return;
+        }
+        long duration = SystemClock.uptimeMillis() - mStartTime;
+        long cpuTime = Process.getElapsedCpuTime() - mStartCpuTime;
+        String codec = mCodec;
+        mCall = null;
+        mCodec = null;
+        if (duration < MIN_SAMPLE_MILLIS) {
+            return;
+        }
+
+        float load = Math.max(0, (float) cpuTime / duration - getIdleLoad(linphoneCore));
+        float value = update(linphoneCore.getConfig(), codec, load);
+        Log.d(TAG, "Codec " + codec + " cpu load " + load + ", cached " + value);
+    }
+
+    private void finishIdle(LinphoneCore linphoneCore) {
+        if (mIdleStartTime == 0) {
+            return;
+        }
+        long duration = SystemClock.uptimeMillis() - mIdleStartTime;
+        long cpuTime = Process.getElapsedCpuTime() - mIdleStartCpuTime;
+        mIdleStartTime = 0;
+        if (duration < MIN_SAMPLE_MILLIS) {
+            return;
+        }
+        float value = update(linphoneCore.getConfig(), IDLE_KEY, (float) cpuTime / duration);
+        Log.d(TAG, "Idle cpu load " + value);
+    }
+
+    /**
+     * 合并一次采样：前几次取算术平均，之后新采样的权重固定为 {@link #SMOOTHING}，旧值逐渐衰减
+     */
+    private static float update(LpConfig config, String key, float load) {
+        int samples = config.getInt(SECTION, key + SAMPLES_SUFFIX, 0);
+        float cached = config.getFloat(SECTION, key, -1f);
+        float value;
+        if (samples <= 0 || cached < 0) {
+            samples = 0;
+            value = load;
+        } else {
+            value = cached + (load - cached) * Math.max(SMOOTHING, 1f / (samples + 1));
+        }
+        config.setFloat(SECTION, key, value);
+        config.setInt(SECTION, key + SAMPLES_SUFFIX, samples + 1);
+        config.sync();
+        return value;
+    }
+}
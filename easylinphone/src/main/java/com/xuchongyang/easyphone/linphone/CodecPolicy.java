@@ -0,0 +1,48 @@
+package com.xuchongyang.easyphone.linphone;
+
+/**
+ * 编码格式选择策略，按网络类型和设备档次给出优先顺序
+ * 编码格式以 "mime/rate" 表示，如 "opus/48000"，mime 不区分大小写
+ */
+
+public interface CodecPolicy {
+    /**
+     * 网络类型
+     */
+    enum NetworkType {
+        WIFI,
+        MOBILE,
+        UNKNOWN
+    }
+
+    /**
+     * 设备档次
+     */
+    enum DeviceClass {
+        LOW_END,
+        HIGH_END
+    }
+
+    /**
+     * 音频编码优先顺序，未列出的编码将被禁用
+     * @param networkType 网络类型
+     * @param deviceClass 设备档次
+     * @return 编码列表
+     */
+    String[] getAudioCodecs(NetworkType networkType, DeviceClass deviceClass);
+
+    /**
+     * 视频编码优先顺序，未列出的编码将被禁用
+     * @param networkType 网络类型
+     * @param deviceClass 设备档次
+     * @return 编码列表
+     */
+    String[] getVideoCodecs(NetworkType networkType, DeviceClass deviceClass);
+
+    /**
+     * 允许的最大 CPU 占用，实测超过该值的编码排到列表末尾
+     * @param deviceClass 设备档次
+     * @return 单核占用比例，0 ~ 1，小于等于 0 表示不限制
+     */
+    float getMaxCpuLoad(DeviceClass deviceClass);
+}
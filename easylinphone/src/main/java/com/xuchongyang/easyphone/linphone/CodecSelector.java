@@ -0,0 +1,194 @@
+package com.xuchongyang.easyphone.linphone;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Build;
+
+import org.linphone.core.LinphoneCore;
+import org.linphone.core.LinphoneCoreException;
+import org.linphone.core.PayloadType;
+import org.linphone.mediastream.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按编码策略对 LinphoneCore 支持的编码排序，只启用策略中列出的编码，缩小 SDP 并避免协商到开销大的编码
+ * 所有方法在 Linphone 核心线程中调用
+ */
+
+public class CodecSelector {
+    private static final String TAG = "CodecSelector";
+    /**
+     * DTMF 依赖 telephone-event，不受策略影响始终启用
+     */
+    private static final String TELEPHONE_EVENT = "telephone-event";
+    /**
+     * 没有 isLowRamDevice 的系统版本上按总内存判断
+     */
+    private static final long LOW_END_MEMORY = 1024L * 1024 * 1024;
+    private static final int LOW_END_CORES = 2;
+
+    private final Context mContext;
+    private final CodecCostTracker mCostTracker;
+    private CodecPolicy mPolicy;
+    private CodecPolicy.DeviceClass mDeviceClass;
+    private CodecPolicy.NetworkType mNetworkType;
+    private String[] mAudioOrder = new String[0];
+    private String[] mVideoOrder = new String[0];
+
+    CodecSelector(Context context, CodecPolicy policy, CodecCostTracker costTracker) {
+        mContext = context;
+        mPolicy = policy;
+        mCostTracker = costTracker;
+    }
+
+    /**
+     * 编码在策略中的表示
+     * @param payloadType PayloadType
+     * @return "mime/rate"
+     */
+    public static String keyOf(PayloadType payloadType) {
+        return payloadType.getMime() + "/" + payloadType.getRate();
+    }
+
+    /**
+     * 更换编码策略并立即应用
+     * @param linphoneCore LinphoneCore
+     * @param policy CodecPolicy
+     */
+    void setPolicy(LinphoneCore linphoneCore, CodecPolicy policy) {
+        mPolicy = policy;
+        apply(linphoneCore);
+    }
+
+    /**
+     * 设置覆盖策略的编码顺序，下次 apply 时生效
+     * @param audioOrder 音频编码 "mime/rate"，为空时使用策略
+     * @param videoOrder 视频编码 "mime/rate"，为空时使用策略
+     */
+    void setOrder(String[] audioOrder, String[] videoOrder) {
+        mAudioOrder = audioOrder;
+        mVideoOrder = videoOrder;
+    }
+
+    /**
+     * 按当前网络类型和设备档次应用编码策略
+     * @param linphoneCore LinphoneCore
+     */
+    void apply(LinphoneCore linphoneCore) {
+        if (mDeviceClass == null) {
+            mDeviceClass = detectDeviceClass();
+        }
+        mNetworkType = detectNetworkType();
+        Log.d(TAG, "Apply codec policy, network " + mNetworkType + ", device " + mDeviceClass);
+        linphoneCore.setAudioCodecs(rank(linphoneCore, linphoneCore.getAudioCodecs(), mAudioOrder.length > 0
+                ? mAudioOrder : mPolicy.getAudioCodecs(mNetworkType, mDeviceClass)));
+        linphoneCore.setVideoCodecs(rank(linphoneCore, linphoneCore.getVideoCodecs(), mVideoOrder.length > 0
+                ? mVideoOrder : mPolicy.getVideoCodecs(mNetworkType, mDeviceClass)));
+    }
+
+    /**
+     * 网络变化，网络类型改变时重新应用编码策略
+     * @param linphoneCore LinphoneCore
+     */
+    void onNetworkChanged(LinphoneCore linphoneCore) {
+        if (detectNetworkType() != mNetworkType) {
+            apply(linphoneCore);
+        }
+    }
+
+    /**
+     * 排序：策略中列出的编码按策略顺序启用，实测开销超限的排到启用编码的末尾，其余编码禁用并放在最后
+     */
+    private PayloadType[] rank(LinphoneCore linphoneCore, PayloadType[] available, String[] preferences) {
+        float maxCpuLoad = mPolicy.getMaxCpuLoad(mDeviceClass);
+        List<PayloadType> preferred = new ArrayList<>(available.length);
+        List<PayloadType> expensive = new ArrayList<>(available.length);
+        List<PayloadType> disabled = new ArrayList<>(available.length);
+        boolean[] used = new boolean[available.length];
+
+        for (String preference : preferences) {
+            for (int i = 0; i < available.length; i++) {
+                if (used[i] || !keyOf(available[i]).equalsIgnoreCase(preference)) {
+                    continue;
+                }
+                used[i] = true;
+                float load = mCostTracker.getCpuLoad(linphoneCore, keyOf(available[i]));
+                if (maxCpuLoad > 0 && load > maxCpuLoad) {
+                    Log.d(TAG, "Codec " + preference + " demoted, cpu load " + load);
+                    expensive.add(available[i]);
+                } else {
+                    preferred.add(available[i]);
+                }
+            }
+        }
+        preferred.addAll(expensive);
+        int enabledCount = preferred.size();
+        for (int i = 0; i < available.length; i++) {
+            if (used[i]) {
+                continue;
+            }
+            if (TELEPHONE_EVENT.equalsIgnoreCase(available[i].getMime())) {
+                preferred.add(available[i]);
+                enabledCount++;
+            } else {
+                disabled.add(available[i]);
+            }
+        }
+        preferred.addAll(disabled);
+
+        PayloadType[] ranked = preferred.toArray(new PayloadType[preferred.size()]);
+        for (int i = 0; i < ranked.length; i++) {
+            boolean enable = i < enabledCount;
+            try {
+                linphoneCore.enablePayloadType(ranked[i], enable);
+            } catch (LinphoneCoreException e) {
+                e.printStackTrace();
+            }
+            Log.d(TAG, (enable ? "Enable " : "Disable ") + keyOf(ranked[i]));
+        }
+        return ranked;
+    }
+
+    private CodecPolicy.DeviceClass detectDeviceClass() {
+        if (Runtime.getRuntime().availableProcessors() <= LOW_END_CORES) {
+            return CodecPolicy.DeviceClass.LOW_END;
+        }
+        ActivityManager activityManager = (ActivityManager) mContext.getSystemService(Context.ACTIVITY_SERVICE);
+        if (activityManager == null) {
+            return CodecPolicy.DeviceClass.HIGH_END;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            // 由厂商标记，比按核数和内存估计可靠；4 核 2 GB 的中端机不应降级
+            if (activityManager.isLowRamDevice()) {
+                return CodecPolicy.DeviceClass.LOW_END;
+            }
+        } else {
+            ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+            activityManager.getMemoryInfo(memoryInfo);
+            if (memoryInfo.totalMem < LOW_END_MEMORY) {
+                return CodecPolicy.DeviceClass.LOW_END;
+            }
+        }
+        return CodecPolicy.DeviceClass.HIGH_END;
+    }
+
+    private CodecPolicy.NetworkType detectNetworkType() {
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo networkInfo = connectivityManager == null ? null : connectivityManager.getActiveNetworkInfo();
+        if (networkInfo == null) {
+            return CodecPolicy.NetworkType.UNKNOWN;
+        }
+        int type = networkInfo.getType();
+        if (type == ConnectivityManager.TYPE_WIFI || type == ConnectivityManager.TYPE_ETHERNET) {
+            return CodecPolicy.NetworkType.WIFI;
+        } else if (type == ConnectivityManager.TYPE_MOBILE) {
+            return CodecPolicy.NetworkType.MOBILE;
+        }
+        return CodecPolicy.NetworkType.UNKNOWN;
+    }
+}
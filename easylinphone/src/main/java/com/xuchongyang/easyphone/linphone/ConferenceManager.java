@@ -0,0 +1,215 @@
+package com.xuchongyang.easyphone.linphone;
+
+import android.os.Process;
+import android.os.SystemClock;
+
+import org.linphone.core.LinphoneCall;
+import org.linphone.core.LinphoneCallParams;
+import org.linphone.core.LinphoneCore;
+import org.linphone.core.PayloadType;
+import org.linphone.mediastream.Log;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 本地音频会议：把进行中的通话合并到本机混音，参与人数上限根据实测的 CPU 余量计算
+ * 进程 CPU 占用已包含现有通话的开销，余量按每路通话增加的开销（CodecCostTracker）折算为可再加入的通话数
+ * 所有方法在 Linphone 核心线程中调用
+ */
+
+public class ConferenceManager {
+    private static final String TAG = "ConferenceManager";
+    /**
+     * 与 linphonerc_factory 中的 max_calls 一致
+     */
+    public static final int MAX_PARTICIPANTS = 10;
+    /**
+     * 混音线程为单线程，进程 CPU 占用以单核的该比例为上限
+     */
+    private static final float CPU_BUDGET = 0.7f;
+    /**
+     * 编码开销未测量时每路通话增加的开销估计值
+     */
+    private static final float DEFAULT_CALL_LOAD = 0.06f;
+    /**
+     * 每增加一路混音的额外开销
+     */
+    private static final float MIX_LOAD = 0.02f;
+    /**
+     * 少于该间隔的 CPU 采样误差太大，沿用上一次结果
+     */
+    private static final long MIN_SAMPLE_MILLIS = 1000;
+    /**
+     * 超过该时长的采样视为过期，通话期间 callStatsUpdated 约每秒一次
+     */
+    private static final long STALE_SAMPLE_MILLIS = 5000;
+
+    private final CodecCostTracker mCostTracker;
+    private long mLastCpuTime;
+    private long mLastSampleTime;
+    private float mLastLoad = -1;
+    private long mLastLoadTime;
+
+    ConferenceManager(CodecCostTracker costTracker) {
+        mCostTracker = costTracker;
+    }
+
+    /**
+     * 根据当前 CPU 占用计算会议最多可容纳的通话数，不低于已在会议中的通话数
+     * CPU 不足时可能小于 2，此时无法组成会议，合并会被拒绝
+     * @param linphoneCore LinphoneCore
+     * @return 通话数上限，不含本机
+     */
+    public int getParticipantLimit(LinphoneCore linphoneCore) {
+        int participants = getParticipantCount(linphoneCore);
+        float perCall = estimateCallLoad(linphoneCore) + MIX_LOAD;
+        float load = mLastLoad;
+        if (load < 0 || SystemClock.elapsedRealtime() - mLastLoadTime > STALE_SAMPLE_MILLIS) {
+            // 没有最近的采样，按空闲开销加上所有通话估算
+            load = mCostTracker.getIdleLoad(linphoneCore) + linphoneCore.getCallsNb() * perCall;
+        }
+        int extra = (int) Math.floor((CPU_BUDGET - load) / perCall);
+        return Math.max(participants, Math.min(MAX_PARTICIPANTS, participants + Math.max(0, extra)));
+    }
+
+    /**
+     * 会议中的通话数
+     * @param linphoneCore LinphoneCore
+     * @return 通话数，不含本机
+     */
+    public int getParticipantCount(LinphoneCore linphoneCore) {
+        int count = 0;
+        for (LinphoneCall call : linphoneCore.getCalls()) {
+            if (call.isInConference()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 把通话加入会议
+     * @param linphoneCore LinphoneCore
+     * @param linphoneCall 通话
+     * @throws IllegalStateException 已达到参与人数上限，或 CPU 余量不足以组成会议
+     */
+    public void add(LinphoneCore linphoneCore, LinphoneCall linphoneCall) {
+        if (linphoneCall.isInConference()) {
+            return;
+        }
+        int limit = getParticipantLimit(linphoneCore);
+        if (limit < 2) {
+            throw new IllegalStateException("Not enough CPU headroom for a conference, limit " + limit);
+        }
+        if (getParticipantCount(linphoneCore) >= limit) {
+            throw new IllegalStateException("Conference is full, limit " + limit);
+        }
+        Log.d(TAG, "Add " + LinphoneUtils.getCallId(linphoneCall) + " to conference, limit " + limit);
+        linphoneCore.addToConference(linphoneCall);
+        linphoneCore.enterConference();
+    }
+
+    /**
+     * 把所有进行中的通话加入会议，超出上限的通话保持不变
+     * @param linphoneCore LinphoneCore
+     * @return 新加入的通话数
+     * @throws IllegalStateException CPU 余量不足以组成至少两路通话的会议，不做任何修改
+     */
+    public int mergeAll(LinphoneCore linphoneCore) {
+        int limit = getParticipantLimit(linphoneCore);
+        int count = getParticipantCount(linphoneCore);
+        List<LinphoneCall> candidates = new ArrayList<>();
+        for (LinphoneCall call : linphoneCore.getCalls()) {
+            LinphoneCall.State state = call.getState();
+            if (!call.isInConference() && (state == LinphoneCall.State.StreamsRunning
+                    || state == LinphoneCall.State.Paused)) {
+                candidates.add(call);
+            }
+        }
+        int added = Math.min(candidates.size(), Math.max(0, limit - count));
+        if (count + candidates.size() >= 2 && count + added < 2) {
+            // 通话足够组成会议，但余量不足
+            throw new IllegalStateException("Not enough CPU headroom for a conference, limit " + limit);
+        }
+        for (int i = 0; i < added; i++) {
+            linphoneCore.addToConference(candidates.get(i));
+            count++;
+        }
+        if (added > 0) {
+            linphoneCore.enterConference();
+        }
+        Log.d(TAG, "Merged " + added + " calls into conference, " + count + "/" + limit);
+        return added;
+    }
+
+    /**
+     * 把通话移出会议，通话继续保持
+     * @param linphoneCore LinphoneCore
+     * @param linphoneCall 通话
+     */
+    public void remove(LinphoneCore linphoneCore, LinphoneCall linphoneCall) {
+        if (linphoneCall.isInConference()) {
+            linphoneCore.removeFromConference(linphoneCall);
+        }
+    }
+
+    /**
+     * 获取各参与者的音量
+     * @param linphoneCore LinphoneCore
+     * @return 通话 ID 到接收音量（dBm0）的映射
+     */
+    public Map<String, Float> getLevels(LinphoneCore linphoneCore) {
+        Map<String, Float> levels = new LinkedHashMap<>();
+        for (LinphoneCall call : linphoneCore.getCalls()) {
+            if (call.isInConference()) {
+                levels.put(LinphoneUtils.getCallId(call), call.getPlayVolume());
+            }
+        }
+        return levels;
+    }
+
+    /**
+     * 结束会议，挂断所有参与者
+     * @param linphoneCore LinphoneCore
+     */
+    public void terminate(LinphoneCore linphoneCore) {
+        if (linphoneCore.isInConference() || linphoneCore.getConferenceSize() > 0) {
+            linphoneCore.terminateConference();
+        }
+    }
+
+    /**
+     * 估算一路通话增加的开销，优先使用 CodecCostTracker 的实测结果
+     */
+    private float estimateCallLoad(LinphoneCore linphoneCore) {
+        LinphoneCall call = linphoneCore.getCurrentCall();
+        LinphoneCallParams params = call == null ? null : call.getCurrentParams();
+        PayloadType payloadType = params == null ? null : params.getUsedAudioCodec();
+        if (payloadType == null) {
+            return DEFAULT_CALL_LOAD;
+        }
+        float load = mCostTracker.getCpuLoad(linphoneCore, CodecSelector.keyOf(payloadType));
+        return load > 0 ? load : DEFAULT_CALL_LOAD;
+    }
+
+    /**
+     * 采样进程 CPU 占用（单核比例），通话期间随 callStatsUpdated 调用
+     */
+    void sampleLoad() {
+        long now = SystemClock.elapsedRealtime();
+        long cpuTime = Process.getElapsedCpuTime();
+        long duration = now - mLastSampleTime;
+        if (mLastSampleTime != 0 && duration < MIN_SAMPLE_MILLIS) {
+            return;
+        }
+        if (mLastSampleTime != 0 && duration <= STALE_SAMPLE_MILLIS) {
+            mLastLoad = (float) (cpuTime - mLastCpuTime) / duration;
+            mLastLoadTime = now;
+        }
+        mLastSampleTime = now;
+        mLastCpuTime = cpuTime;
+    }
+}
@@ -0,0 +1,151 @@
+package com.xuchongyang.easyphone.linphone;
+
+import org.linphone.core.LinphoneCore;
+import org.linphone.core.LinphoneCoreException;
+import org.linphone.core.LinphoneProxyConfig;
+import org.linphone.mediastream.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 把配置修改增量应用到运行中的 LinphoneCore，只处理发生变化的配置项，不重启服务、不中断注册和通话
+ * 传输端口的修改会重建监听端口，有通话时推迟到所有通话结束后应用
+ * 所有方法在 Linphone 核心线程中调用
+ */
+
+public class ConfigApplier implements ConfigStore.Listener {
+    private static final String TAG = "ConfigApplier";
+    private final VideoQualityController mVideoQualityController;
+    private final CodecSelector mCodecSelector;
+    private final JitterBufferTuner mJitterBufferTuner;
+    private LinphoneCore mLc;
+    private boolean mTransportsPending;
+
+    ConfigApplier(VideoQualityController videoQualityController, CodecSelector codecSelector,
+                  JitterBufferTuner jitterBufferTuner) {
+        mVideoQualityController = videoQualityController;
+        mCodecSelector = codecSelector;
+        mJitterBufferTuner = jitterBufferTuner;
+    }
+
+    /**
+     * 把配置中由各组件使用的项交给组件，在组件启动前调用
+     * @param linphoneCore LinphoneCore
+     */
+    void start(LinphoneCore linphoneCore) {
+        mLc = linphoneCore;
+        ConfigSnapshot snapshot = ConfigStore.getInstance().getSnapshot();
+        mVideoQualityController.setMaxBandwidth(snapshot.get(ConfigKeys.VIDEO_MAX_BANDWIDTH));
+        mCodecSelector.setOrder(split(snapshot.get(ConfigKeys.CODEC_AUDIO_ORDER)),
+                split(snapshot.get(ConfigKeys.CODEC_VIDEO_ORDER)));
+        ConfigStore.getInstance().addListener(this);
+    }
+
+    void stop() {
+        ConfigStore.getInstance().removeListener(this);
+        mLc = null;
+        mTransportsPending = false;
+    }
+
+    /**
+     * 通话释放，没有其他通话时应用推迟的传输端口修改
+     */
+    void onCallReleased() {
+        if (mLc != null && mTransportsPending && mLc.getCallsNb() == 0) {
+            applyTransports(ConfigStore.getInstance().getSnapshot());
+        }
+    }
+
+    @Override
+    public void onConfigChanged(ConfigSnapshot oldSnapshot, ConfigSnapshot newSnapshot,
+                                List<ConfigKey<?>> changedKeys) {
+        if (mLc == null) {
+            return;
+        }
+        boolean codecsChanged = false;
+        boolean jitterChanged = false;
+        boolean transportsChanged = false;
+        List<ConfigKey<?>> restartKeys = new ArrayList<>();
+        for (ConfigKey<?> key : changedKeys) {
+            if (key == ConfigKeys.VIDEO_MAX_BANDWIDTH) {
+                mVideoQualityController.setMaxBandwidth(newSnapshot.get(ConfigKeys.VIDEO_MAX_BANDWIDTH));
+            } else if (key == ConfigKeys.CODEC_AUDIO_ORDER || key == ConfigKeys.CODEC_VIDEO_ORDER) {
+                codecsChanged = true;
+            } else if (key == ConfigKeys.RTP_AUDIO_JITT_COMP || key == ConfigKeys.RTP_VIDEO_JITT_COMP) {
+                jitterChanged = true;
+            } else if (key == ConfigKeys.SIP_UDP_PORT || key == ConfigKeys.SIP_TCP_PORT
+                    || key == ConfigKeys.SIP_TLS_PORT) {
+                transportsChanged = true;
+            } else if (key == ConfigKeys.SIP_REGISTER_EXPIRES) {
+                applyExpires(oldSnapshot.get(ConfigKeys.SIP_REGISTER_EXPIRES),
+                        newSnapshot.get(ConfigKeys.SIP_REGISTER_EXPIRES));
+            } else if (key == ConfigKeys.SIP_INC_TIMEOUT) {
+                mLc.setIncomingTimeout(newSnapshot.get(ConfigKeys.SIP_INC_TIMEOUT));
+            } else if (key == ConfigKeys.RTP_NORTP_TIMEOUT || key == ConfigKeys.SIP_KEEPALIVE_PERIOD
+                    || key == ConfigKeys.NET_DOWNLOAD_BW || key == ConfigKeys.NET_UPLOAD_BW
+                    || key == ConfigKeys.SOUND_ECHO_CANCELLATION) {
+                // 只在启动时读取，或由 VideoQualityController、EchoCalibrator 管理
+                restartKeys.add(key);
+            }
+            // 其余配置项在建立音频流时读取，对之后的通话生效
+        }
+        if (codecsChanged) {
+            mCodecSelector.setOrder(split(newSnapshot.get(ConfigKeys.CODEC_AUDIO_ORDER)),
+                    split(newSnapshot.get(ConfigKeys.CODEC_VIDEO_ORDER)));
+            mCodecSelector.apply(mLc);
+        }
+        if (jitterChanged) {
+            mJitterBufferTuner.setDefaults(newSnapshot.get(ConfigKeys.RTP_AUDIO_JITT_COMP),
+                    newSnapshot.get(ConfigKeys.RTP_VIDEO_JITT_COMP));
+        }
+        if (transportsChanged) {
+            mTransportsPending = true;
+            onCallReleased();
+        }
+        if (!restartKeys.isEmpty()) {
+            Log.w(TAG, "Not applied to running core: " + restartKeys);
+        }
+        MetricsRegistry.getInstance().counter("config.changed").add(changedKeys.size());
+    }
+
+    /**
+     * 更新仍使用旧默认有效期的账号，done() 时按新有效期重新注册，注册不会中断
+     */
+    private void applyExpires(int oldExpires, int newExpires) {
+        for (LinphoneProxyConfig proxyConfig : mLc.getProxyConfigList()) {
+            if (proxyConfig.getExpires() == oldExpires) {
+                proxyConfig.edit();
+                proxyConfig.setExpires(newExpires);
+                proxyConfig.done();
+            }
+        }
+    }
+
+    private void applyTransports(ConfigSnapshot snapshot) {
+        mTransportsPending = false;
+        LinphoneCore.Transports transports = new LinphoneCore.Transports();
+        transports.udp = snapshot.get(ConfigKeys.SIP_UDP_PORT);
+        transports.tcp = snapshot.get(ConfigKeys.SIP_TCP_PORT);
+        transports.tls = snapshot.get(ConfigKeys.SIP_TLS_PORT);
+        Log.i(TAG, "Apply transports udp " + transports.udp + ", tcp " + transports.tcp + ", tls " + transports.tls);
+        try {
+            mLc.setSipTransports(transports);
+        } catch (LinphoneCoreException e) {
+            e.printStackTrace();
+            return;
+        }
+        // 监听端口变化后 Contact 失效，重新注册
+        mLc.refreshRegisters();
+    }
+
+    private static String[] split(String order) {
+        List<String> codecs = new ArrayList<>();
+        for (String codec : order.split(",")) {
+            if (codec.trim().length() > 0) {
+                codecs.add(codec.trim());
+            }
+        }
+        return codecs.toArray(new String[codecs.size()]);
+    }
+}
@@ -0,0 +1,112 @@
+package com.xuchongyang.easyphone.linphone;
+
+import org.linphone.core.LpConfig;
+
+/**
+ * 带类型和默认值的配置项，对应 LpConfig 中的 [section] name
+ * @param <T> 值类型，Integer、Float、Boolean 或 String
+ */
+
+public final class ConfigKey<T> {
+    private enum Type {
+        INT,
+        FLOAT,
+        BOOL,
+        STRING
+    }
+
+    private final String mSection;
+    private final String mName;
+    private final T mDefaultValue;
+    private final Type mType;
+
+    private ConfigKey(String section, String name, T defaultValue, Type type) {
+        mSection = section;
+        mName = name;
+        mDefaultValue = defaultValue;
+        mType = type;
+    }
+
+    public static ConfigKey<Integer> intKey(String section, String name, int defaultValue) {
+        return new ConfigKey<>(section, name, defaultValue, Type.INT);
+    }
+
+    public static ConfigKey<Float> floatKey(String section, String name, float defaultValue) {
+        return new ConfigKey<>(section, name, defaultValue, Type.FLOAT);
+    }
+
+    public static ConfigKey<Boolean> boolKey(String section, String name, boolean defaultValue) {
+        return new ConfigKey<>(section, name, defaultValue, Type.BOOL);
+    }
+
+    public static ConfigKey<String> stringKey(String section, String name, String defaultValue) {
+        return new ConfigKey<>(section, name, defaultValue, Type.STRING);
+    }
+
+    public String getSection() {
+        return mSection;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public T getDefaultValue() {
+        return mDefaultValue;
+    }
+
+    /**
+     * 从 LpConfig 读取
+     * @param config LpConfig
+     * @return 值，未设置时为默认值
+     */
+    @SuppressWarnings("unchecked")
+    T read(LpConfig config) {
+        switch (mType) {
+            case INT:
+                return (T) Integer.valueOf(config.getInt(mSection, mName, (Integer) mDefaultValue));
+            case FLOAT:
+                return (T) Float.valueOf(config.getFloat(mSection, mName, (Float) mDefaultValue));
+            case BOOL:
+                return (T) Boolean.valueOf(config.getBool(mSection, mName, (Boolean) mDefaultValue));
+            default:
+                return (T) config.getString(mSection, mName, (String) mDefaultValue);
+        }
+    }
+
+    /**
+     * LpConfig 中是否设置了该项
+     * @param config LpConfig
+     * @return 是否已设置
+     */
+    boolean isSet(LpConfig config) {
+        return config.getString(mSection, mName, null) != null;
+    }
+
+    /**
+     * 写入 LpConfig，不调用 sync
+     * @param config LpConfig
+     * @param value 值
+     */
+    void write(LpConfig config, T value) {
+        switch (mType) {
+            case INT:
+                config.setInt(mSection, mName, (Integer) value);
+                break;
+            case FLOAT:
+                config.setFloat(mSection, mName, (Float) value);
+                break;
+            case BOOL:
+                config.setBool(mSection, mName, (Boolean) value);
+                break;
+            default:
+                config.setString(mSection, mName, (String) value);
+                break;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return mSection + "/" + mName;
+    }
+}
@@ -0,0 +1,72 @@
+package com.xuchongyang.easyphone.linphone;
+
+import android.os.Build;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 库使用的配置项，默认值与 liblinphone 一致
+ */
+
+public final class ConfigKeys {
+    public static final ConfigKey<Integer> AUDIO_CODEC_BITRATE_LIMIT =
+            ConfigKey.intKey("audio", "codec_bitrate_limit", 36);
+    public static final ConfigKey<Integer> RTP_AUDIO_JITT_COMP = ConfigKey.intKey("rtp", "audio_jitt_comp", 60);
+    public static final ConfigKey<Integer> RTP_VIDEO_JITT_COMP = ConfigKey.intKey("rtp", "video_jitt_comp", 60);
+    public static final ConfigKey<Integer> RTP_NORTP_TIMEOUT = ConfigKey.intKey("rtp", "nortp_timeout", 30);
+    public static final ConfigKey<Integer> SOUND_EC_DELAY = ConfigKey.intKey("sound", "ec_delay", 0);
+    public static final ConfigKey<Boolean> SOUND_ECHO_CANCELLATION =
+            ConfigKey.boolKey("sound", "echocancellation", true);
+    public static final ConfigKey<Integer> NET_DOWNLOAD_BW = ConfigKey.intKey("net", "download_bw", 0);
+    public static final ConfigKey<Integer> NET_UPLOAD_BW = ConfigKey.intKey("net", "upload_bw", 0);
+    public static final ConfigKey<Integer> SIP_KEEPALIVE_PERIOD = ConfigKey.intKey("sip", "keepalive_period", 30000);
+    public static final ConfigKey<Integer> SIP_REGISTER_EXPIRES = ConfigKey.intKey("sip", "default_expires", 3600);
+    public static final ConfigKey<Integer> SIP_INC_TIMEOUT = ConfigKey.intKey("sip", "inc_timeout", 30);
+    public static final ConfigKey<Integer> SIP_UDP_PORT = ConfigKey.intKey("sip", "sip_port", 5060);
+    public static final ConfigKey<Integer> SIP_TCP_PORT = ConfigKey.intKey("sip", "sip_tcp_port", 5060);
+    public static final ConfigKey<Integer> SIP_TLS_PORT = ConfigKey.intKey("sip", "sip_tls_port", 5061);
+    /**
+     * 视频带宽上限，kbit/s，0 表示不限制；[net] 中的带宽由 VideoQualityController 按档位改写，不作为上限
+     */
+    public static final ConfigKey<Integer> VIDEO_MAX_BANDWIDTH = ConfigKey.intKey("video_quality", "max_bandwidth", 0);
+    /**
+     * 音频编码优先顺序，逗号分隔的 "mime/rate"，为空时使用 CodecPolicy
+     */
+    public static final ConfigKey<String> CODEC_AUDIO_ORDER = ConfigKey.stringKey("codec_policy", "audio", "");
+    /**
+     * 视频编码优先顺序，逗号分隔的 "mime/rate"，为空时使用 CodecPolicy
+     */
+    public static final ConfigKey<String> CODEC_VIDEO_ORDER = ConfigKey.stringKey("codec_policy", "video", "");
+    /**
+     * 本机型外放时的回声校准结果，ms，-1 表示无回声，-2 表示未校准，由 EchoCalibrator 写入
+     */
+    public static final ConfigKey<Integer> EC_CALIBRATION_SPEAKER =
+            ConfigKey.intKey("ec_calibration", deviceKey("speaker"), -2);
+    /**
+     * 本机型听筒时的回声校准结果，取值同 EC_CALIBRATION_SPEAKER
+     */
+    public static final ConfigKey<Integer> EC_CALIBRATION_EARPIECE =
+            ConfigKey.intKey("ec_calibration", deviceKey("earpiece"), -2);
+
+    /**
+     * 快照中包含的所有配置项
+     */
+    public static final List<ConfigKey<?>> ALL = Collections.unmodifiableList(Arrays.<ConfigKey<?>>asList(
+            AUDIO_CODEC_BITRATE_LIMIT, RTP_AUDIO_JITT_COMP, RTP_VIDEO_JITT_COMP, RTP_NORTP_TIMEOUT,
+            SOUND_EC_DELAY, SOUND_ECHO_CANCELLATION, NET_DOWNLOAD_BW, NET_UPLOAD_BW,
+            SIP_KEEPALIVE_PERIOD, SIP_REGISTER_EXPIRES, SIP_INC_TIMEOUT, SIP_UDP_PORT, SIP_TCP_PORT, SIP_TLS_PORT,
+            VIDEO_MAX_BANDWIDTH, CODEC_AUDIO_ORDER, CODEC_VIDEO_ORDER,
+            EC_CALIBRATION_SPEAKER, EC_CALIBRATION_EARPIECE));
+
+    private ConfigKeys() {
+    }
+
+    /**
+     * 机型和音频路由组成的键，只保留字母、数字和下划线
+     */
+    private static String deviceKey(String route) {
+        return (Build.MANUFACTURER + "_" + Build.MODEL + "_" + route).replaceAll("[^A-Za-z0-9_]", "_");
+    }
+}
@@ -0,0 +1,86 @@
+package com.xuchongyang.easyphone.linphone;
+
+import org.linphone.core.LpConfig;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 配置快照，一次读取所有配置项，之后不再访问 LpConfig，不可变，可在任意线程读取
+ */
+
+public final class ConfigSnapshot {
+    private final Map<ConfigKey<?>, Object> mValues;
+
+    private ConfigSnapshot(Map<ConfigKey<?>, Object> values) {
+        mValues = Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * 从 LpConfig 读取快照
+     * @param config LpConfig
+     * @param keys 配置项
+     * @return ConfigSnapshot
+     */
+    static ConfigSnapshot load(LpConfig config, Collection<ConfigKey<?>> keys) {
+        Map<ConfigKey<?>, Object> values = new HashMap<>();
+        for (ConfigKey<?> key : keys) {
+            values.put(key, key.read(config));
+        }
+        return new ConfigSnapshot(values);
+    }
+
+    /**
+     * 基于当前快照修改部分配置项得到新快照
+     * @param changes 修改的配置项
+     * @return 新快照
+     */
+    ConfigSnapshot with(Map<ConfigKey<?>, Object> changes) {
+        Map<ConfigKey<?>, Object> values = new HashMap<>(mValues);
+        values.putAll(changes);
+        return new ConfigSnapshot(values);
+    }
+
+    /**
+     * 读取配置项
+     * @param key 配置项
+     * @param <T> 值类型
+     * @return 值，快照中不包含该项时返回默认值
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(ConfigKey<T> key) {
+        Object value = mValues.get(key);
+        return value == null && !mValues.containsKey(key) ? key.getDefaultValue() : (T) value;
+    }
+
+    /**
+     * 与另一个快照比较
+     * @param other 另一个快照
+     * @return 值不同的配置项
+     */
+    public List<ConfigKey<?>> diff(ConfigSnapshot other) {
+        List<ConfigKey<?>> changed = new ArrayList<>();
+        for (Map.Entry<ConfigKey<?>, Object> entry : mValues.entrySet()) {
+            Object value = entry.getValue();
+            Object otherValue = other.mValues.get(entry.getKey());
+            if (value == null ? otherValue != null : !value.equals(otherValue)) {
+                changed.add(entry.getKey());
+            }
+        }
+        for (ConfigKey<?> key : other.mValues.keySet()) {
+            if (!mValues.containsKey(key)) {
+                changed.add(key);
+            }
+        }
+        return changed;
+    }
+
+    @Override
+    public String toString() {
+        return "ConfigSnapshot" + mValues;
+    }
+}
@@ -0,0 +1,221 @@
+package com.xuchongyang.easyphone.linphone;
+
+import android.content.Context;
+
+import org.linphone.core.LinphoneCoreFactory;
+import org.linphone.core.LpConfig;
+import org.linphone.mediastream.Log;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 配置存储：缓存 LpConfig 和类型化的配置快照，读取不访问 LpConfig；修改通过 Batch 合并后一次写入并 sync
+ * LinphoneCore 启动后使用其 LpConfig，启动前只解析一次配置文件
+ * 读取快照可在任意线程调用，提交修改在 Linphone 核心线程中调用，LinphoneCore 未启动时可在任意线程调用
+ */
+
+public class ConfigStore {
+    private static final String TAG = "ConfigStore";
+    private static volatile ConfigStore sInstance;
+    private final CopyOnWriteArrayList<Listener> mListeners = new CopyOnWriteArrayList<>();
+    private LpConfig mConfig;
+    private boolean mAttached;
+    private volatile ConfigSnapshot mSnapshot;
+
+    /**
+     * 配置变化监听，在提交修改的线程中回调
+     */
+    public interface Listener {
+        void onConfigChanged(ConfigSnapshot oldSnapshot, ConfigSnapshot newSnapshot, List<ConfigKey<?>> changedKeys);
+    }
+
+    /**
+     * 获取 ConfigStore 实例
+     * @return ConfigStore 实例
+     */
+    public static ConfigStore getInstance() {
+        if (sInstance == null) {
+            synchronized (ConfigStore.class) {
+                if (sInstance == null) {
+                    sInstance = new ConfigStore();
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    private ConfigStore() {
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * 改用 LinphoneCore 的 LpConfig，LinphoneCore 创建后调用
+     * @param config LinphoneCore.getConfig()
+     */
+    synchronized void attach(LpConfig config) {
+        mConfig = config;
+        mAttached = true;
+        reload();
+    }
+
+    /**
+     * LinphoneCore 销毁后调用，之后的读取重新解析一次配置文件
+     */
+    synchronized void detach() {
+        mConfig = null;
+        mAttached = false;
+        mSnapshot = null;
+    }
+
+    /**
+     * 获取 LpConfig，LinphoneCore 未启动时只在第一次调用时解析配置文件
+     * @param context Context，用于定位配置文件
+     * @return LpConfig
+     */
+    public synchronized LpConfig getLpConfig(Context context) {
+        if (mConfig == null) {
+            mConfig = LinphoneCoreFactory.instance().createLpConfig(
+                    context.getFilesDir().getAbsolutePath() + "/.linphonerc");
+        }
+        return mConfig;
+    }
+
+    /**
+     * 获取配置快照
+     * @param context Context，LinphoneCore 未启动且尚未加载时用于定位配置文件
+     * @return ConfigSnapshot
+     */
+    public ConfigSnapshot getSnapshot(Context context) {
+        ConfigSnapshot snapshot = mSnapshot;
+        if (snapshot != null) {
+            return snapshot;
+        }
+        synchronized (this) {
+            if (mSnapshot == null) {
+                mSnapshot = ConfigSnapshot.load(getLpConfig(context), ConfigKeys.ALL);
+            }
+            return mSnapshot;
+        }
+    }
+
+    /**
+     * 获取已加载的配置快照，LinphoneCore 启动后总是可用
+     * @return ConfigSnapshot，尚未加载时返回 null
+     */
+    public ConfigSnapshot getSnapshot() {
+        return mSnapshot;
+    }
+
+    /**
+     * 开始一批修改
+     * @return Batch
+     */
+    public Batch edit() {
+        return new Batch();
+    }
+
+    /**
+     * 重新读取 LpConfig，配置文件被外部修改后调用
+     * @return 值发生变化的配置项
+     */
+    synchronized List<ConfigKey<?>> reload() {
+        if (mConfig == null) {
+            return Collections.emptyList();
+        }
+        ConfigSnapshot oldSnapshot = mSnapshot;
+        ConfigSnapshot newSnapshot = ConfigSnapshot.load(mConfig, ConfigKeys.ALL);
+        mSnapshot = newSnapshot;
+        if (oldSnapshot == null) {
+            return Collections.emptyList();
+        }
+        List<ConfigKey<?>> changed = oldSnapshot.diff(newSnapshot);
+        notifyChanged(oldSnapshot, newSnapshot, changed);
+        return changed;
+    }
+
+    private synchronized List<ConfigKey<?>> commit(Map<ConfigKey<?>, Object> changes) {
+        if (mConfig == null) {
+            throw new IllegalStateException("Config is not loaded, call getSnapshot(Context) first");
+        }
+        ConfigSnapshot oldSnapshot = mSnapshot != null ? mSnapshot : ConfigSnapshot.load(mConfig, ConfigKeys.ALL);
+        ConfigSnapshot newSnapshot = oldSnapshot.with(changes);
+        List<ConfigKey<?>> changed = oldSnapshot.diff(newSnapshot);
+        if (changed.isEmpty()) {
+            mSnapshot = oldSnapshot;
+            return changed;
+        }
+        for (ConfigKey<?> key : changed) {
+            write(key, changes.get(key));
+        }
+        mConfig.sync();
+        mSnapshot = newSnapshot;
+        notifyChanged(oldSnapshot, newSnapshot, changed);
+        return changed;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> void write(ConfigKey<T> key, Object value) {
+        key.write(mConfig, (T) value);
+    }
+
+    private void notifyChanged(ConfigSnapshot oldSnapshot, ConfigSnapshot newSnapshot, List<ConfigKey<?>> changed) {
+        if (changed.isEmpty()) {
+            return;
+        }
+        Log.d(TAG, "Config changed: " + changed);
+        for (Listener listener : mListeners) {
+            listener.onConfigChanged(oldSnapshot, newSnapshot, changed);
+        }
+    }
+
+    /**
+     * 一批配置修改，commit 时一次写入 LpConfig 并 sync
+     */
+    public class Batch {
+        private final Map<ConfigKey<?>, Object> mChanges = new HashMap<>();
+
+        private Batch() {
+        }
+
+        public <T> Batch set(ConfigKey<T> key, T value) {
+            mChanges.put(key, value);
+            return this;
+        }
+
+        /**
+         * 设置另一份配置中出现的所有配置项，未出现的保持不变
+         * @param source 另一份配置
+         * @return Batch
+         */
+        Batch setAll(LpConfig source) {
+            for (ConfigKey<?> key : ConfigKeys.ALL) {
+                if (key.isSet(source)) {
+                    mChanges.put(key, key.read(source));
+                }
+            }
+            return this;
+        }
+
+        /**
+         * 写入修改，值没有变化时不写入
+         * @return 值发生变化的配置项
+         */
+        public List<ConfigKey<?>> commit() {
+            if (mChanges.isEmpty()) {
+                return Collections.emptyList();
+            }
+            return ConfigStore.this.commit(mChanges);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.xuchongyang.easyphone.linphone;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Handler;
+
+import org.linphone.core.LinphoneCore;
+import org.linphone.mediastream.Log;
+
+/**
+ * 网络变化接收者：把系统的网络连接状态同步到 LinphoneCore.setNetworkReachable
+ * 断网时设为不可达；切换到另一个网络时先设为不可达再设为可达，liblinphone 据此重建连接并重新注册，
+ * 各组件在 networkReachableChanged 中处理网络变化
+ * 广播在 Linphone 核心线程中接收，所有方法在 Linphone 核心线程中调用
+ */
+
+public class ConnectivityReceiver extends BroadcastReceiver {
+    private static final String TAG = "ConnectivityReceiver";
+    private final Context mContext;
+    private final LinphoneCoreThread mCoreThread;
+    private LinphoneCore mLc;
+    /**
+     * 当前网络的标识，不可达时为 null
+     */
+    private String mNetwork;
+
+    ConnectivityReceiver(Context context, LinphoneCoreThread coreThread) {
+        mContext = context;
+        mCoreThread = coreThread;
+    }
+
+    /**
+     * 开始接收网络变化，在 initLibLinphone 设置网络可达之后调用
+     * @param linphoneCore LinphoneCore
+     */
+    void start(LinphoneCore linphoneCore) {
+        mLc = linphoneCore;
+        mNetwork = getNetwork();
+        if (mNetwork == null) {
+            Log.i(TAG, "No network at start");
+            mLc.setNetworkReachable(false);
+        }
+        // 粘性广播会立即送达当前状态，与上面的状态相同时不做处理
+        mContext.registerReceiver(this, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION), null,
+                new Handler(mCoreThread.getLooper()));
+    }
+
+    void stop() {
+        if (mLc != null) {
+            mContext.unregisterReceiver(this);
+            mLc = null;
+        }
+        mNetwork = null;
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (mLc == null) {
+            return;
+        }
+        String network = getNetwork();
+        String previous = mNetwork;
+        if (network == null ? previous == null : network.equals(previous)) {
+            return;
+        }
+        mNetwork = network;
+        Log.i(TAG, "Network changed from " + previous + " to " + network);
+        if (previous != null) {
+            mLc.setNetworkReachable(false);
+        }
+        if (network != null) {
+            mLc.setNetworkReachable(true);
+        }
+    }
+
+    /**
+     * 获取当前网络的标识，类型相同时以 Wi-Fi 名称或 APN 区分
+     * @return 标识，没有已连接的网络时返回 null
+     */
+    private String getNetwork() {
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo networkInfo = connectivityManager == null ? null : connectivityManager.getActiveNetworkInfo();
+        if (networkInfo == null || !networkInfo.isConnected()) {
+            return null;
+        }
+        return networkInfo.getTypeName() + "/" + networkInfo.getExtraInfo();
+    }
+}
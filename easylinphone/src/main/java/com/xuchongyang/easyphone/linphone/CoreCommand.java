@@ -0,0 +1,17 @@
+package com.xuchongyang.easyphone.linphone;
+
+import org.linphone.core.LinphoneCore;
+
+/**
+ * 在 Linphone 核心线程中执行的命令
+ */
+
+public interface CoreCommand<T> {
+    /**
+     * 执行命令
+     * @param linphoneCore LinphoneCore，只能在本方法内使用
+     * @return 命令结果
+     * @throws Exception 执行失败
+     */
+    T execute(LinphoneCore linphoneCore) throws Exception;
+}
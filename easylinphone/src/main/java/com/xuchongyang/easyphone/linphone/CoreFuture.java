@@ -0,0 +1,159 @@
+package com.xuchongyang.easyphone.linphone;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.xuchongyang.easyphone.callback.ResultCallback;
+
+import org.linphone.core.LinphoneCore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * 核心线程命令的执行结果，可阻塞获取也可添加主线程回调
+ */
+
+public class CoreFuture<T> extends FutureTask<T> {
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    private final CommandCallable<T> mCommandCallable;
+    private List<ResultCallback<? super T>> mCallbacks;
+
+    CoreFuture(CoreCommand<T> command) {
+        this(new CommandCallable<>(command));
+    }
+
+    /**
+     * 构造不依赖 LinphoneCore 的任务，如 LinphoneCore 的创建
+     * @param callable 任务
+     */
+    @SuppressWarnings("unchecked")
+    CoreFuture(Callable<T> callable) {
+        super(callable);
+        mCommandCallable = callable instanceof CommandCallable ? (CommandCallable<T>) callable : null;
+    }
+
+    /**
+     * 创建一个已失败的结果
+     * @param throwable 失败原因
+     * @param <T> 结果类型
+     * @return CoreFuture
+     */
+    public static <T> CoreFuture<T> failed(Throwable throwable) {
+        CoreFuture<T> future = new CoreFuture<>(new CommandCallable<T>(null));
+        future.setException(throwable);
+        return future;
+    }
+
+    /**
+     * 在核心线程中执行命令
+     * @param linphoneCore LinphoneCore
+     */
+    void run(LinphoneCore linphoneCore) {
+        if (mCommandCallable == null) {
+            run();
+            return;
+        }
+        mCommandCallable.mLinphoneCore = linphoneCore;
+        run();
+        mCommandCallable.mLinphoneCore = null;
+    }
+
+    /**
+     * 命令的类名，用于卡顿统计
+     * @return 类名
+     */
+    String getSourceName() {
+        if (mCommandCallable != null && mCommandCallable.mCommand != null) {
+            return mCommandCallable.mCommand.getClass().getName();
+        }
+        return getClass().getName();
+    }
+
+    /**
+     * 添加结果回调，回调在主线程中执行
+     * @param callback ResultCallback
+     * @return 当前 CoreFuture
+     */
+    public CoreFuture<T> addCallback(ResultCallback<? super T> callback) {
+        synchronized (this) {
+            if (!isDone()) {
+                if (mCallbacks == null) {
+                    mCallbacks = new ArrayList<>(1);
+                }
+                mCallbacks.add(callback);
+                return this;
+            }
+        }
+        postResult(callback);
+        return this;
+    }
+
+    @Override
+    protected void done() {
+        List<ResultCallback<? super T>> callbacks;
+        synchronized (this) {
+            callbacks = mCallbacks;
+            mCallbacks = null;
+        }
+        if (callbacks != null) {
+            for (ResultCallback<? super T> callback : callbacks) {
+                postResult(callback);
+            }
+        }
+    }
+
+    private void postResult(final ResultCallback<? super T> callback) {
+        sMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                deliver(callback);
+                StallWatchdog watchdog = StallWatchdog.getInstance();
+                long stallNanos = watchdog.stallNanos(start);
+                if (stallNanos >= 0) {
+                    watchdog.record("result_callback:" + callback.getClass().getName(), stallNanos);
+                }
+            }
+        });
+    }
+
+    private void deliver(ResultCallback<? super T> callback) {
+        T result;
+        try {
+            result = get();
+        } catch (ExecutionException e) {
+            callback.onFailure(e.getCause());
+            return;
+        } catch (CancellationException e) {
+            callback.onFailure(e);
+            return;
+        } catch (InterruptedException e) {
+            callback.onFailure(e);
+            return;
+        }
+        callback.onSuccess(result);
+    }
+
+    private static class CommandCallable<T> implements Callable<T> {
+        private final CoreCommand<T> mCommand;
+        private LinphoneCore mLinphoneCore;
+
+        CommandCallable(CoreCommand<T> command) {
+            mCommand = command;
+        }
+
+        @Override
+        public T call() throws Exception {
+            if (mLinphoneCore == null) {
+                throw new IllegalStateException("LinphoneCore is not available");
+            }
+            return mCommand.execute(mLinphoneCore);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.xuchongyang.easyphone.linphone;
+
+/**
+ * 默认编码格式策略：WiFi 下优先音质，移动网络下优先码率，低端设备优先计算量小的编码
+ */
+
+public class DefaultCodecPolicy implements CodecPolicy {
+    private static final String[] AUDIO_WIFI_HIGH_END = {
+            "opus/48000", "G722/8000", "speex/16000", "PCMU/8000", "PCMA/8000"};
+    private static final String[] AUDIO_WIFI_LOW_END = {
+            "PCMU/8000", "PCMA/8000", "G722/8000", "opus/48000"};
+    private static final String[] AUDIO_MOBILE_HIGH_END = {
+            "opus/48000", "speex/16000", "speex/8000", "PCMU/8000", "PCMA/8000"};
+    private static final String[] AUDIO_MOBILE_LOW_END = {
+            "speex/8000", "GSM/8000", "opus/48000", "PCMU/8000", "PCMA/8000"};
+    private static final String[] VIDEO_HIGH_END = {"H264/90000", "VP8/90000"};
+    // 低端设备 VP8 软编码开销较大，优先 H264，保留 VP8 以便与只支持 VP8 的对方协商
+    private static final String[] VIDEO_LOW_END = {"H264/90000", "VP8/90000"};
+
+    @Override
+    public String[] getAudioCodecs(NetworkType networkType, DeviceClass deviceClass) {
+        boolean lowEnd = deviceClass == DeviceClass.LOW_END;
+        if (networkType == NetworkType.WIFI) {
+            return lowEnd ? AUDIO_WIFI_LOW_END : AUDIO_WIFI_HIGH_END;
+        }
+        return lowEnd ? AUDIO_MOBILE_LOW_END : AUDIO_MOBILE_HIGH_END;
+    }
+
+    @Override
+    public String[] getVideoCodecs(NetworkType networkType, DeviceClass deviceClass) {
+        return deviceClass == DeviceClass.LOW_END ? VIDEO_LOW_END : VIDEO_HIGH_END;
+    }
+
+    @Override
+    public float getMaxCpuLoad(DeviceClass deviceClass) {
+        return deviceClass == DeviceClass.LOW_END ? 0.3f : 0.6f;
+    }
+}
@@ -0,0 +1,88 @@
+package com.xuchongyang.easyphone.linphone;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 默认视频质量策略：根据丢包率、抖动、往返时延判断网络状况
+ */
+
+public class DefaultVideoQualityPolicy implements VideoQualityPolicy {
+    private static final List<VideoQualityLevel> DEFAULT_LEVELS = Collections.unmodifiableList(Arrays.asList(
+            new VideoQualityLevel("qvga", 15, 380),
+            new VideoQualityLevel("vga", 20, 768),
+            new VideoQualityLevel("720p", 25, 1536)));
+
+    private final List<VideoQualityLevel> mLevels;
+    private final float mMaxLossRate;
+    private final float mMaxJitterMs;
+    private final float mMaxRoundTripMs;
+
+    public DefaultVideoQualityPolicy() {
+        this(DEFAULT_LEVELS, 5f, 60f, 400f);
+    }
+
+    /**
+     * 构造方法
+     * @param levels 质量档位，按质量从低到高排列
+     * @param maxLossRate 允许的最大丢包率，%，超过则降档
+     * @param maxJitterMs 允许的最大抖动，ms，超过则降档
+     * @param maxRoundTripMs 允许的最大往返时延，ms，超过则降档
+     */
+    public DefaultVideoQualityPolicy(List<VideoQualityLevel> levels, float maxLossRate,
+                                     float maxJitterMs, float maxRoundTripMs) {
+        if (levels == null || levels.isEmpty()) {
+            throw new IllegalArgumentException("levels must not be empty");
+        }
+        mLevels = levels;
+        mMaxLossRate = maxLossRate;
+        mMaxJitterMs = maxJitterMs;
+        mMaxRoundTripMs = maxRoundTripMs;
+    }
+
+    @Override
+    public List<VideoQualityLevel> getLevels() {
+        return mLevels;
+    }
+
+    @Override
+    public int getInitialLevel() {
+        return mLevels.size() - 1;
+    }
+
+    @Override
+    public int evaluate(CallStatsSummary summary, int currentLevel) {
+        float loss = Math.max(summary.getLast(CallStatsSummary.Metric.RECEIVER_LOSS_RATE),
+                summary.getLast(CallStatsSummary.Metric.SENDER_LOSS_RATE));
+        float jitter = summary.getLast(CallStatsSummary.Metric.JITTER);
+        float roundTrip = summary.getLast(CallStatsSummary.Metric.ROUND_TRIP_DELAY);
+        if (loss > mMaxLossRate || jitter > mMaxJitterMs || roundTrip > mMaxRoundTripMs) {
+            return STEP_DOWN;
+        }
+        // 升档要求明显低于降档阈值，避免在阈值附近来回切换
+        float meanLoss = Math.max(summary.getMean(CallStatsSummary.Metric.RECEIVER_LOSS_RATE),
+                summary.getMean(CallStatsSummary.Metric.SENDER_LOSS_RATE));
+        if (meanLoss < mMaxLossRate / 5
+                && summary.getMean(CallStatsSummary.Metric.JITTER) < mMaxJitterMs / 3
+                && summary.getMean(CallStatsSummary.Metric.ROUND_TRIP_DELAY) < mMaxRoundTripMs / 2) {
+            return STEP_UP;
+        }
+        return HOLD;
+    }
+
+    @Override
+    public int getStepDownSamples() {
+        return 3;
+    }
+
+    @Override
+    public int getStepUpSamples() {
+        return 10;
+    }
+
+    @Override
+    public long getCooldownMillis() {
+        return 10000;
+    }
+}
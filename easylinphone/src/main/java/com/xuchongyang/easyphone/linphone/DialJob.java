@@ -0,0 +1,134 @@
+package com.xuchongyang.easyphone.linphone;
+
+import org.linphone.core.Reason;
+
+/**
+ * 外呼队列中的一个号码，记录拨打次数和最终结果
+ * 状态由 DialQueue 在 Linphone 核心线程中更新，可在任意线程读取
+ */
+
+public class DialJob {
+    /**
+     * 等待拨打或等待重试
+     */
+    public static final int STATUS_PENDING = 0;
+    /**
+     * 正在呼叫
+     */
+    public static final int STATUS_DIALING = 1;
+    /**
+     * 已接通
+     */
+    public static final int STATUS_CONNECTED = 2;
+    /**
+     * 接通后正常结束
+     */
+    public static final int STATUS_COMPLETED = 3;
+    /**
+     * 重试后仍未接通
+     */
+    public static final int STATUS_FAILED = 4;
+    /**
+     * 已取消
+     */
+    public static final int STATUS_CANCELLED = 5;
+
+    private final String mNumber;
+    private final boolean mVideo;
+    private volatile int mStatus = STATUS_PENDING;
+    private volatile int mAttempts;
+    private volatile Reason mLastReason;
+    private volatile String mCallId;
+    private volatile long mNextAttemptTime;
+    private volatile long mFinishTime;
+
+    DialJob(String number, boolean video) {
+        mNumber = number;
+        mVideo = video;
+    }
+
+    public String getNumber() {
+        return mNumber;
+    }
+
+    public boolean isVideo() {
+        return mVideo;
+    }
+
+    public int getStatus() {
+        return mStatus;
+    }
+
+    /**
+     * 是否已结束（完成、失败或取消）
+     * @return 是否已结束
+     */
+    public boolean isFinished() {
+        return mStatus >= STATUS_COMPLETED;
+    }
+
+    /**
+     * 已拨打次数
+     * @return 次数
+     */
+    public int getAttempts() {
+        return mAttempts;
+    }
+
+    /**
+     * 最近一次未接通的原因
+     * @return Reason，未失败过时返回 null
+     */
+    public Reason getLastReason() {
+        return mLastReason;
+    }
+
+    /**
+     * 最近一次呼叫的通话 ID
+     * @return SIP Call-ID
+     */
+    public String getCallId() {
+        return mCallId;
+    }
+
+    long getNextAttemptTime() {
+        return mNextAttemptTime;
+    }
+
+    void onDial(String callId) {
+        mAttempts++;
+        mCallId = callId;
+        mStatus = STATUS_DIALING;
+    }
+
+    void onConnected() {
+        mStatus = STATUS_CONNECTED;
+    }
+
+    void onRetry(Reason reason, long nextAttemptTime) {
+        mLastReason = reason;
+        mNextAttemptTime = nextAttemptTime;
+        mStatus = STATUS_PENDING;
+    }
+
+    void finish(int status, Reason reason, long time) {
+        if (reason != null) {
+            mLastReason = reason;
+        }
+        mFinishTime = time;
+        mStatus = status;
+    }
+
+    /**
+     * 结束时间
+     * @return SystemClock.elapsedRealtime() 时间，ms，未结束时返回 0
+     */
+    public long getFinishTime() {
+        return mFinishTime;
+    }
+
+    @Override
+    public String toString() {
+        return "DialJob{" + mNumber + ", status " + mStatus + ", attempts " + mAttempts + "}";
+    }
+}
@@ -0,0 +1,383 @@
+package com.xuchongyang.easyphone.linphone;
+
+import android.os.SystemClock;
+
+import org.linphone.core.LinphoneCall;
+import org.linphone.core.LinphoneCore;
+import org.linphone.core.LinphoneProxyConfig;
+import org.linphone.core.Reason;
+import org.linphone.mediastream.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 外呼队列：批量提交号码，按并发上限和拨号间隔依次拨打，未接通时按指数退避重试
+ * 公开方法可在任意线程调用，队列状态只在 Linphone 核心线程中修改
+ */
+
+public class DialQueue {
+    private static final String TAG = "DialQueue";
+    private static final long MAX_BACKOFF_MILLIS = 5 * 60 * 1000;
+
+    private final LinphoneCoreThread mCoreThread;
+    private final Environment mEnvironment;
+    private final ArrayDeque<DialJob> mPending = new ArrayDeque<>();
+    private final Map<String, DialJob> mActive = new HashMap<>();
+    private final CopyOnWriteArrayList<Listener> mListeners = new CopyOnWriteArrayList<>();
+    private final AtomicInteger mCompleted = new AtomicInteger();
+    private final AtomicInteger mFailed = new AtomicInteger();
+    private final AtomicInteger mDialed = new AtomicInteger();
+    private final Runnable mDispatchTask = new Runnable() {
+        @Override
+        public void run() {
+            mDispatchScheduled = false;
+            dispatch();
+        }
+    };
+    private LinphoneCore mLc;
+    private boolean mStarted;
+    private boolean mDispatchScheduled;
+    private volatile int mMaxConcurrent = 1;
+    private volatile long mPacingMillis = 1000;
+    private volatile int mMaxAttempts = 3;
+    private volatile long mBackoffMillis = 5000;
+    private long mLastDialTime;
+    private volatile long mStartTime;
+
+    /**
+     * 外呼结果监听，在 Linphone 核心线程中回调
+     */
+    public interface Listener {
+        void onDialJobFinished(DialJob job);
+    }
+
+    /**
+     * 时钟、调度和拨号，单元测试时替换
+     */
+    interface Environment {
+        long now();
+
+        boolean isCoreThread();
+
+        void post(Runnable task, long delayMillis);
+
+        void cancel(Runnable task);
+
+        /**
+         * 发起呼叫
+         * @param number 号码
+         * @param video 是否为视频通话
+         * @return Call-ID，呼叫未能发出时返回 null
+         */
+        String dial(String number, boolean video);
+    }
+
+    DialQueue(LinphoneCoreThread coreThread) {
+        mCoreThread = coreThread;
+        mEnvironment = new CoreEnvironment();
+    }
+
+    DialQueue(Environment environment) {
+        mCoreThread = null;
+        mEnvironment = environment;
+    }
+
+    void start(LinphoneCore linphoneCore) {
+        mLc = linphoneCore;
+        mStarted = true;
+    }
+
+    void stop() {
+        cancelAllInternal();
+        mStarted = false;
+        mLc = null;
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * 设置同时进行的外呼数上限
+     * @param maxConcurrent 上限，至少为 1
+     */
+    public void setMaxConcurrent(int maxConcurrent) {
+        mMaxConcurrent = Math.max(1, maxConcurrent);
+        scheduleDispatch(0);
+    }
+
+    /**
+     * 设置两次拨号之间的最小间隔
+     * @param pacingMillis 间隔，ms
+     */
+    public void setPacing(long pacingMillis) {
+        mPacingMillis = Math.max(0, pacingMillis);
+    }
+
+    /**
+     * 设置重试策略
+     * @param maxAttempts 每个号码最多拨打次数，包括首次
+     * @param backoffMillis 首次重试等待时间，之后每次翻倍
+     */
+    public void setRetry(int maxAttempts, long backoffMillis) {
+        mMaxAttempts = Math.max(1, maxAttempts);
+        mBackoffMillis = Math.max(0, backoffMillis);
+    }
+
+    /**
+     * 批量添加号码
+     * @param numbers 号码列表
+     * @param video 是否为视频通话
+     * @return 每个号码对应的 DialJob，可用于查询结果
+     */
+    public List<DialJob> enqueue(List<String> numbers, boolean video) {
+        final List<DialJob> jobs = new ArrayList<>(numbers.size());
+        for (String number : numbers) {
+            jobs.add(new DialJob(number, video));
+        }
+        mEnvironment.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mStartTime == 0) {
+                    mStartTime = mEnvironment.now();
+                }
+                mPending.addAll(jobs);
+                dispatch();
+            }
+        }, 0);
+        return jobs;
+    }
+
+    /**
+     * 取消所有等待中的号码，正在进行的通话不受影响
+     */
+    public void cancelAll() {
+        mEnvironment.post(new Runnable() {
+            @Override
+            public void run() {
+                cancelAllInternal();
+            }
+        }, 0);
+    }
+
+    /**
+     * 已拨打次数（含重试）
+     * @return 次数
+     */
+    public int getDialedCount() {
+        return mDialed.get();
+    }
+
+    public int getCompletedCount() {
+        return mCompleted.get();
+    }
+
+    public int getFailedCount() {
+        return mFailed.get();
+    }
+
+    /**
+     * 吞吐量
+     * @return 自第一次提交以来平均每分钟结束的号码数
+     */
+    public float getThroughputPerMinute() {
+        long startTime = mStartTime;
+        if (startTime == 0) {
+            return 0;
+        }
+        long elapsed = Math.max(1, mEnvironment.now() - startTime);
+        return (mCompleted.get() + mFailed.get()) * 60000f / elapsed;
+    }
+
+    /**
+     * 通话状态变化，在 Linphone 核心线程中调用
+     * @param linphoneCall 通话
+     * @param state 通话状态
+     */
+    void onCallState(LinphoneCall linphoneCall, LinphoneCall.State state) {
+        if (mActive.isEmpty()) {
+            return;
+        }
+        String callId = LinphoneUtils.getCallId(linphoneCall);
+        if (callId == null || !mActive.containsKey(callId)) {
+            return;
+        }
+        if (state == LinphoneCall.State.Connected) {
+            onCallConnected(callId);
+        } else if (state == LinphoneCall.State.CallEnd || state == LinphoneCall.State.Error) {
+            onCallEnded(callId, linphoneCall.getReason());
+        }
+    }
+
+    void onCallConnected(String callId) {
+        DialJob job = mActive.get(callId);
+        if (job != null) {
+            job.onConnected();
+        }
+    }
+
+    void onCallEnded(String callId, Reason reason) {
+        DialJob job = mActive.remove(callId);
+        if (job != null) {
+            onCallFinished(job, reason);
+            scheduleDispatch(0);
+        }
+    }
+
+    /**
+     * 结束一次拨号，需要重试时放回等待队列末尾；不能在遍历 mPending 时调用
+     */
+    private void onCallFinished(DialJob job, Reason reason) {
+        long now = mEnvironment.now();
+        if (job.getStatus() == DialJob.STATUS_CONNECTED) {
+            job.finish(DialJob.STATUS_COMPLETED, null, now);
+            mCompleted.incrementAndGet();
+        } else if (job.getAttempts() < mMaxAttempts && isRetryable(reason)) {
+            long backoff = Math.min(MAX_BACKOFF_MILLIS, mBackoffMillis << (job.getAttempts() - 1));
+            Log.d(TAG, "Retry " + job.getNumber() + " in " + backoff + " ms");
+            job.onRetry(reason, now + backoff);
+            mPending.addLast(job);
+            return;
+        } else {
+            job.finish(DialJob.STATUS_FAILED, reason, now);
+            mFailed.incrementAndGet();
+        }
+        for (Listener listener : mListeners) {
+            listener.onDialJobFinished(job);
+        }
+    }
+
+    /**
+     * 忙、无应答、网络和服务器临时错误可以重试，拒接、号码不存在等不重试
+     */
+    private static boolean isRetryable(Reason reason) {
+        return reason == null || reason == Reason.None || reason == Reason.Busy || reason == Reason.NoResponse
+                || reason == Reason.NotAnswered || reason == Reason.TemporarilyUnavailable
+                || reason == Reason.IOError || reason == Reason.ServerTimeout || reason == Reason.BadGateway
+                || reason == Reason.Unknown;
+    }
+
+    private void dispatch() {
+        if (!mStarted) {
+            return;
+        }
+        long now = mEnvironment.now();
+        long nextWake = Long.MAX_VALUE;
+        List<DialJob> undialed = null;
+        Iterator<DialJob> iterator = mPending.iterator();
+        while (iterator.hasNext() && mActive.size() < mMaxConcurrent) {
+            DialJob job = iterator.next();
+            if (job.getNextAttemptTime() > now) {
+                nextWake = Math.min(nextWake, job.getNextAttemptTime());
+                continue;
+            }
+            long pacingWait = mLastDialTime + mPacingMillis - now;
+            if (mLastDialTime != 0 && pacingWait > 0) {
+                nextWake = Math.min(nextWake, now + pacingWait);
+                break;
+            }
+            iterator.remove();
+            if (!dial(job, now)) {
+                if (undialed == null) {
+                    undialed = new ArrayList<>();
+                }
+                undialed.add(job);
+            }
+        }
+        if (undialed != null) {
+            // 遍历结束后再放回队列
+            for (DialJob job : undialed) {
+                onCallFinished(job, Reason.Unknown);
+                if (job.getStatus() == DialJob.STATUS_PENDING) {
+                    nextWake = Math.min(nextWake, job.getNextAttemptTime());
+                }
+            }
+        }
+        if (nextWake != Long.MAX_VALUE) {
+            scheduleDispatch(nextWake - now);
+        }
+    }
+
+    /**
+     * 拨号
+     * @return 呼叫是否发出，未发出时由调用方按失败处理
+     */
+    private boolean dial(DialJob job, long now) {
+        mLastDialTime = now;
+        String callId = mEnvironment.dial(job.getNumber(), job.isVideo());
+        mDialed.incrementAndGet();
+        job.onDial(callId);
+        if (callId == null) {
+            return false;
+        }
+        mActive.put(callId, job);
+        return true;
+    }
+
+    private void scheduleDispatch(long delayMillis) {
+        if (!mEnvironment.isCoreThread()) {
+            mEnvironment.post(mDispatchTask, 0);
+            return;
+        }
+        if (mDispatchScheduled) {
+            mEnvironment.cancel(mDispatchTask);
+        }
+        mDispatchScheduled = true;
+        mEnvironment.post(mDispatchTask, Math.max(0, delayMillis));
+    }
+
+    private void cancelAllInternal() {
+        long now = mEnvironment.now();
+        for (DialJob job : mPending) {
+            job.finish(DialJob.STATUS_CANCELLED, null, now);
+        }
+        mPending.clear();
+        mEnvironment.cancel(mDispatchTask);
+        mDispatchScheduled = false;
+    }
+
+    /**
+     * 在核心线程中通过 LinphoneUtils 拨打默认账号域名下的号码
+     */
+    private class CoreEnvironment implements Environment {
+        @Override
+        public long now() {
+            return SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public boolean isCoreThread() {
+            return mCoreThread.isCurrentThread();
+        }
+
+        @Override
+        public void post(Runnable task, long delayMillis) {
+            mCoreThread.postDelayed(task, delayMillis);
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            mCoreThread.removeCallbacks(task);
+        }
+
+        @Override
+        public String dial(String number, boolean video) {
+            PhoneBean phone = new PhoneBean();
+            phone.setUserName(number);
+            LinphoneProxyConfig proxyConfig = mLc.getDefaultProxyConfig();
+            phone.setHost(proxyConfig == null ? null : proxyConfig.getDomain());
+            return LinphoneUtils.getCallId(LinphoneUtils.getInstance().startSingleCallingTo(phone, video));
+        }
+    }
+}
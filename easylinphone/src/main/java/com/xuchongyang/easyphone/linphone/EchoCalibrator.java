@@ -0,0 +1,226 @@
+package com.xuchongyang.easyphone.linphone;
+
+import org.linphone.core.LinphoneCall;
+import org.linphone.core.LinphoneCore;
+import org.linphone.core.LinphoneCoreException;
+import org.linphone.core.LinphoneCoreListener;
+import org.linphone.mediastream.Log;
+
+/**
+ * 回声消除校准：每种机型和音频路由（听筒、外放）的校准结果通过 ConfigStore 保存，之后启动直接使用
+ * 校准会播放提示音，只在应用调用 recalibrate 时进行，由应用选择合适的空闲时机和音频路由
+ * 通话质量持续偏低而网络正常时认为可能有回声，只记录并通过 isRecalibrationSuggested 告知应用
+ * 所有方法在 Linphone 核心线程中调用
+ */
+
+public class EchoCalibrator {
+    private static final String TAG = "EchoCalibrator";
+    /**
+     * 校准结果为无回声时保存的延迟值
+     */
+    private static final int NO_ECHO = -1;
+    private static final int NOT_CALIBRATED = -2;
+    /**
+     * 判断回声时要求的最短通话时长
+     */
+    private static final int MIN_CALL_SECONDS = 20;
+    /**
+     * 平均质量（0 - 5）低于该值视为可能有回声
+     */
+    private static final float POOR_QUALITY = 2.5f;
+    private static final float MAX_NORMAL_LOSS_RATE = 2f;
+    private static final float MAX_NORMAL_JITTER = 30f;
+    /**
+     * 连续多少次可疑通话后建议重新校准
+     */
+    private static final int SUSPECT_CALLS_BEFORE_RECALIBRATION = 3;
+
+    private final LinphoneCoreListener mListener;
+    private LinphoneCore mLc;
+    private boolean mCalibrating;
+    private ConfigKey<Integer> mCalibratingKey;
+    private int mSuspectCalls;
+    private boolean mRecalibrationSuggested;
+
+    /**
+     * @param listener 接收 ecCalibrationStatus 回调的监听，收到后转发给 onCalibrationStatus
+     */
+    EchoCalibrator(LinphoneCoreListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * 按当前机型和路由应用缓存的校准结果，没有结果时使用默认延迟
+     * @param linphoneCore LinphoneCore
+     */
+    void start(LinphoneCore linphoneCore) {
+        mLc = linphoneCore;
+        if (mLc.hasBuiltInEchoCanceler()) {
+            // 使用系统回声消除，关闭软件回声消除，无需校准
+            Log.i(TAG, "Built-in echo canceler available");
+            mLc.enableEchoCancellation(false);
+            return;
+        }
+        apply();
+    }
+
+    void stop() {
+        mLc = null;
+        mCalibrating = false;
+    }
+
+    /**
+     * 立即校准指定音频路由并播放提示音，完成前保留原有结果
+     * 由应用在确认设备空闲、播放提示音不会打扰用户时调用
+     * @param speaker true 校准外放，false 校准听筒
+     * @throws IllegalStateException 有通话、正在校准或使用系统回声消除
+     */
+    public void recalibrate(boolean speaker) {
+        if (mLc == null) {
+            throw new IllegalStateException("LinphoneCore is not started");
+        }
+        if (mLc.hasBuiltInEchoCanceler()) {
+            throw new IllegalStateException("Built-in echo canceler is used, no calibration needed");
+        }
+        if (mCalibrating) {
+            throw new IllegalStateException("Calibration already in progress");
+        }
+        if (mLc.getCallsNb() > 0) {
+            throw new IllegalStateException("Cannot calibrate during a call");
+        }
+        mCalibratingKey = keyOf(speaker);
+        mCalibrating = true;
+        try {
+            Log.i(TAG, "Start calibration of " + routeOf(speaker));
+            mLc.startEchoCalibration(mListener);
+        } catch (LinphoneCoreException e) {
+            mCalibrating = false;
+            throw new IllegalStateException("Cannot start calibration", e);
+        }
+    }
+
+    /**
+     * 指定音频路由是否已有校准结果
+     * @param speaker true 外放，false 听筒
+     * @return 是否已校准
+     */
+    public boolean isCalibrated(boolean speaker) {
+        return read(keyOf(speaker)) != NOT_CALIBRATED;
+    }
+
+    /**
+     * 是否连续多次通话质量偏低而网络正常，建议应用在空闲时重新校准
+     * @return 是否建议重新校准
+     */
+    public boolean isRecalibrationSuggested() {
+        return mRecalibrationSuggested;
+    }
+
+    /**
+     * 音频路由变化，应用该路由的结果
+     */
+    void onRouteChanged() {
+        if (mLc != null && !mLc.hasBuiltInEchoCanceler()) {
+            apply();
+        }
+    }
+
+    /**
+     * 通话状态变化，通话开始时按实际路由应用结果，通话结束时判断是否可能有回声
+     * @param linphoneCall 通话
+     * @param state 通话状态
+     */
+    void onCallState(LinphoneCall linphoneCall, LinphoneCall.State state) {
+        if (mLc == null || mLc.hasBuiltInEchoCanceler()) {
+            return;
+        }
+        if (state == LinphoneCall.State.OutgoingInit || state == LinphoneCall.State.IncomingReceived) {
+            // 空闲时的路由不一定是通话使用的路由，建立音频流前重新应用
+            apply();
+        } else if (state == LinphoneCall.State.CallEnd) {
+            checkEcho(linphoneCall);
+        }
+    }
+
+    /**
+     * 校准状态回调
+     * @param status 校准状态
+     * @param delayMs 测得的延迟，ms
+     */
+    void onCalibrationStatus(LinphoneCore.EcCalibratorStatus status, int delayMs) {
+        if (mLc == null || !mCalibrating || status == LinphoneCore.EcCalibratorStatus.InProgress) {
+            return;
+        }
+        mCalibrating = false;
+        ConfigKey<Integer> key = mCalibratingKey;
+        int result;
+        if (status == LinphoneCore.EcCalibratorStatus.Done) {
+            Log.i(TAG, "Calibrated " + key + ", delay " + delayMs + " ms");
+            result = delayMs;
+        } else if (status == LinphoneCore.EcCalibratorStatus.DoneNoEcho) {
+            Log.i(TAG, "Calibrated " + key + ", no echo");
+            result = NO_ECHO;
+        } else {
+            // 失败时保留原有结果，由应用决定是否再试
+            Log.w(TAG, "Calibration of " + key + " failed");
+            return;
+        }
+        ConfigStore.getInstance().edit().set(key, result).commit();
+        mSuspectCalls = 0;
+        mRecalibrationSuggested = false;
+        apply();
+        MetricsRegistry.getInstance().counter("echo.calibrated").increment();
+    }
+
+    private void apply() {
+        int delay = read(keyOf(mLc.isSpeakerEnabled()));
+        if (delay == NOT_CALIBRATED) {
+            mLc.enableEchoCancellation(true);
+        } else if (delay == NO_ECHO) {
+            mLc.enableEchoCancellation(false);
+        } else {
+            // ec_delay 在建立音频流时读取，对之后的通话生效
+            ConfigStore.getInstance().edit().set(ConfigKeys.SOUND_EC_DELAY, delay).commit();
+            mLc.enableEchoCancellation(true);
+        }
+    }
+
+    /**
+     * 通话质量持续偏低而丢包、抖动正常时，认为回声消除参数不合适
+     */
+    private void checkEcho(LinphoneCall linphoneCall) {
+        if (mLc.hasBuiltInEchoCanceler() || linphoneCall.getDuration() < MIN_CALL_SECONDS) {
+            return;
+        }
+        CallStatsSummary summary = CallStatsCollector.getInstance()
+                .getSummary(LinphoneUtils.getCallId(linphoneCall), false);
+        if (summary == null) {
+            return;
+        }
+        boolean networkNormal = summary.getMean(CallStatsSummary.Metric.RECEIVER_LOSS_RATE) < MAX_NORMAL_LOSS_RATE
+                && summary.getMean(CallStatsSummary.Metric.JITTER) < MAX_NORMAL_JITTER;
+        if (networkNormal && linphoneCall.getAverageQuality() < POOR_QUALITY) {
+            mSuspectCalls++;
+            Log.w(TAG, "Possible echo, " + mSuspectCalls + " suspect calls");
+            if (mSuspectCalls >= SUSPECT_CALLS_BEFORE_RECALIBRATION && !mRecalibrationSuggested) {
+                Log.w(TAG, "Recalibration suggested");
+                mRecalibrationSuggested = true;
+            }
+        } else if (networkNormal) {
+            mSuspectCalls = 0;
+        }
+    }
+
+    private static ConfigKey<Integer> keyOf(boolean speaker) {
+        return speaker ? ConfigKeys.EC_CALIBRATION_SPEAKER : ConfigKeys.EC_CALIBRATION_EARPIECE;
+    }
+
+    private static String routeOf(boolean speaker) {
+        return speaker ? "speaker" : "earpiece";
+    }
+
+    private static int read(ConfigKey<Integer> key) {
+        ConfigSnapshot snapshot = ConfigStore.getInstance().getSnapshot();
+        return snapshot == null ? NOT_CALIBRATED : snapshot.get(key);
+    }
+}
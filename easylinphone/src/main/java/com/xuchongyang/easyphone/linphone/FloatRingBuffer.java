@@ -0,0 +1,117 @@
+package com.xuchongyang.easyphone.linphone;
+
+import java.util.Arrays;
+
+/**
+ * 固定容量的 float 环形缓冲区，写满后覆盖最旧的数据，不装箱
+ * 非线程安全，由调用方负责同步
+ */
+
+public class FloatRingBuffer {
+    private final float[] mValues;
+    private int mNext;
+    private int mSize;
+    private double mSum;
+
+    public FloatRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        mValues = new float[capacity];
+    }
+
+    /**
+     * 写入一个值
+     * @param value 值
+     */
+    public void add(float value) {
+        if (mSize == mValues.length) {
+            mSum -= mValues[mNext];
+        } else {
+            mSize++;
+        }
+        mValues[mNext] = value;
+        mSum += value;
+        mNext = (mNext + 1) % mValues.length;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public int capacity() {
+        return mValues.length;
+    }
+
+    /**
+     * 最近写入的值
+     * @return 最近的值，为空时返回 0
+     */
+    public float last() {
+        if (mSize == 0) {
+            return 0;
+        }
+        return mValues[(mNext - 1 + mValues.length) % mValues.length];
+    }
+
+    /**
+     * 按时间顺序获取值，0 为最旧的值
+     * @param index 序号
+     * @return 值
+     */
+    public float get(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + mSize);
+        }
+        int oldest = mSize == mValues.length ? mNext : 0;
+        return mValues[(oldest + index) % mValues.length];
+    }
+
+    public float mean() {
+        return mSize == 0 ? 0 : (float) (mSum / mSize);
+    }
+
+    public float min() {
+        if (mSize == 0) {
+            return 0;
+        }
+        float min = Float.MAX_VALUE;
+        for (int i = 0; i < mSize; i++) {
+            min = Math.min(min, mValues[i]);
+        }
+        return min;
+    }
+
+    public float max() {
+        if (mSize == 0) {
+            return 0;
+        }
+        float max = -Float.MAX_VALUE;
+        for (int i = 0; i < mSize; i++) {
+            max = Math.max(max, mValues[i]);
+        }
+        return max;
+    }
+
+    /**
+     * 计算百分位数，会复制一份数据排序
+     * @param percentile 百分位，0 ~ 100
+     * @return 百分位数
+     */
+    public float percentile(float percentile) {
+        if (mSize == 0) {
+            return 0;
+        }
+        float[] sorted = new float[mSize];
+        System.arraycopy(mValues, 0, sorted, 0, mSize);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100f * mSize) - 1;
+        return sorted[Math.max(0, Math.min(mSize - 1, index))];
+    }
+
+    public void clear() {
+        mNext = 0;
+        mSize = 0;
+        mSum = 0;
+    }
+}
@@ -0,0 +1,34 @@
+package com.xuchongyang.easyphone.linphone;
+
+import android.os.Looper;
+
+import org.linphone.core.LinphoneCore;
+
+/**
+ * LinphoneCore.iterate() 调度器
+ */
+
+public interface IterateScheduler {
+    /**
+     * 开始调度
+     * @param linphoneCore 需要驱动的 LinphoneCore
+     * @param looper iterate() 执行所在的 Looper
+     */
+    void start(LinphoneCore linphoneCore, Looper looper);
+
+    /**
+     * 停止调度
+     */
+    void stop();
+
+    /**
+     * 立即唤醒调度器，用于 API 调用、网络变化等需要马上处理的场景
+     */
+    void wakeUp();
+
+    /**
+     * 获取 iterate 统计信息
+     * @return IterateStats
+     */
+    IterateStats getStats();
+}
@@ -0,0 +1,94 @@
+package com.xuchongyang.easyphone.linphone;
+
+/**
+ * iterate() 执行统计，只由调度线程写入
+ */
+
+public class IterateStats {
+    private static final long WINDOW_NANOS = 1000000000L;
+
+    private volatile long mTotalIterations;
+    private volatile long mTotalNanos;
+    private volatile long mMaxNanos;
+    private volatile long mLastNanos;
+    private volatile float mIterationsPerSecond;
+
+    private long mWindowStart;
+    private long mWindowIterations;
+
+    /**
+     * 记录一次 iterate
+     * @param startNanos 开始时间
+     * @param endNanos 结束时间
+     */
+    void record(long startNanos, long endNanos) {
+        long cost = endNanos - startNanos;
+        mLastNanos = cost;
+        mTotalNanos += cost;
+        mTotalIterations++;
+        if (cost > mMaxNanos) {
+            mMaxNanos = cost;
+        }
+
+        if (mWindowStart == 0) {
+            mWindowStart = startNanos;
+        }
+        mWindowIterations++;
+        long elapsed = endNanos - mWindowStart;
+        if (elapsed >= WINDOW_NANOS) {
+            mIterationsPerSecond = mWindowIterations * (float) WINDOW_NANOS / elapsed;
+            mWindowStart = endNanos;
+            mWindowIterations = 0;
+        }
+    }
+
+    /**
+     * 重置统计
+     */
+    void reset() {
+        mTotalIterations = 0;
+        mTotalNanos = 0;
+        mMaxNanos = 0;
+        mLastNanos = 0;
+        mIterationsPerSecond = 0;
+        mWindowStart = 0;
+        mWindowIterations = 0;
+    }
+
+    public long getTotalIterations() {
+        return mTotalIterations;
+    }
+
+    public long getTotalNanos() {
+        return mTotalNanos;
+    }
+
+    public long getMaxNanos() {
+        return mMaxNanos;
+    }
+
+    public long getLastNanos() {
+        return mLastNanos;
+    }
+
+    public long getAverageNanos() {
+        long iterations = mTotalIterations;
+        return iterations == 0 ? 0 : mTotalNanos / iterations;
+    }
+
+    /**
+     * 最近一个统计窗口内每秒 iterate 次数
+     * @return 每秒次数
+     */
+    public float getIterationsPerSecond() {
+        return mIterationsPerSecond;
+    }
+
+    @Override
+    public String toString() {
+        return "IterateStats{iterations=" + mTotalIterations
+                + ", perSecond=" + mIterationsPerSecond
+                + ", avgUs=" + getAverageNanos() / 1000
+                + ", maxUs=" + mMaxNanos / 1000 + "}";
+    }
+}
@@ -0,0 +1,223 @@
+package com.xuchongyang.easyphone.linphone;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.telephony.TelephonyManager;
+
+import org.linphone.core.LinphoneCall;
+import org.linphone.core.LinphoneCore;
+import org.linphone.core.LpConfig;
+import org.linphone.mediastream.Log;
+
+/**
+ * 抖动缓冲调节：按网络（Wi-Fi 的 SSID、移动网络的制式）学习通话中观测到的抖动，
+ * 保存在 LpConfig 中，通话开始前按当前网络设置音频、视频抖动缓冲大小
+ * 局域网抖动小，缓冲可以远小于 linphonerc_factory 中的 60 ms，拥塞的移动网络则需要更大
+ * 所有方法在 Linphone 核心线程中调用
+ */
+
+public class JitterBufferTuner {
+    private static final String TAG = "JitterBufferTuner";
+    private static final String SECTION = "jitter_learning";
+    /**
+     * 学习值的版本，写在键名中；版本 1 误用了对端报告的抖动且单位为秒，其学习值不再读取
+     */
+    private static final int LEARNED_VERSION = 2;
+    /**
+     * 每次通话结果在学习值中的权重
+     */
+    private static final float LEARNING_RATE = 0.3f;
+    /**
+     * 缓冲大小 = 基础值 + 抖动 × 倍数
+     */
+    private static final int BASE_COMP_MS = 20;
+    private static final float JITTER_MULTIPLIER = 3f;
+    private static final int MIN_COMP_MS = 20;
+    private static final int MAX_COMP_MS = 250;
+    /**
+     * 通话样本数少于该值时不计入学习，callStatsUpdated 约每秒一次
+     */
+    private static final int MIN_SAMPLES = 5;
+
+    private final Context mContext;
+    private LinphoneCore mLc;
+    private int mDefaultAudioComp;
+    private int mDefaultVideoComp;
+
+    JitterBufferTuner(Context context) {
+        mContext = context;
+    }
+
+    void start(LinphoneCore linphoneCore) {
+        mLc = linphoneCore;
+        LpConfig config = mLc.getConfig();
+        // liblinphone 退出时会把当前的缓冲大小写回 [rtp]，首次启动时记下原始值作为未学习网络的默认值
+        mDefaultAudioComp = config.getInt(SECTION, "default_audio", -1);
+        mDefaultVideoComp = config.getInt(SECTION, "default_video", -1);
+        if (mDefaultAudioComp < 0 || mDefaultVideoComp < 0) {
+            ConfigSnapshot snapshot = ConfigStore.getInstance().getSnapshot();
+            mDefaultAudioComp = snapshot.get(ConfigKeys.RTP_AUDIO_JITT_COMP);
+            mDefaultVideoComp = snapshot.get(ConfigKeys.RTP_VIDEO_JITT_COMP);
+            config.setInt(SECTION, "default_audio", mDefaultAudioComp);
+            config.setInt(SECTION, "default_video", mDefaultVideoComp);
+            config.sync();
+        }
+        apply();
+    }
+
+    void stop() {
+        mLc = null;
+    }
+
+    /**
+     * 更换未学习网络的默认缓冲大小，没有通话时立即应用
+     * @param audioComp 音频缓冲，ms
+     * @param videoComp 视频缓冲，ms
+     */
+    void setDefaults(int audioComp, int videoComp) {
+        mDefaultAudioComp = audioComp;
+        mDefaultVideoComp = videoComp;
+        if (mLc == null) {
+            return;
+        }
+        LpConfig config = mLc.getConfig();
+        config.setInt(SECTION, "default_audio", audioComp);
+        config.setInt(SECTION, "default_video", videoComp);
+        config.sync();
+        if (mLc.getCallsNb() == 0) {
+            apply();
+        }
+    }
+
+    /**
+     * 通话状态变化：新通话开始前应用当前网络的缓冲大小，通话结束时学习本次的抖动
+     * @param linphoneCall 通话
+     * @param state 通话状态
+     */
+    void onCallState(LinphoneCall linphoneCall, LinphoneCall.State state) {
+        if (mLc == null) {
+            return;
+        }
+        if (state == LinphoneCall.State.OutgoingInit || state == LinphoneCall.State.IncomingReceived) {
+            // 音频流在通话建立时创建，此时设置对本次通话生效
+            apply();
+        } else if (state == LinphoneCall.State.CallEnd) {
+            learn(linphoneCall);
+        }
+    }
+
+    /**
+     * 网络变化，为之后的通话切换到新网络的缓冲大小
+     */
+    void onNetworkChanged() {
+        if (mLc != null && mLc.getCallsNb() == 0) {
+            apply();
+        }
+    }
+
+    /**
+     * 获取当前网络学习到的音频抖动
+     * @return 抖动，ms，尚未学习时返回 -1
+     */
+    public float getLearnedAudioJitter() {
+        return mLc == null ? -1 : mLc.getConfig().getFloat(SECTION, learnedKey(networkKey(), "audio"), -1);
+    }
+
+    private void apply() {
+        String network = networkKey();
+        LpConfig config = mLc.getConfig();
+        int audioComp = compFor(config.getFloat(SECTION, learnedKey(network, "audio"), -1), mDefaultAudioComp);
+        int videoComp = compFor(config.getFloat(SECTION, learnedKey(network, "video"), -1), mDefaultVideoComp);
+        // 视频与音频同步播放，视频缓冲不小于音频
+        videoComp = Math.max(videoComp, audioComp);
+        if (audioComp != mLc.getAudioJittComp()) {
+            Log.d(TAG, "Network " + network + ", audio jitter buffer " + audioComp + " ms, video " + videoComp + " ms");
+        }
+        mLc.setAudioJittComp(audioComp);
+        mLc.setVideoJittComp(videoComp);
+    }
+
+    static int compFor(float learnedJitter, int defaultComp) {
+        if (learnedJitter < 0) {
+            return defaultComp;
+        }
+        int comp = Math.round(BASE_COMP_MS + learnedJitter * JITTER_MULTIPLIER);
+        return Math.max(MIN_COMP_MS, Math.min(MAX_COMP_MS, comp));
+    }
+
+    private void learn(LinphoneCall linphoneCall) {
+        String callId = LinphoneUtils.getCallId(linphoneCall);
+        String network = networkKey();
+        LpConfig config = mLc.getConfig();
+        boolean learned = learn(config, learnedKey(network, "audio"),
+                CallStatsCollector.getInstance().getSummary(callId, false));
+        learned |= learn(config, learnedKey(network, "video"),
+                CallStatsCollector.getInstance().getSummary(callId, true));
+        if (learned) {
+            config.sync();
+        }
+    }
+
+    private static String learnedKey(String network, String media) {
+        return network + "_" + media + "_v" + LEARNED_VERSION;
+    }
+
+    /**
+     * 本次通话的抖动取最近窗口的平均值与峰值的中点，兼顾典型值和突发
+     * 使用本端测得的接收抖动，它决定了本端抖动缓冲需要的大小
+     */
+    static boolean learn(LpConfig config, String key, CallStatsSummary summary) {
+        if (summary == null || summary.getSampleCount() < MIN_SAMPLES) {
+            return false;
+        }
+        float callJitter = (summary.getMean(CallStatsSummary.Metric.LOCAL_JITTER)
+                + summary.getMax(CallStatsSummary.Metric.LOCAL_JITTER)) / 2;
+        float previous = config.getFloat(SECTION, key, -1);
+        float learned = previous < 0 ? callJitter : previous + LEARNING_RATE * (callJitter - previous);
+        config.setFloat(SECTION, key, learned);
+        Log.d(TAG, "Learned jitter " + key + " = " + learned + " ms (call " + callJitter + " ms)");
+        return true;
+    }
+
+    /**
+     * 当前网络的标识：Wi-Fi 为 SSID，移动网络为 2g、3g、4g，只保留字母、数字和下划线
+     */
+    private String networkKey() {
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo networkInfo = connectivityManager == null ? null : connectivityManager.getActiveNetworkInfo();
+        String key;
+        if (networkInfo == null) {
+            key = "unknown";
+        } else if (networkInfo.getType() == ConnectivityManager.TYPE_WIFI) {
+            // 旧版本系统中 Wi-Fi 的附加信息为带引号的 SSID
+            String ssid = networkInfo.getExtraInfo();
+            key = "wifi_" + (ssid == null ? "unknown" : ssid.replace("\"", ""));
+        } else if (networkInfo.getType() == ConnectivityManager.TYPE_ETHERNET) {
+            key = "ethernet";
+        } else if (networkInfo.getType() == ConnectivityManager.TYPE_MOBILE) {
+            key = "mobile_" + mobileClassOf(networkInfo.getSubtype());
+        } else {
+            key = "other";
+        }
+        return key.replaceAll("[^A-Za-z0-9_]", "_");
+    }
+
+    private static String mobileClassOf(int subtype) {
+        switch (subtype) {
+            case TelephonyManager.NETWORK_TYPE_UMTS:
+            case TelephonyManager.NETWORK_TYPE_EVDO_0:
+            case TelephonyManager.NETWORK_TYPE_EVDO_A:
+            case TelephonyManager.NETWORK_TYPE_EVDO_B:
+            case TelephonyManager.NETWORK_TYPE_HSDPA:
+            case TelephonyManager.NETWORK_TYPE_HSUPA:
+            case TelephonyManager.NETWORK_TYPE_HSPA:
+            case TelephonyManager.NETWORK_TYPE_HSPAP:
+            case TelephonyManager.NETWORK_TYPE_EHRPD:
+                return "3g";
+            default:
+                return subtype >= TelephonyManager.NETWORK_TYPE_LTE ? "4g" : "2g";
+        }
+    }
+}
@@ -3,25 +3,16 @@ package com.xuchongyang.easyphone.linphone;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.util.Log;
-
 
 /**
  * Created by Mark Xu on 17/3/13.
- * KeepAliveHandler
+ * 注册刷新闹钟的接收者，由 RegistrationRefreshScheduler 设置
  */
 
 public class KeepAliveHandler extends BroadcastReceiver {
-    private static final String TAG = "KeepAliveHandler";
     @Override
     public void onReceive(Context context, Intent intent) {
-        if (LinphoneManager.getLcIfManagerNotDestroyOrNull() != null) {
-            LinphoneManager.getLc().refreshRegisters();
-            try {
-                Thread.sleep(2000);
-            } catch (InterruptedException e) {
-                Log.e(TAG, "Cannot sleep for 2s");
-            }
-        }
+        // 刷新在核心线程中执行，不阻塞主线程；返回前已持有唤醒锁
+        LinphoneManager.onKeepAliveAlarm();
     }
 }
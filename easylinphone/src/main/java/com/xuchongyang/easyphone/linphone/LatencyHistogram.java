@@ -0,0 +1,169 @@
+package com.xuchongyang.easyphone.linphone;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 固定分桶的延迟直方图，桶边界按约 20% 递增，覆盖 1 ms 到约 2 分钟
+ * 记录和查询不加锁，可在任意线程调用
+ */
+
+public class LatencyHistogram {
+    private static final long[] BOUNDS = createBounds(1, 120000, 1.2);
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BOUNDS.length + 1);
+    private final AtomicLong mSum = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+
+    /**
+     * 生成递增的桶上界
+     */
+    private static long[] createBounds(long first, long last, double factor) {
+        long[] bounds = new long[128];
+        int count = 0;
+        double bound = first;
+        while (count < bounds.length) {
+            long value = Math.max((long) Math.ceil(bound), count == 0 ? first : bounds[count - 1] + 1);
+            bounds[count++] = value;
+            if (value >= last) {
+                break;
+            }
+            bound = value * factor;
+        }
+        long[] result = new long[count];
+        System.arraycopy(bounds, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * 记录一次延迟
+     * @param millis 延迟，ms
+     */
+    public void record(long millis) {
+        if (millis < 0) {
+            return;
+        }
+        mCounts.incrementAndGet(bucketOf(millis));
+        mSum.addAndGet(millis);
+        long max = mMax.get();
+        while (millis > max && !mMax.compareAndSet(max, millis)) {
+            max = mMax.get();
+        }
+    }
+
+    private static int bucketOf(long millis) {
+        int low = 0;
+        int high = BOUNDS.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (BOUNDS[mid] < millis) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 获取当前数据的快照
+     * @return Snapshot
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[mCounts.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = mCounts.get(i);
+        }
+        return new Snapshot(counts, mSum.get(), mMax.get());
+    }
+
+    /**
+     * 获取快照并清空，用于按时间窗口统计
+     * 清空期间并发记录的数据会计入本窗口或下一个窗口，不会丢失
+     * @return 本窗口的 Snapshot
+     */
+    public Snapshot snapshotAndReset() {
+        long[] counts = new long[mCounts.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = mCounts.getAndSet(i, 0);
+        }
+        return new Snapshot(counts, mSum.getAndSet(0), mMax.getAndSet(0));
+    }
+
+    /**
+     * 直方图快照，不可变
+     */
+    public static class Snapshot {
+        private final long[] mCounts;
+        private final long mCount;
+        private final long mSum;
+        private final long mMax;
+
+        Snapshot(long[] counts, long sum, long max) {
+            long count = 0;
+            for (long c : counts) {
+                count += c;
+            }
+            mCounts = counts;
+            mCount = count;
+            mSum = sum;
+            mMax = max;
+        }
+
+        public long getCount() {
+            return mCount;
+        }
+
+        public long getMax() {
+            return mMax;
+        }
+
+        /**
+         * 平均值
+         * @return 平均延迟，ms，无数据时返回 0
+         */
+        public long getMean() {
+            return mCount == 0 ? 0 : mSum / mCount;
+        }
+
+        /**
+         * 百分位数，在所在桶内线性插值，误差不超过桶宽
+         * @param percentile 百分位，0 - 100
+         * @return 延迟，ms，无数据时返回 0
+         */
+        public long getPercentile(double percentile) {
+            if (mCount == 0) {
+                return 0;
+            }
+            double rank = Math.max(1, Math.ceil(mCount * Math.min(100, Math.max(0, percentile)) / 100));
+            long seen = 0;
+            for (int i = 0; i < mCounts.length; i++) {
+                long count = mCounts[i];
+                if (count == 0 || seen + count < rank) {
+                    seen += count;
+                    continue;
+                }
+                if (i == BOUNDS.length) {
+                    return mMax;
+                }
+                long lower = i == 0 ? 0 : BOUNDS[i - 1];
+                long upper = BOUNDS[i];
+                long value = lower + Math.round((upper - lower) * (rank - seen) / count);
+                return Math.min(value, mMax);
+            }
+            return mMax;
+        }
+
+        /**
+         * 各桶的上界，最后一个桶没有上界
+         * @return 上界数组，ms，长度比 getBucketCounts() 少 1
+         */
+        public long[] getBucketBounds() {
+            return BOUNDS.clone();
+        }
+
+        public long[] getBucketCounts() {
+            return mCounts.clone();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.xuchongyang.easyphone.linphone;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+
+import org.linphone.core.LinphoneCore;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Linphone 核心线程，所有对 LinphoneCore 的访问都在此线程中执行
+ */
+
+public class LinphoneCoreThread {
+    private final HandlerThread mThread;
+    private final Handler mHandler;
+    private final ConcurrentLinkedQueue<CoreFuture<?>> mQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean mDrainScheduled = new AtomicBoolean(false);
+    private volatile LinphoneCore mLinphoneCore;
+    private volatile Runnable mDrainListener;
+
+    private final Runnable mDrainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    LinphoneCoreThread() {
+        mThread = new HandlerThread("Linphone Core");
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+    }
+
+    /**
+     * 获取核心线程 Looper
+     * @return Looper
+     */
+    public Looper getLooper() {
+        return mThread.getLooper();
+    }
+
+    /**
+     * 当前是否处于核心线程
+     * @return 是否处于核心线程
+     */
+    public boolean isCurrentThread() {
+        return Looper.myLooper() == mThread.getLooper();
+    }
+
+    /**
+     * 设置命令执行所用的 LinphoneCore，设置前提交的命令在此之后依次执行
+     * @param linphoneCore LinphoneCore
+     */
+    void setLinphoneCore(LinphoneCore linphoneCore) {
+        mLinphoneCore = linphoneCore;
+        if (linphoneCore != null) {
+            scheduleDrain();
+        }
+    }
+
+    /**
+     * 设置每批命令执行完毕后的回调，用于唤醒 iterate 调度器
+     * @param listener 回调
+     */
+    void setDrainListener(Runnable listener) {
+        mDrainListener = listener;
+    }
+
+    /**
+     * 提交命令，在核心线程中调用且 LinphoneCore 已设置时直接执行，
+     * LinphoneCore 设置之前（如 startLibLinphone 及其中的回调）提交的命令排队等待
+     * @param command 命令
+     * @param <T> 结果类型
+     * @return CoreFuture
+     */
+    public <T> CoreFuture<T> submit(CoreCommand<T> command) {
+        CoreFuture<T> future = new CoreFuture<>(command);
+        LinphoneCore linphoneCore = mLinphoneCore;
+        if (linphoneCore != null && isCurrentThread()) {
+            future.run(linphoneCore);
+            return future;
+        }
+        mQueue.offer(future);
+        scheduleDrain();
+        return future;
+    }
+
+    /**
+     * 在核心线程中执行一个不依赖 LinphoneCore 的任务
+     * @param runnable 任务
+     */
+    public void post(Runnable runnable) {
+        mHandler.post(runnable);
+    }
+
+    /**
+     * 在核心线程中延迟执行任务
+     * @param runnable 任务
+     * @param delayMillis 延迟时长
+     */
+    public void postDelayed(Runnable runnable, long delayMillis) {
+        mHandler.postDelayed(runnable, delayMillis);
+    }
+
+    /**
+     * 移除尚未执行的任务
+     * @param runnable 任务
+     */
+    public void removeCallbacks(Runnable runnable) {
+        mHandler.removeCallbacks(runnable);
+    }
+
+    /**
+     * 退出核心线程，未执行的命令会被取消
+     */
+    void quit() {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+                CoreFuture<?> future;
+                while ((future = mQueue.poll()) != null) {
+                    future.cancel(false);
+                }
+                mThread.quit();
+            }
+        });
+    }
+
+    private void scheduleDrain() {
+        if (mDrainScheduled.compareAndSet(false, true)) {
+            mHandler.post(mDrainTask);
+        }
+    }
+
+    private void drain() {
+        // 先清除标记再取命令，保证并发提交的命令不会被遗漏
+        mDrainScheduled.set(false);
+        LinphoneCore linphoneCore = mLinphoneCore;
+        if (linphoneCore == null) {
+            // 等待 setLinphoneCore 再次触发
+            return;
+        }
+        boolean executed = false;
+        CoreFuture<?> future;
+        StallWatchdog watchdog = StallWatchdog.getInstance();
+        while ((future = mQueue.poll()) != null) {
+            long start = System.nanoTime();
+            future.run(linphoneCore);
+            long stallNanos = watchdog.stallNanos(start);
+            if (stallNanos >= 0) {
+                watchdog.record("command:" + future.getSourceName(), stallNanos);
+            }
+            executed = true;
+        }
+        Runnable listener = mDrainListener;
+        if (executed && listener != null) {
+            listener.run();
+        }
+    }
+}
@@ -2,8 +2,6 @@ package com.xuchongyang.easyphone.linphone;
 
 import android.content.Context;
 import android.content.pm.PackageManager;
-import android.os.Handler;
-import android.os.Looper;
 
 import com.xuchongyang.easyphone.R;
 
@@ -23,7 +21,7 @@ import org.linphone.core.LinphoneFriend;
 import org.linphone.core.LinphoneFriendList;
 import org.linphone.core.LinphoneInfoMessage;
 import org.linphone.core.LinphoneProxyConfig;
-import org.linphone.core.PayloadType;
+import org.linphone.core.LpConfig;
 import org.linphone.core.PublishState;
 import org.linphone.core.SubscriptionState;
 import org.linphone.core.ToneID;
@@ -32,8 +30,13 @@ import org.linphone.mediastream.Log;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Created by Mark Xu on 17/3/11.
@@ -42,11 +45,33 @@ import java.util.TimerTask;
 
 public class LinphoneManager implements LinphoneCoreListener {
     private static final String TAG = "LinphoneManager";
-    private static LinphoneManager sInstance;
+    private static volatile LinphoneManager sInstance;
     private Context mServiceContext;
     private LinphoneCore mLc;
-    private Timer mTimer;
-    private static boolean sExited;
+    private LinphoneCoreThread mCoreThread;
+    private IterateScheduler mIterateScheduler;
+    private VideoQualityController mVideoQualityController;
+    private CodecCostTracker mCodecCostTracker;
+    private CodecSelector mCodecSelector;
+    private volatile List<AssetProvisioner.Result> mAssetResults;
+    RegistrationRefreshScheduler mRegistrationRefreshScheduler;
+    private RegistrationMonitor mRegistrationMonitor;
+    private EchoCalibrator mEchoCalibrator;
+    private JitterBufferTuner mJitterBufferTuner;
+    private ConfigApplier mConfigApplier;
+    private ChatHistory mChatHistory;
+    private ConnectivityReceiver mConnectivityReceiver;
+    private AccountPool mAccountPool;
+    private final CallRegistry mCallRegistry = new CallRegistry();
+    private ConferenceManager mConferenceManager;
+    private DialQueue mDialQueue;
+    private final CallSetupCache mCallSetupCache = new CallSetupCache();
+    private static IterateScheduler sPendingIterateScheduler;
+    private static volatile boolean sExited;
+    /**
+     * destroy 在主线程中等待核心线程销毁 LinphoneCore 的最长时间，超时后销毁在核心线程中继续进行
+     */
+    private static final long DESTROY_TIMEOUT_MS = 2000;
 
     private String mLPConfigXsd = null;
     private String mLinphoneFactoryConfigFile = null;
@@ -59,15 +84,41 @@ public class LinphoneManager implements LinphoneCoreListener {
 //    private String mErrorToneFile = null;
 
     /**
-     * LinphoneManager 初始化
+     * LinphoneManager 初始化，LinphoneCore 在核心线程中异步创建
      * @param context Context
+     * @return 初始化结果，LinphoneCore 创建并配置完成后成功
      */
-    public synchronized static void init(Context context) {
+    public static CoreFuture<Void> init(final Context context) {
+        final LinphoneManager manager;
+        int span = StartupTracer.getInstance().begin("LinphoneManager.init");
+        synchronized (LinphoneManager.class) {
+            if (sInstance != null) {
+                throw new RuntimeException("Linphone Manager is already initialized");
+            }
+            manager = new LinphoneManager(context);
+            sInstance = manager;
+        }
+        StartupTracer.getInstance().end(span);
+        CoreFuture<Void> startFuture = new CoreFuture<>(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                manager.startLibLinphone(context);
+                return null;
+            }
+        });
+        manager.mCoreThread.post(startFuture);
+        return startFuture;
+    }
+
+    /**
+     * 设置 iterate 调度器，需在 LinphoneService 启动前调用
+     * @param scheduler IterateScheduler，为 null 时使用默认的 AdaptiveIterateScheduler
+     */
+    public synchronized static void setIterateScheduler(IterateScheduler scheduler) {
         if (sInstance != null) {
-            throw new RuntimeException("Linphone Manager is already initialized");
+            throw new RuntimeException("IterateScheduler must be set before Linphone Manager is initialized");
         }
-        sInstance = new LinphoneManager(context);
-        sInstance.startLibLinphone(context);
+        sPendingIterateScheduler = scheduler;
     }
 
     /**
@@ -89,44 +140,164 @@ public class LinphoneManager implements LinphoneCoreListener {
         mPauseSoundFile = basePath + "/toy_mono.wav";
         mChatDatabaseFile = basePath + "/linphone-history.db";
 //        mErrorToneFile = basePath + "/error.wav";
+        mIterateScheduler = sPendingIterateScheduler != null ? sPendingIterateScheduler : new AdaptiveIterateScheduler();
+        mVideoQualityController = new VideoQualityController(new DefaultVideoQualityPolicy());
+        mCodecCostTracker = new CodecCostTracker();
+        mConferenceManager = new ConferenceManager(mCodecCostTracker);
+        mRegistrationRefreshScheduler = new RegistrationRefreshScheduler(serviceContext);
+        mAccountPool = new AccountPool();
+        mCodecSelector = new CodecSelector(serviceContext, new DefaultCodecPolicy(), mCodecCostTracker);
+        mCoreThread = new LinphoneCoreThread();
+        mCoreThread.setDrainListener(new Runnable() {
+            @Override
+            public void run() {
+                mIterateScheduler.wakeUp();
+            }
+        });
+        mDialQueue = new DialQueue(mCoreThread);
+        mRegistrationMonitor = new RegistrationMonitor(mCoreThread);
+        mEchoCalibrator = new EchoCalibrator(this);
+        mJitterBufferTuner = new JitterBufferTuner(serviceContext);
+        mConfigApplier = new ConfigApplier(mVideoQualityController, mCodecSelector, mJitterBufferTuner);
+        mChatHistory = new ChatHistory(mCoreThread, mChatDatabaseFile);
+        mConnectivityReceiver = new ConnectivityReceiver(serviceContext, mCoreThread);
+        registerGauges();
+    }
+
+    private static void count(String name) {
+        MetricsRegistry.getInstance().counter(name).increment();
+    }
+
+    /**
+     * 登记各组件的仪表，通过静态方法读取，服务重启后仍指向新的实例
+     */
+    private static void registerGauges() {
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        registry.gauge("calls.active", new MetricsRegistry.Gauge() {
+            @Override
+            public double getValue() {
+                CallRegistry callRegistry = getCallRegistry();
+                return callRegistry == null ? 0 : callRegistry.getSessions().size();
+            }
+        });
+        registry.gauge("accounts.registered", new MetricsRegistry.Gauge() {
+            @Override
+            public double getValue() {
+                AccountPool accountPool = getAccountPool();
+                if (accountPool == null) {
+                    return 0;
+                }
+                int registered = 0;
+                for (LinphoneCore.RegistrationState state : accountPool.getStates().values()) {
+                    if (state == LinphoneCore.RegistrationState.RegistrationOk) {
+                        registered++;
+                    }
+                }
+                return registered;
+            }
+        });
+        registry.gauge("chat.unread", new MetricsRegistry.Gauge() {
+            @Override
+            public double getValue() {
+                ChatHistory chatHistory = getChatHistory();
+                return chatHistory == null ? 0 : chatHistory.getTotalUnreadCount();
+            }
+        });
+        registry.gauge("iterate.per_second", new MetricsRegistry.Gauge() {
+            @Override
+            public double getValue() {
+                IterateStats stats = getIterateStats();
+                return stats == null ? 0 : stats.getIterationsPerSecond();
+            }
+        });
+        registry.gauge("iterate.avg_us", new MetricsRegistry.Gauge() {
+            @Override
+            public double getValue() {
+                IterateStats stats = getIterateStats();
+                return stats == null ? 0 : stats.getAverageNanos() / 1000.0;
+            }
+        });
+        registry.gauge("iterate.max_us", new MetricsRegistry.Gauge() {
+            @Override
+            public double getValue() {
+                IterateStats stats = getIterateStats();
+                return stats == null ? 0 : stats.getMaxNanos() / 1000.0;
+            }
+        });
+        registry.gauge("call.setup.request_avg_ms", new MetricsRegistry.Gauge() {
+            @Override
+            public double getValue() {
+                CallSetupCache callSetupCache = getCallSetupCache();
+                return callSetupCache == null ? 0 : Math.max(0, callSetupCache.getAverageSetupMillis());
+            }
+        });
+        registry.gauge("dial.completed", new MetricsRegistry.Gauge() {
+            @Override
+            public double getValue() {
+                DialQueue dialQueue = getDialQueue();
+                return dialQueue == null ? 0 : dialQueue.getCompletedCount();
+            }
+        });
+        registry.gauge("dial.failed", new MetricsRegistry.Gauge() {
+            @Override
+            public double getValue() {
+                DialQueue dialQueue = getDialQueue();
+                return dialQueue == null ? 0 : dialQueue.getFailedCount();
+            }
+        });
+        registry.gauge("dial.throughput_per_min", new MetricsRegistry.Gauge() {
+            @Override
+            public double getValue() {
+                DialQueue dialQueue = getDialQueue();
+                return dialQueue == null ? 0 : dialQueue.getThroughputPerMinute();
+            }
+        });
     }
 
     /**
      * 初始化 LinphoneCore
      * @param context Context
+     * @throws IOException 资源文件导入失败
+     * @throws LinphoneCoreException LinphoneCore 创建失败
      */
-    private synchronized void startLibLinphone(Context context) {
+    private synchronized void startLibLinphone(Context context) throws IOException, LinphoneCoreException {
+        StartupTracer tracer = StartupTracer.getInstance();
+        int startSpan = tracer.begin("startLibLinphone");
         try {
+            int span = tracer.begin("copyAssetsFromPackage");
             copyAssetsFromPackage();
+            tracer.end(span);
+            span = tracer.begin("createLinphoneCore");
             mLc = LinphoneCoreFactory.instance().createLinphoneCore(this, mLinphoneConfigFile,
                     mLinphoneFactoryConfigFile, null, context);
-            mLc.addListener((LinphoneCoreListener)context);
-
-            try {
-                initLibLinphone();
-            } catch (LinphoneCoreException e) {
-                e.printStackTrace();
-            }
+            tracer.end(span);
+        } catch (IOException | LinphoneCoreException e) {
+            Log.e(TAG, "startLibLinphone: cannot start linphone");
+            throw e;
+        }
+        mLc.addListener((LinphoneCoreListener)context);
+        ConfigStore.getInstance().attach(mLc.getConfig());
+        mConfigApplier.start(mLc);
 
-            TimerTask task = new TimerTask() {
-                @Override
-                public void run() {
-                    new Handler(Looper.getMainLooper()).post(new Runnable() {
-                        @Override
-                        public void run() {
-                            if (mLc != null) {
-                                mLc.iterate();
-                            }
-                        }
-                    });
-                }
-            };
-            mTimer = new Timer("Linphone Scheduler");
-            mTimer.schedule(task, 0, 20);
-        } catch (Exception e) {
+        int initSpan = tracer.begin("initLibLinphone");
+        try {
+            initLibLinphone();
+        } catch (LinphoneCoreException e) {
             e.printStackTrace();
-            Log.e(TAG, "startLibLinphone: cannot start linphone");
         }
+        tracer.end(initSpan);
+
+        mCoreThread.setLinphoneCore(mLc);
+        mIterateScheduler.start(mLc, mCoreThread.getLooper());
+        mRegistrationRefreshScheduler.start(mLc);
+        mRegistrationMonitor.start(mLc);
+        mAccountPool.start(mLc);
+        mDialQueue.start(mLc);
+        mCallSetupCache.start(mLc);
+        mJitterBufferTuner.start(mLc);
+        mChatHistory.start(mLc);
+        mConnectivityReceiver.start(mLc);
+        tracer.end(startSpan);
     }
 
     /**
@@ -141,6 +312,7 @@ public class LinphoneManager implements LinphoneCoreListener {
         mLc.setRing(mRingSoundFile);
         mLc.setRootCA(mLinphoneRootCaFile);
         mLc.setPlayFile(mPauseSoundFile);
+        mChatHistory.prepare();
         mLc.setChatDatabasePath(mChatDatabaseFile);
 //        mLc.setCallErrorTone(Reason.NotFound, mErrorToneFile);//设置呼叫错误播放的铃声
 
@@ -150,32 +322,37 @@ public class LinphoneManager implements LinphoneCoreListener {
         Log.w(TAG, "MediaStreamer : " + availableCores + " cores detected and configured");
         mLc.setCpuCount(availableCores);
 
-        int migrationResult = getLc().migrateToMultiTransport();
+        int span = StartupTracer.getInstance().begin("migrateToMultiTransport");
+        int migrationResult = mLc.migrateToMultiTransport();
+        StartupTracer.getInstance().end(span);
         Log.d(TAG, "Migration to multi transport result = " + migrationResult);
 
         mLc.setNetworkReachable(true);
 
-        //回声消除
+        //回声消除，按机型和音频路由使用缓存的校准结果，见 EchoCalibrator
 //        boolean isEchoCancellation = (boolean) SPUtils.get(mServiceContext, "echo_cancellation", true);
-        mLc.enableEchoCancellation(true);
+        mEchoCalibrator.start(mLc);
 
         //自适应码率控制
 //        boolean isAdaptiveRateControl = (boolean) SPUtils.get(mServiceContext, "adaptive_rate_control", true);
         mLc.enableAdaptiveRateControl(true);
 
         //audio 码率设置
-        LinphoneUtils.getConfig(mServiceContext).setInt("audio", "codec_bitrate_limit", 128);
+        ConfigStore.getInstance().edit()
+                .set(ConfigKeys.AUDIO_CODEC_BITRATE_LIMIT, 128)
+                .commit();
 
-        mLc.setPreferredVideoSizeByName("720p");
-        mLc.setUploadBandwidth(1536);
-        mLc.setDownloadBandwidth(1536);
+        // 分辨率、帧率、带宽由 VideoQualityController 根据网络状况调整
+        mVideoQualityController.start(mLc);
 
         mLc.setVideoPolicy(mLc.getVideoAutoInitiatePolicy(), true);
         mLc.setVideoPolicy(true, mLc.getVideoAutoAcceptPolicy());
         mLc.enableVideo(true, true);
 
-        // 设置编码格式
-        setCodecMime();
+        // 按网络类型和设备档次启用并排序编码
+        span = StartupTracer.getInstance().begin("applyCodecPolicy");
+        mCodecSelector.apply(mLc);
+        StartupTracer.getInstance().end(span);
     }
 
     /**
@@ -222,24 +399,315 @@ public class LinphoneManager implements LinphoneCoreListener {
     }
 
     /**
-     * 设置编码格式
+     * 提交命令到核心线程执行
+     * @param command 命令
+     * @param <T> 结果类型
+     * @return CoreFuture，LinphoneManager 未初始化或已销毁时返回失败的结果
+     */
+    public static <T> CoreFuture<T> submit(CoreCommand<T> command) {
+        LinphoneManager instance = sInstance;
+        if (instance == null || sExited) {
+            return CoreFuture.failed(new IllegalStateException("Linphone Manager is not initialized or already destroyed"));
+        }
+        return instance.mCoreThread.submit(command);
+    }
+
+    /**
+     * 获取核心线程
+     * @return LinphoneCoreThread，LinphoneManager 未初始化时返回 null
+     */
+    public static LinphoneCoreThread getCoreThread() {
+        LinphoneManager instance = sInstance;
+        return instance == null ? null : instance.mCoreThread;
+    }
+
+    /**
+     * 获取视频质量控制器
+     * @return VideoQualityController，LinphoneManager 未初始化时返回 null
+     */
+    public static VideoQualityController getVideoQualityController() {
+        LinphoneManager instance = sInstance;
+        return instance == null ? null : instance.mVideoQualityController;
+    }
+
+    /**
+     * 设置视频质量调整策略，在核心线程中生效
+     * @param policy VideoQualityPolicy
+     * @return 操作结果
+     */
+    public static CoreFuture<Void> setVideoQualityPolicy(final VideoQualityPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("policy must not be null");
+        }
+        return submit(new CoreCommand<Void>() {
+            @Override
+            public Void execute(LinphoneCore linphoneCore) {
+                getInstance().mVideoQualityController.setPolicy(policy);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 设置编码格式策略，在核心线程中立即生效
+     * @param policy CodecPolicy
+     * @return 操作结果
+     */
+    public static CoreFuture<Void> setCodecPolicy(final CodecPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("policy must not be null");
+        }
+        return submit(new CoreCommand<Void>() {
+            @Override
+            public Void execute(LinphoneCore linphoneCore) {
+                getInstance().mCodecSelector.setPolicy(linphoneCore, policy);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 获取通话登记表
+     * @return CallRegistry，LinphoneManager 未初始化时返回 null
+     */
+    public static CallRegistry getCallRegistry() {
+        LinphoneManager instance = sInstance;
+        return instance == null ? null : instance.mCallRegistry;
+    }
+
+    /**
+     * 获取会议管理，只能在 Linphone 核心线程中使用
+     * @return ConferenceManager，LinphoneManager 未初始化时返回 null
+     */
+    public static ConferenceManager getConferenceManager() {
+        LinphoneManager instance = sInstance;
+        return instance == null ? null : instance.mConferenceManager;
+    }
+
+    /**
+     * 获取呼叫建立缓存
+     * @return CallSetupCache，LinphoneManager 未初始化时返回 null
+     */
+    public static CallSetupCache getCallSetupCache() {
+        LinphoneManager instance = sInstance;
+        return instance == null ? null : instance.mCallSetupCache;
+    }
+
+    /**
+     * 获取注册健康监控
+     * @return RegistrationMonitor，LinphoneManager 未初始化时返回 null
+     */
+    public static RegistrationMonitor getRegistrationMonitor() {
+        LinphoneManager instance = sInstance;
+        return instance == null ? null : instance.mRegistrationMonitor;
+    }
+
+    /**
+     * 获取回声消除校准，只能在 Linphone 核心线程中使用
+     * @return EchoCalibrator，LinphoneManager 未初始化时返回 null
+     */
+    public static EchoCalibrator getEchoCalibrator() {
+        LinphoneManager instance = sInstance;
+        return instance == null ? null : instance.mEchoCalibrator;
+    }
+
+    /**
+     * 获取聊天记录
+     * @return ChatHistory，LinphoneManager 未初始化时返回 null
+     */
+    public static ChatHistory getChatHistory() {
+        LinphoneManager instance = sInstance;
+        return instance == null ? null : instance.mChatHistory;
+    }
+
+    /**
+     * 获取外呼队列
+     * @return DialQueue，LinphoneManager 未初始化时返回 null
+     */
+    public static DialQueue getDialQueue() {
+        LinphoneManager instance = sInstance;
+        return instance == null ? null : instance.mDialQueue;
+    }
+
+    /**
+     * 获取账号池，修改账号需在核心线程中进行
+     * @return AccountPool，LinphoneManager 未初始化时返回 null
+     */
+    public static AccountPool getAccountPool() {
+        LinphoneManager instance = sInstance;
+        return instance == null ? null : instance.mAccountPool;
+    }
+
+    /**
+     * 设置需要注册的全部账号，在核心线程中与当前账号比较后只应用差异
+     * @param accounts 账号列表，第一个作为默认账号
+     * @return 操作结果
+     */
+    public static CoreFuture<Void> setAccounts(List<PhoneBean> accounts) {
+        final List<PhoneBean> snapshot = new ArrayList<>(accounts);
+        return submit(new CoreCommand<Void>() {
+            @Override
+            public Void execute(LinphoneCore linphoneCore) throws LinphoneCoreException {
+                getInstance().mAccountPool.setAccounts(snapshot);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 添加或更新一个账号
+     * @param account 账号信息
+     * @return 操作结果
+     */
+    public static CoreFuture<Void> addAccount(final PhoneBean account) {
+        return submit(new CoreCommand<Void>() {
+            @Override
+            public Void execute(LinphoneCore linphoneCore) throws LinphoneCoreException {
+                getInstance().mAccountPool.addAccount(account);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 注销并移除一个账号
+     * @param identity 账号标识
+     * @return 操作结果
+     */
+    public static CoreFuture<Void> removeAccount(final String identity) {
+        return submit(new CoreCommand<Void>() {
+            @Override
+            public Void execute(LinphoneCore linphoneCore) throws LinphoneCoreException {
+                getInstance().mAccountPool.removeAccount(identity);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 设置 NAT 保活唤醒间隔，在核心线程中生效
+     * @param intervalMillis 间隔，小于等于 0 表示只按注册有效期唤醒
+     * @return 操作结果
      */
-    private void setCodecMime() {
-        for (PayloadType payloadType : mLc.getAudioCodecs()) {
-            try {
-                mLc.enablePayloadType(payloadType, true);
-            } catch (LinphoneCoreException e) {
-                e.printStackTrace();
+    public static CoreFuture<Void> setNatKeepAliveInterval(final long intervalMillis) {
+        return submit(new CoreCommand<Void>() {
+            @Override
+            public Void execute(LinphoneCore linphoneCore) {
+                getInstance().mRegistrationRefreshScheduler.setNatKeepAliveMillis(intervalMillis);
+                return null;
             }
+        });
+    }
+
+    /**
+     * 注册刷新闹钟触发，由 KeepAliveHandler 在主线程中调用
+     * 广播返回后系统不再保持唤醒，先持有唤醒锁，直到核心线程完成刷新
+     */
+    static void onKeepAliveAlarm() {
+        LinphoneManager instance = sInstance;
+        if (instance == null) {
+            return;
         }
-        for (PayloadType payloadType : mLc.getVideoCodecs()) {
-            try {
-                android.util.Log.e(TAG, "setCodecMime: mime: " + payloadType.getMime() + " rate: " + payloadType.getRate());
-                mLc.enablePayloadType(payloadType, true);
-            } catch (LinphoneCoreException e) {
-                e.printStackTrace();
+        final RegistrationRefreshScheduler scheduler = instance.mRegistrationRefreshScheduler;
+        scheduler.acquireWakeLock();
+        submit(new CoreCommand<Void>() {
+            @Override
+            public Void execute(LinphoneCore linphoneCore) {
+                scheduler.onAlarm();
+                return null;
             }
+        });
+    }
+
+    /**
+     * 发送文本消息，在核心线程中执行
+     * @param userName 对方号码
+     * @param host 对方服务器，为 null 时使用默认账号的域名
+     * @param text 消息内容
+     * @return 已保存的消息
+     */
+    public static CoreFuture<ChatMessage> sendMessage(final String userName, final String host, final String text) {
+        return submit(new CoreCommand<ChatMessage>() {
+            @Override
+            public ChatMessage execute(LinphoneCore linphoneCore) throws LinphoneCoreException {
+                String domain = host;
+                if (domain == null) {
+                    LinphoneProxyConfig proxyConfig = linphoneCore.getDefaultProxyConfig();
+                    domain = proxyConfig == null ? null : proxyConfig.getDomain();
+                }
+                LinphoneManager manager = getInstance();
+                return manager.mChatHistory.send(manager.mCallSetupCache.getAddress(userName, domain), text);
+            }
+        });
+    }
+
+    /**
+     * 把会话中的消息标记为已读，在核心线程中执行
+     * @param peer 对方地址
+     * @return 操作结果
+     */
+    public static CoreFuture<Void> markAsRead(final String peer) {
+        return submit(new CoreCommand<Void>() {
+            @Override
+            public Void execute(LinphoneCore linphoneCore) throws LinphoneCoreException {
+                getInstance().mChatHistory.markAsRead(peer);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 重新加载配置文件，只把发生变化的配置项应用到运行中的 LinphoneCore
+     * @param path 配置文件路径，文件中未出现的配置项保持不变
+     * @return 值发生变化的配置项，文件不存在时以 IllegalArgumentException 失败
+     */
+    public static CoreFuture<List<ConfigKey<?>>> reloadConfig(final String path) {
+        if (path == null || !new File(path).isFile()) {
+            return CoreFuture.failed(new IllegalArgumentException("Config file not found: " + path));
         }
+        return submit(new CoreCommand<List<ConfigKey<?>>>() {
+            @Override
+            public List<ConfigKey<?>> execute(LinphoneCore linphoneCore) {
+                // 先同步 LpConfig 中未经 ConfigStore 的修改，否则与快照相同的值不会被写入
+                ConfigStore store = ConfigStore.getInstance();
+                List<ConfigKey<?>> changed = new ArrayList<>(store.reload());
+                LpConfig source = LinphoneCoreFactory.instance().createLpConfig(path);
+                for (ConfigKey<?> key : store.edit().setAll(source).commit()) {
+                    if (!changed.contains(key)) {
+                        changed.add(key);
+                    }
+                }
+                return changed;
+            }
+        });
+    }
+
+    /**
+     * 获取启动时资源文件的导入结果
+     * @return 每个资源的导入结果，未导入时返回 null
+     */
+    public static List<AssetProvisioner.Result> getAssetResults() {
+        LinphoneManager instance = sInstance;
+        return instance == null ? null : instance.mAssetResults;
+    }
+
+    /**
+     * 唤醒 iterate 调度器，让即将发生的 SIP 事务得到及时处理
+     */
+    public static void wakeUp() {
+        LinphoneManager instance = sInstance;
+        if (instance != null) {
+            instance.mIterateScheduler.wakeUp();
+        }
+    }
+
+    /**
+     * 获取 iterate 统计信息
+     * @return IterateStats，LinphoneManager 未初始化时返回 null
+     */
+    public static IterateStats getIterateStats() {
+        LinphoneManager instance = sInstance;
+        return instance == null ? null : instance.mIterateScheduler.getStats();
     }
 
     /**
@@ -247,13 +715,16 @@ public class LinphoneManager implements LinphoneCoreListener {
      * @throws IOException exception
      */
     private void copyAssetsFromPackage() throws IOException {
-        LinphoneUtils.copyIfNotExist(mServiceContext, R.raw.oldphone_mono, mRingSoundFile);
-        LinphoneUtils.copyIfNotExist(mServiceContext, R.raw.ringback, mRingBackSoundFile);
-        LinphoneUtils.copyIfNotExist(mServiceContext, R.raw.toy_mono, mPauseSoundFile);
-        LinphoneUtils.copyIfNotExist(mServiceContext, R.raw.linphonerc_default, mLinphoneConfigFile);
-        LinphoneUtils.copyIfNotExist(mServiceContext, R.raw.linphonerc_factory, new File(mLinphoneFactoryConfigFile).getName());
-        LinphoneUtils.copyIfNotExist(mServiceContext, R.raw.lpconfig, mLPConfigXsd);
-        LinphoneUtils.copyIfNotExist(mServiceContext, R.raw.rootca, mLinphoneRootCaFile);
+        mAssetResults = new AssetProvisioner(mServiceContext)
+                .add(R.raw.oldphone_mono, mRingSoundFile, AssetProvisioner.MODE_REPLACE_IF_CHANGED)
+                .add(R.raw.ringback, mRingBackSoundFile, AssetProvisioner.MODE_REPLACE_IF_CHANGED)
+                .add(R.raw.toy_mono, mPauseSoundFile, AssetProvisioner.MODE_REPLACE_IF_CHANGED)
+                // .linphonerc 保存了运行时修改的配置，不能覆盖
+                .add(R.raw.linphonerc_default, mLinphoneConfigFile, AssetProvisioner.MODE_COPY_IF_MISSING)
+                .add(R.raw.linphonerc_factory, mLinphoneFactoryConfigFile, AssetProvisioner.MODE_REPLACE_IF_CHANGED)
+                .add(R.raw.lpconfig, mLPConfigXsd, AssetProvisioner.MODE_REPLACE_IF_CHANGED)
+                .add(R.raw.rootca, mLinphoneRootCaFile, AssetProvisioner.MODE_REPLACE_IF_CHANGED)
+                .provision();
     }
 
     /**
@@ -273,14 +744,28 @@ public class LinphoneManager implements LinphoneCoreListener {
     }
 
     /**
-     * 销毁 LinphoneManager
+     * 销毁 LinphoneManager，在核心线程中销毁 LinphoneCore 并等待完成，
+     * 最多等待 {@link #DESTROY_TIMEOUT_MS}，超时或被中断时销毁在核心线程中继续进行，完成前不能再次 init
      */
-    public static synchronized void destroy() {
-        if (sInstance == null) {
-            return;
+    public static void destroy() {
+        final LinphoneManager instance;
+        synchronized (LinphoneManager.class) {
+            if (sInstance == null || sExited) {
+                return;
+            }
+            sExited = true;
+            instance = sInstance;
         }
-        sExited = true;
-        sInstance.doDestroy();
+        FutureTask<Void> destroyTask = new FutureTask<>(new Runnable() {
+            @Override
+            public void run() {
+                instance.doDestroy();
+            }
+        }, null);
+        instance.mCoreThread.post(destroyTask);
+        // quit 排在销毁任务之后，等待超时也不影响销毁完成
+        instance.mCoreThread.quit();
+        awaitCoreThread(destroyTask, DESTROY_TIMEOUT_MS);
     }
 
     /**
@@ -288,19 +773,58 @@ public class LinphoneManager implements LinphoneCoreListener {
      */
     private void doDestroy() {
         try {
-            mTimer.cancel();
-            mLc.destroy();
+            mConnectivityReceiver.stop();
+            mIterateScheduler.stop();
+            mRegistrationRefreshScheduler.stop();
+            mRegistrationMonitor.stop();
+            mAccountPool.stop();
+            mDialQueue.stop();
+            mCallSetupCache.stop();
+            mEchoCalibrator.stop();
+            mJitterBufferTuner.stop();
+            mCallRegistry.clear();
+            mVideoQualityController.stop();
+            mConfigApplier.stop();
+            mCoreThread.setLinphoneCore(null);
+            ConfigStore.getInstance().detach();
+            if (mLc != null) {
+                mLc.destroy();
+            }
+            // liblinphone 已关闭数据库，这时关闭只读连接
+            mChatHistory.stop();
+            LinphoneUtils.reset();
         } catch (RuntimeException e) {
             e.printStackTrace();
         } finally {
             mLc = null;
-            sInstance = null;
+            synchronized (LinphoneManager.class) {
+                sInstance = null;
+            }
+        }
+    }
+
+    /**
+     * 等待核心线程中的任务执行完毕
+     * @param task 任务
+     * @param timeoutMillis 最长等待时间
+     */
+    private static void awaitCoreThread(FutureTask<Void> task, long timeoutMillis) {
+        try {
+            task.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            // 保留中断标记交给调用者处理，任务仍在核心线程中执行
+            Thread.currentThread().interrupt();
+            Log.w(TAG, "awaitCoreThread: interrupted, task continues on the core thread");
+        } catch (TimeoutException e) {
+            Log.w(TAG, "awaitCoreThread: not finished in " + timeoutMillis + " ms, task continues on the core thread");
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Linphone core thread task failed", e.getCause());
         }
     }
 
     @Override
     public void authInfoRequested(LinphoneCore linphoneCore, String s, String s1, String s2) {
-
+        count("auth.requested");
     }
 
     @Override
@@ -310,7 +834,9 @@ public class LinphoneManager implements LinphoneCoreListener {
 
     @Override
     public void callStatsUpdated(LinphoneCore linphoneCore, LinphoneCall linphoneCall, LinphoneCallStats linphoneCallStats) {
-
+        CallStatsCollector.getInstance().record(linphoneCall, linphoneCallStats);
+        count("call.stats_updated");
+        mConferenceManager.sampleLoad();
     }
 
     @Override
@@ -325,7 +851,7 @@ public class LinphoneManager implements LinphoneCoreListener {
 
     @Override
     public void dtmfReceived(LinphoneCore linphoneCore, LinphoneCall linphoneCall, int i) {
-
+        count("call.dtmf_received");
     }
 
     @Override
@@ -395,7 +921,30 @@ public class LinphoneManager implements LinphoneCoreListener {
 
     @Override
     public void callState(LinphoneCore linphoneCore, LinphoneCall linphoneCall, LinphoneCall.State state, String s) {
-
+        mIterateScheduler.wakeUp();
+        mCallRegistry.onCallState(linphoneCall, state);
+        mDialQueue.onCallState(linphoneCall, state);
+        mCallSetupCache.onCallState(linphoneCall, state);
+        CallLatencyTracker.getInstance().onCallState(linphoneCall, state);
+        mEchoCalibrator.onCallState(linphoneCall, state);
+        mJitterBufferTuner.onCallState(linphoneCall, state);
+        mCodecCostTracker.onCallStateChanged(linphoneCore, linphoneCall, state);
+        if (state == LinphoneCall.State.OutgoingInit) {
+            count("call.outgoing");
+        } else if (state == LinphoneCall.State.IncomingReceived) {
+            count("call.incoming");
+        } else if (state == LinphoneCall.State.Connected) {
+            count("call.connected");
+        } else if (state == LinphoneCall.State.Error) {
+            count("call.error");
+        } else if (state == LinphoneCall.State.CallEnd) {
+            count("call.end");
+        }
+        if (state == LinphoneCall.State.CallReleased) {
+            CallStatsCollector.getInstance().release(LinphoneUtils.getCallId(linphoneCall));
+            mVideoQualityController.onCallReleased();
+            mConfigApplier.onCallReleased();
+        }
     }
 
     @Override
@@ -405,7 +954,7 @@ public class LinphoneManager implements LinphoneCoreListener {
 
     @Override
     public void ecCalibrationStatus(LinphoneCore linphoneCore, LinphoneCore.EcCalibratorStatus ecCalibratorStatus, int i, Object o) {
-
+        mEchoCalibrator.onCalibrationStatus(ecCalibratorStatus, i);
     }
 
     @Override
@@ -435,17 +984,25 @@ public class LinphoneManager implements LinphoneCoreListener {
 
     @Override
     public void networkReachableChanged(LinphoneCore linphoneCore, boolean b) {
-
+        mIterateScheduler.wakeUp();
+        count(b ? "network.reachable" : "network.unreachable");
+        if (b) {
+            mCodecSelector.onNetworkChanged(linphoneCore);
+            mCallSetupCache.invalidateParams();
+            mRegistrationMonitor.onNetworkReachable();
+            mJitterBufferTuner.onNetworkChanged();
+        }
     }
 
     @Override
     public void messageReceived(LinphoneCore linphoneCore, LinphoneChatRoom linphoneChatRoom, LinphoneChatMessage linphoneChatMessage) {
-
+        count("chat.received");
+        mChatHistory.onMessageReceived(linphoneChatRoom, linphoneChatMessage);
     }
 
     @Override
     public void messageReceivedUnableToDecrypted(LinphoneCore linphoneCore, LinphoneChatRoom linphoneChatRoom, LinphoneChatMessage linphoneChatMessage) {
-
+        count("chat.decrypt_failed");
     }
 
     @Override
@@ -455,7 +1012,12 @@ public class LinphoneManager implements LinphoneCoreListener {
 
     @Override
     public void registrationState(LinphoneCore linphoneCore, LinphoneProxyConfig linphoneProxyConfig, LinphoneCore.RegistrationState registrationState, String s) {
-
+        if (registrationState == LinphoneCore.RegistrationState.RegistrationProgress) {
+            mIterateScheduler.wakeUp();
+        }
+        mRegistrationRefreshScheduler.onRegistrationState(linphoneProxyConfig, registrationState);
+        mRegistrationMonitor.onRegistrationState(linphoneProxyConfig, registrationState);
+        mAccountPool.onRegistrationState(linphoneProxyConfig, registrationState);
     }
 
     @Override
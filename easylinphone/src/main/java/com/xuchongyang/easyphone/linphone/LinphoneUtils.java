@@ -1,16 +1,13 @@
 package com.xuchongyang.easyphone.linphone;
 
 import android.content.Context;
+import android.os.SystemClock;
 import android.util.Log;
 
 import org.linphone.core.LinphoneAddress;
-import org.linphone.core.LinphoneAuthInfo;
 import org.linphone.core.LinphoneCall;
-import org.linphone.core.LinphoneCallParams;
 import org.linphone.core.LinphoneCore;
 import org.linphone.core.LinphoneCoreException;
-import org.linphone.core.LinphoneCoreFactory;
-import org.linphone.core.LinphoneProxyConfig;
 import org.linphone.core.LpConfig;
 
 import java.io.File;
@@ -43,9 +40,18 @@ public class LinphoneUtils {
         return sInstance;
     }
 
+    /**
+     * 丢弃缓存的实例，LinphoneCore 销毁后调用，避免服务重启后继续使用已销毁的 LinphoneCore
+     */
+    static void reset() {
+        synchronized (LinphoneUtils.class) {
+            sInstance = null;
+        }
+    }
+
     private LinphoneUtils() {
         mLinphoneCore = LinphoneManager.getLc();
-        mLinphoneCore.enableEchoCancellation(true);
+        // 回声消除的开关由 EchoCalibrator 根据校准结果决定
         mLinphoneCore.enableEchoLimiter(true);
     }
 
@@ -57,23 +63,12 @@ public class LinphoneUtils {
      * @throws LinphoneCoreException LinphoneCoreException
      */
     public void registerUserAuth(String name, String password, String host) throws LinphoneCoreException {
-        String identify = "sip:" + name + "@" + host;
-        String proxy = "sip:" + host;
-        LinphoneAddress proxyAddress = LinphoneCoreFactory.instance().createLinphoneAddress(proxy);
-        LinphoneAddress identifyAddress = LinphoneCoreFactory.instance().createLinphoneAddress(identify);
-        LinphoneAuthInfo authInfo = LinphoneCoreFactory.instance().createAuthInfo(name, null, password,
-                null, null, host);
-        LinphoneProxyConfig prxCfg = mLinphoneCore.createProxyConfig(identifyAddress.asString(),
-                proxyAddress.asStringUriOnly(), proxyAddress.asStringUriOnly(), true);
-        prxCfg.enableAvpf(false);
-        prxCfg.setAvpfRRInterval(0);
-        prxCfg.enableQualityReporting(false);
-        prxCfg.setQualityReportingCollector(null);
-        prxCfg.setQualityReportingInterval(0);
-        prxCfg.enableRegister(true);
-        mLinphoneCore.addProxyConfig(prxCfg);
-        mLinphoneCore.addAuthInfo(authInfo);
-        mLinphoneCore.setDefaultProxyConfig(prxCfg);
+        PhoneBean bean = new PhoneBean();
+        bean.setUserName(name);
+        bean.setPassword(password);
+        bean.setHost(host);
+        // 通过账号池添加，重复登录不会产生重复的账号
+        LinphoneManager.getAccountPool().addAccount(bean);
     }
 
     /**
@@ -83,24 +78,30 @@ public class LinphoneUtils {
      * @return LinphoneCall
      */
     public LinphoneCall startSingleCallingTo(PhoneBean bean, boolean isVideoCall) {
+        return startSingleCallingTo(bean, isVideoCall, SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * 开启通话
+     * @param bean PhoneBean
+     * @param isVideoCall 是否为视频通话
+     * @param requestTime 调用方请求呼叫的时间，SystemClock.elapsedRealtime()，用于统计呼叫建立耗时
+     * @return LinphoneCall
+     */
+    public LinphoneCall startSingleCallingTo(PhoneBean bean, boolean isVideoCall, long requestTime) {
+        CallSetupCache cache = LinphoneManager.getCallSetupCache();
         LinphoneAddress address;
         LinphoneCall call = null;
         try {
-            address = mLinphoneCore.interpretUrl(bean.getUserName() + "@" + bean.getHost());
+            address = cache.getAddress(bean.getUserName(), bean.getHost());
         } catch (LinphoneCoreException e) {
             e.printStackTrace();
             return null;
         }
         address.setDisplayName(bean.getDisplayName());
-        LinphoneCallParams params = mLinphoneCore.createCallParams(null);
-        if (isVideoCall) {
-            params.setVideoEnabled(true);
-            params.enableLowBandwidth(false);
-        } else {
-            params.setVideoEnabled(false);
-        }
         try {
-            call = mLinphoneCore.inviteAddressWithParams(address, params);
+            call = mLinphoneCore.inviteAddressWithParams(address, cache.getParams(isVideoCall));
+            cache.onInvite(call, requestTime);
         } catch (LinphoneCoreException e) {
             e.printStackTrace();
         }
@@ -135,8 +136,21 @@ public class LinphoneUtils {
      */
      public void toggleSpeaker(boolean isSpeakerEnabled) {
          mLinphoneCore.enableSpeaker(isSpeakerEnabled);
+         LinphoneManager.getEchoCalibrator().onRouteChanged();
      }
 
+    /**
+     * 获取通话 ID
+     * @param linphoneCall 通话
+     * @return SIP Call-ID，无法获取时返回 null
+     */
+    public static String getCallId(LinphoneCall linphoneCall) {
+        if (linphoneCall == null || linphoneCall.getCallLog() == null) {
+            return null;
+        }
+        return linphoneCall.getCallLog().getCallId();
+    }
+
     public static void copyIfNotExist(Context context, int resourceId, String target) throws IOException {
         File fileToCopy = new File(target);
         if (!fileToCopy.exists()) {
@@ -162,13 +176,8 @@ public class LinphoneUtils {
         if (lc != null) {
             return lc.getConfig();
         }
-
-        if (LinphoneManager.isInstantiated()) {
-            org.linphone.mediastream.Log.w("LinphoneManager not instanciated yet...");
-            return LinphoneCoreFactory.instance().createLpConfig(context.getFilesDir().getAbsolutePath() + "/.linphonerc");
-        }
-
-        return LinphoneCoreFactory.instance().createLpConfig(LinphoneManager.getInstance().mLinphoneConfigFile);
+        // LinphoneCore 未启动时使用缓存的 LpConfig，不重复解析配置文件
+        return ConfigStore.getInstance().getLpConfig(context);
     }
 
     private static LinphoneCore getLc() {
@@ -0,0 +1,135 @@
+package com.xuchongyang.easyphone.linphone;
+
+import android.os.SystemClock;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 库的指标登记表：计数器、仪表和延迟直方图，按名称登记，名称用点分隔，如 call.outgoing
+ * 记录和快照不加锁，可在任意线程调用
+ */
+
+public class MetricsRegistry {
+    private static volatile MetricsRegistry sInstance;
+    private final ConcurrentHashMap<String, Counter> mCounters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Gauge> mGauges = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LatencyHistogram> mHistograms = new ConcurrentHashMap<>();
+
+    /**
+     * 仪表，快照时读取当前值，实现需可在任意线程调用
+     */
+    public interface Gauge {
+        double getValue();
+    }
+
+    /**
+     * 单调递增的计数器
+     */
+    public static class Counter {
+        private final AtomicLong mValue = new AtomicLong();
+
+        public void increment() {
+            mValue.incrementAndGet();
+        }
+
+        public void add(long delta) {
+            mValue.addAndGet(delta);
+        }
+
+        public long get() {
+            return mValue.get();
+        }
+    }
+
+    /**
+     * 获取 MetricsRegistry 实例
+     * @return MetricsRegistry 实例
+     */
+    public static MetricsRegistry getInstance() {
+        if (sInstance == null) {
+            synchronized (MetricsRegistry.class) {
+                if (sInstance == null) {
+                    sInstance = new MetricsRegistry();
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    private MetricsRegistry() {
+    }
+
+    /**
+     * 获取计数器，不存在时创建
+     * @param name 名称
+     * @return Counter
+     */
+    public Counter counter(String name) {
+        Counter counter = mCounters.get(name);
+        if (counter == null) {
+            counter = new Counter();
+            Counter previous = mCounters.putIfAbsent(name, counter);
+            if (previous != null) {
+                counter = previous;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * 获取直方图，不存在时创建
+     * @param name 名称
+     * @return LatencyHistogram
+     */
+    public LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = mHistograms.get(name);
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            LatencyHistogram previous = mHistograms.putIfAbsent(name, histogram);
+            if (previous != null) {
+                histogram = previous;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * 登记仪表，同名仪表会被替换
+     * @param name 名称
+     * @param gauge Gauge
+     */
+    public void gauge(String name, Gauge gauge) {
+        mGauges.put(name, gauge);
+    }
+
+    /**
+     * 移除仪表
+     * @param name 名称
+     */
+    public void removeGauge(String name) {
+        mGauges.remove(name);
+    }
+
+    /**
+     * 获取所有指标的快照
+     * @return MetricsSnapshot
+     */
+    public MetricsSnapshot snapshot() {
+        Map<String, Long> counters = new TreeMap<>();
+        for (Map.Entry<String, Counter> entry : mCounters.entrySet()) {
+            counters.put(entry.getKey(), entry.getValue().get());
+        }
+        Map<String, Double> gauges = new TreeMap<>();
+        for (Map.Entry<String, Gauge> entry : mGauges.entrySet()) {
+            gauges.put(entry.getKey(), entry.getValue().getValue());
+        }
+        Map<String, LatencyHistogram.Snapshot> histograms = new TreeMap<>();
+        for (Map.Entry<String, LatencyHistogram> entry : mHistograms.entrySet()) {
+            histograms.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return new MetricsSnapshot(SystemClock.elapsedRealtime(), counters, gauges, histograms);
+    }
+}
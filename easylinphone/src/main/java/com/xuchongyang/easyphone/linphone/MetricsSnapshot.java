@@ -0,0 +1,87 @@
+package com.xuchongyang.easyphone.linphone;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 指标快照，不可变，可序列化为紧凑的文本格式，每行一个指标：
+ * c 名称 值；g 名称 值；h 名称 count= mean= p50= p90= p99= max=（单位 ms）
+ */
+
+public class MetricsSnapshot {
+    private final long mTime;
+    private final Map<String, Long> mCounters;
+    private final Map<String, Double> mGauges;
+    private final Map<String, LatencyHistogram.Snapshot> mHistograms;
+
+    MetricsSnapshot(long time, Map<String, Long> counters, Map<String, Double> gauges,
+                    Map<String, LatencyHistogram.Snapshot> histograms) {
+        mTime = time;
+        mCounters = Collections.unmodifiableMap(counters);
+        mGauges = Collections.unmodifiableMap(gauges);
+        mHistograms = Collections.unmodifiableMap(histograms);
+    }
+
+    /**
+     * 快照时间
+     * @return SystemClock.elapsedRealtime() 时间，ms
+     */
+    public long getTime() {
+        return mTime;
+    }
+
+    public Map<String, Long> getCounters() {
+        return mCounters;
+    }
+
+    public Map<String, Double> getGauges() {
+        return mGauges;
+    }
+
+    public Map<String, LatencyHistogram.Snapshot> getHistograms() {
+        return mHistograms;
+    }
+
+    /**
+     * 获取计数器的值
+     * @param name 名称
+     * @return 值，不存在时返回 0
+     */
+    public long getCounter(String name) {
+        Long value = mCounters.get(name);
+        return value == null ? 0 : value;
+    }
+
+    /**
+     * 序列化为文本，首行为快照时间，指标按名称排序
+     * @return 文本
+     */
+    public String toText() {
+        StringBuilder builder = new StringBuilder(64 * (1 + mCounters.size() + mGauges.size() + mHistograms.size()));
+        builder.append("# easylinphone metrics t=").append(mTime).append('\n');
+        for (Map.Entry<String, Long> entry : mCounters.entrySet()) {
+            builder.append("c ").append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+        }
+        for (Map.Entry<String, Double> entry : mGauges.entrySet()) {
+            builder.append("g ").append(entry.getKey()).append(' ')
+                    .append(String.format(Locale.US, "%.3f", entry.getValue())).append('\n');
+        }
+        for (Map.Entry<String, LatencyHistogram.Snapshot> entry : mHistograms.entrySet()) {
+            LatencyHistogram.Snapshot snapshot = entry.getValue();
+            builder.append("h ").append(entry.getKey())
+                    .append(" count=").append(snapshot.getCount())
+                    .append(" mean=").append(snapshot.getMean())
+                    .append(" p50=").append(snapshot.getPercentile(50))
+                    .append(" p90=").append(snapshot.getPercentile(90))
+                    .append(" p99=").append(snapshot.getPercentile(99))
+                    .append(" max=").append(snapshot.getMax()).append('\n');
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public String toString() {
+        return toText();
+    }
+}
@@ -0,0 +1,351 @@
+package com.xuchongyang.easyphone.linphone;
+
+import android.os.SystemClock;
+
+import org.linphone.core.LinphoneCore;
+import org.linphone.core.LinphoneProxyConfig;
+import org.linphone.core.Reason;
+import org.linphone.mediastream.Log;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 注册健康监控：按账号统计 REGISTER 往返耗时、成功和失败次数，并接管失败后的重试
+ * liblinphone 失败后按固定间隔重试，服务器故障恢复时所有设备会同时重新注册，
+ * 这里失败后暂停账号的注册，按带随机抖动的指数退避时间再恢复
+ * 统计可在任意线程读取，其他方法在 Linphone 核心线程中调用
+ */
+
+public class RegistrationMonitor {
+    private static final String TAG = "RegistrationMonitor";
+    private static final long BASE_BACKOFF_MILLIS = 5000;
+    private static final long MAX_BACKOFF_MILLIS = 10 * 60 * 1000;
+    /**
+     * 网络恢复后恢复注册的最大随机延迟
+     */
+    private static final long NETWORK_JITTER_MILLIS = 5000;
+
+    private final LinphoneCoreThread mCoreThread;
+    private final ConcurrentHashMap<String, Health> mHealth = new ConcurrentHashMap<>();
+    private final Map<String, Long> mProgressTimes = new HashMap<>();
+    private final Map<String, Runnable> mRetries = new HashMap<>();
+    private final Set<String> mSuspended = new HashSet<>();
+    private final Random mRandom = new Random();
+    private LinphoneCore mLc;
+
+    /**
+     * 注册失败原因分类
+     */
+    public enum FailureClass {
+        /**
+         * 认证失败或被拒绝
+         */
+        AUTH,
+        /**
+         * 无响应、超时或网络错误
+         */
+        NETWORK,
+        /**
+         * 服务器暂时不可用或网关错误
+         */
+        SERVER,
+        /**
+         * 其他
+         */
+        OTHER
+    }
+
+    RegistrationMonitor(LinphoneCoreThread coreThread) {
+        mCoreThread = coreThread;
+    }
+
+    /**
+     * 开始监控，恢复上次退出时仍处于暂停状态的账号
+     * 暂停通过关闭账号的注册实现，liblinphone 会把该状态写入配置文件
+     * @param linphoneCore LinphoneCore
+     */
+    void start(LinphoneCore linphoneCore) {
+        mLc = linphoneCore;
+        for (LinphoneProxyConfig proxyConfig : mLc.getProxyConfigList()) {
+            if (!proxyConfig.registerEnabled()) {
+                Log.d(TAG, "Resume account " + AccountPool.identityOf(proxyConfig) + " suspended by last run");
+                setRegisterEnabled(proxyConfig, true);
+            }
+        }
+    }
+
+    void stop() {
+        for (Runnable retry : mRetries.values()) {
+            mCoreThread.removeCallbacks(retry);
+        }
+        mRetries.clear();
+        mProgressTimes.clear();
+        mSuspended.clear();
+        mLc = null;
+    }
+
+    /**
+     * 获取账号的注册统计
+     * @param identity 账号标识，见 AccountPool.identityOf
+     * @return Health，尚未注册过时返回 null
+     */
+    public Health getHealth(String identity) {
+        return mHealth.get(identity);
+    }
+
+    /**
+     * 获取所有账号的注册统计
+     * @return 账号标识到 Health 的映射，只读
+     */
+    public Map<String, Health> getAllHealth() {
+        return Collections.unmodifiableMap(mHealth);
+    }
+
+    /**
+     * 注册状态变化
+     * @param proxyConfig 账号
+     * @param state 注册状态
+     */
+    void onRegistrationState(LinphoneProxyConfig proxyConfig, LinphoneCore.RegistrationState state) {
+        if (proxyConfig == null) {
+            return;
+        }
+        String identity = AccountPool.identityOf(proxyConfig);
+        long now = SystemClock.elapsedRealtime();
+        if (state == LinphoneCore.RegistrationState.RegistrationProgress) {
+            mProgressTimes.put(identity, now);
+            healthOf(identity).mAttempts.incrementAndGet();
+            MetricsRegistry.getInstance().counter("registration.attempt").increment();
+            return;
+        }
+        Long progressTime = mProgressTimes.remove(identity);
+        if (state == LinphoneCore.RegistrationState.RegistrationOk) {
+            Health health = healthOf(identity);
+            recordLatency(health, progressTime, now);
+            health.mSuccesses.incrementAndGet();
+            MetricsRegistry.getInstance().counter("registration.ok").increment();
+            health.mConsecutiveFailures = 0;
+            health.mLastSuccessTime = now;
+            cancelRetry(identity);
+        } else if (state == LinphoneCore.RegistrationState.RegistrationFailed) {
+            Reason reason = proxyConfig.getError();
+            FailureClass failureClass = classify(reason);
+            Health health = healthOf(identity);
+            recordLatency(health, progressTime, now);
+            health.mFailures.incrementAndGet(failureClass.ordinal());
+            MetricsRegistry.getInstance().counter("registration.failed."
+                    + failureClass.name().toLowerCase(Locale.US)).increment();
+            health.mConsecutiveFailures++;
+            health.mLastFailureClass = failureClass;
+            scheduleRetry(proxyConfig, identity, health.mConsecutiveFailures, failureClass);
+        }
+    }
+
+    /**
+     * 记录 REGISTER 往返耗时，同时计入所有账号合计的 registration.latency
+     */
+    private static void recordLatency(Health health, Long progressTime, long now) {
+        if (progressTime == null) {
+            return;
+        }
+        health.mLatency.record(now - progressTime);
+        MetricsRegistry.getInstance().histogram("registration.latency").record(now - progressTime);
+    }
+
+    /**
+     * 网络恢复，暂停中的账号不再等待退避时间，在短暂的随机延迟后恢复注册
+     */
+    void onNetworkReachable() {
+        for (String identity : new HashSet<>(mSuspended)) {
+            Runnable retry = mRetries.get(identity);
+            if (retry != null) {
+                mCoreThread.removeCallbacks(retry);
+                mCoreThread.postDelayed(retry, (long) (mRandom.nextFloat() * NETWORK_JITTER_MILLIS));
+            }
+        }
+    }
+
+    /**
+     * 失败原因分类
+     * @param reason 失败原因
+     * @return FailureClass
+     */
+    public static FailureClass classify(Reason reason) {
+        if (reason == Reason.Unauthorized || reason == Reason.Forbidden) {
+            return FailureClass.AUTH;
+        }
+        if (reason == Reason.NoResponse || reason == Reason.IOError || reason == Reason.ServerTimeout) {
+            return FailureClass.NETWORK;
+        }
+        if (reason == Reason.TemporarilyUnavailable || reason == Reason.BadGateway
+                || reason == Reason.NotImplemented) {
+            return FailureClass.SERVER;
+        }
+        return FailureClass.OTHER;
+    }
+
+    /**
+     * 计算退避时间：基础时间按连续失败次数翻倍，取其一半加上随机的另一半
+     * 认证失败短时间内重试无意义，直接使用最大退避时间
+     */
+    long backoffMillis(int consecutiveFailures, FailureClass failureClass) {
+        long backoff = MAX_BACKOFF_MILLIS;
+        if (failureClass != FailureClass.AUTH) {
+            int shift = Math.min(consecutiveFailures - 1, 20);
+            backoff = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << shift);
+        }
+        return backoff / 2 + (long) (mRandom.nextFloat() * backoff / 2);
+    }
+
+    private void scheduleRetry(LinphoneProxyConfig proxyConfig, final String identity, int consecutiveFailures,
+                               FailureClass failureClass) {
+        cancelRetry(identity);
+        long delay = backoffMillis(consecutiveFailures, failureClass);
+        MetricsRegistry.getInstance().counter("registration.retry").increment();
+        Log.w(TAG, "Registration of " + identity + " failed (" + failureClass + ", " + consecutiveFailures
+                + " in a row), retry in " + delay + " ms");
+        mSuspended.add(identity);
+        // 关闭注册以停止 liblinphone 自身的固定间隔重试，不在注册回调中修改账号
+        final LinphoneProxyConfig failedProxyConfig = proxyConfig;
+        mCoreThread.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mSuspended.contains(identity)) {
+                    setRegisterEnabled(failedProxyConfig, false);
+                }
+            }
+        });
+        Runnable retry = new Runnable() {
+            @Override
+            public void run() {
+                mRetries.remove(identity);
+                resume(identity);
+            }
+        };
+        mRetries.put(identity, retry);
+        mCoreThread.postDelayed(retry, delay);
+    }
+
+    private void cancelRetry(String identity) {
+        Runnable retry = mRetries.remove(identity);
+        if (retry != null) {
+            mCoreThread.removeCallbacks(retry);
+        }
+        mSuspended.remove(identity);
+    }
+
+    private void resume(String identity) {
+        if (mLc == null || !mSuspended.remove(identity)) {
+            return;
+        }
+        for (LinphoneProxyConfig proxyConfig : mLc.getProxyConfigList()) {
+            if (identity.equals(AccountPool.identityOf(proxyConfig))) {
+                Log.d(TAG, "Retry registration of " + identity);
+                setRegisterEnabled(proxyConfig, true);
+                LinphoneManager.wakeUp();
+                return;
+            }
+        }
+    }
+
+    private static void setRegisterEnabled(LinphoneProxyConfig proxyConfig, boolean enabled) {
+        proxyConfig.edit();
+        proxyConfig.enableRegister(enabled);
+        proxyConfig.done();
+    }
+
+    private Health healthOf(String identity) {
+        Health health = mHealth.get(identity);
+        if (health == null) {
+            health = new Health();
+            Health previous = mHealth.putIfAbsent(identity, health);
+            if (previous != null) {
+                health = previous;
+            }
+        }
+        return health;
+    }
+
+    /**
+     * 单个账号的注册统计
+     */
+    public static class Health {
+        private final AtomicInteger mAttempts = new AtomicInteger();
+        private final AtomicInteger mSuccesses = new AtomicInteger();
+        private final AtomicIntegerArray mFailures = new AtomicIntegerArray(FailureClass.values().length);
+        private final LatencyHistogram mLatency = new LatencyHistogram();
+        private volatile int mConsecutiveFailures;
+        private volatile long mLastSuccessTime;
+        private volatile FailureClass mLastFailureClass;
+
+        /**
+         * 发出的 REGISTER 次数，包括刷新
+         * @return 次数
+         */
+        public int getAttempts() {
+            return mAttempts.get();
+        }
+
+        public int getSuccesses() {
+            return mSuccesses.get();
+        }
+
+        /**
+         * 某类原因的失败次数
+         * @param failureClass 失败原因分类
+         * @return 次数
+         */
+        public int getFailures(FailureClass failureClass) {
+            return mFailures.get(failureClass.ordinal());
+        }
+
+        /**
+         * 总失败次数
+         * @return 次数
+         */
+        public int getFailures() {
+            int total = 0;
+            for (int i = 0; i < mFailures.length(); i++) {
+                total += mFailures.get(i);
+            }
+            return total;
+        }
+
+        public int getConsecutiveFailures() {
+            return mConsecutiveFailures;
+        }
+
+        /**
+         * 最近一次注册成功的时间
+         * @return SystemClock.elapsedRealtime() 时间，ms，未成功过时返回 0
+         */
+        public long getLastSuccessTime() {
+            return mLastSuccessTime;
+        }
+
+        /**
+         * 最近一次失败的原因分类
+         * @return FailureClass，未失败过时返回 null
+         */
+        public FailureClass getLastFailureClass() {
+            return mLastFailureClass;
+        }
+
+        /**
+         * REGISTER 往返耗时，RegistrationProgress 到 Ok 或 Failed
+         * @return LatencyHistogram
+         */
+        public LatencyHistogram getLatency() {
+            return mLatency;
+        }
+    }
+}
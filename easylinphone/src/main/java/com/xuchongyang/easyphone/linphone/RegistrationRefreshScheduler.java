@@ -0,0 +1,255 @@
+package com.xuchongyang.easyphone.linphone;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.PowerManager;
+import android.os.SystemClock;
+
+import org.linphone.core.LinphoneCore;
+import org.linphone.core.LinphoneProxyConfig;
+import org.linphone.mediastream.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 注册刷新调度：根据各账号注册的实际有效期计算下一次唤醒时间，只设置一个单次闹钟
+ * 到期时间相近的账号合并到同一次唤醒中刷新，唤醒时间加入随机抖动，避免大量设备同时刷新
+ * 除构造方法外所有方法在 Linphone 核心线程中调用
+ */
+
+public class RegistrationRefreshScheduler {
+    private static final String TAG = "RegistrationRefresh";
+    /**
+     * 在有效期的该比例处刷新，与 liblinphone 自身的刷新时机一致
+     */
+    private static final float REFRESH_RATIO = 0.9f;
+    /**
+     * 抖动上限占有效期的比例
+     */
+    private static final float JITTER_RATIO = 0.05f;
+    private static final long MAX_JITTER_MILLIS = 30000;
+    /**
+     * 在该时间窗口内到期的账号合并刷新
+     */
+    private static final long COALESCE_WINDOW_MILLIS = 60000;
+    /**
+     * 刷新后未收到结果时的重试间隔
+     */
+    private static final long RETRY_MILLIS = 60000;
+    private static final long MIN_INTERVAL_MILLIS = 15000;
+    /**
+     * 唤醒后保持 CPU 运行的最长时间，等待 REGISTER 响应
+     */
+    private static final long WAKE_LOCK_TIMEOUT_MILLIS = 10000;
+
+    private final AlarmManager mAlarmManager;
+    private final PendingIntent mPendingIntent;
+    private final PowerManager.WakeLock mWakeLock;
+    private final Map<String, Account> mAccounts = new HashMap<>();
+    private final Random mRandom = new Random();
+    private LinphoneCore mLc;
+    private long mNatKeepAliveMillis;
+    private long mScheduledTime;
+    private int mPendingRefreshes;
+
+    RegistrationRefreshScheduler(Context context) {
+        mAlarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        Intent intent = new Intent(context, KeepAliveHandler.class);
+        mPendingIntent = PendingIntent.getBroadcast(context, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+        PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        mWakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, TAG);
+        mWakeLock.setReferenceCounted(false);
+    }
+
+    /**
+     * 开始调度
+     * @param linphoneCore LinphoneCore
+     */
+    void start(LinphoneCore linphoneCore) {
+        mLc = linphoneCore;
+        reschedule();
+    }
+
+    /**
+     * 停止调度并取消闹钟
+     */
+    void stop() {
+        mLc = null;
+        mAccounts.clear();
+        mAlarmManager.cancel(mPendingIntent);
+        mScheduledTime = 0;
+        releaseWakeLock();
+    }
+
+    /**
+     * 设置 NAT 保活间隔，UDP 传输下为保持 NAT 映射，已注册时至少按该间隔唤醒一次
+     * @param intervalMillis 间隔，小于等于 0 表示只按注册有效期唤醒
+     */
+    void setNatKeepAliveMillis(long intervalMillis) {
+        mNatKeepAliveMillis = intervalMillis;
+        reschedule();
+    }
+
+    /**
+     * 注册状态变化
+     * @param proxyConfig 账号
+     * @param state 注册状态
+     */
+    void onRegistrationState(LinphoneProxyConfig proxyConfig, LinphoneCore.RegistrationState state) {
+        if (proxyConfig == null) {
+            return;
+        }
+        String key = proxyConfig.getIdentity();
+        Account account = mAccounts.get(key);
+        if (state == LinphoneCore.RegistrationState.RegistrationOk) {
+            if (account == null) {
+                account = new Account();
+                mAccounts.put(key, account);
+            }
+            account.mRefreshTime = refreshTime(SystemClock.elapsedRealtime(), proxyConfig.getExpires(),
+                    mRandom.nextFloat());
+            onRefreshFinished(account);
+        } else if (state == LinphoneCore.RegistrationState.RegistrationFailed
+                || state == LinphoneCore.RegistrationState.RegistrationCleared
+                || state == LinphoneCore.RegistrationState.RegistrationNone) {
+            // 失败后 RegistrationMonitor 关闭账号的注册，按退避时间恢复；暂停期间不再为其唤醒，恢复后注册成功时重新加入
+            if (account != null) {
+                mAccounts.remove(key);
+                onRefreshFinished(account);
+            }
+        } else {
+            return;
+        }
+        reschedule();
+    }
+
+    /**
+     * 闹钟广播到达时持有唤醒锁，可在任意线程调用；由 onAlarm 释放或超时释放
+     */
+    void acquireWakeLock() {
+        mWakeLock.acquire(WAKE_LOCK_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * 闹钟触发，刷新即将到期的账号，调用前已持有唤醒锁
+     */
+    void onAlarm() {
+        mScheduledTime = 0;
+        if (mLc == null) {
+            releaseWakeLock();
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        boolean keepAliveDue = mNatKeepAliveMillis > 0 && !mAccounts.isEmpty();
+        int refreshed = 0;
+        for (LinphoneProxyConfig proxyConfig : mLc.getProxyConfigList()) {
+            Account account = mAccounts.get(proxyConfig.getIdentity());
+            if (account == null || account.mRefreshTime - now > COALESCE_WINDOW_MILLIS) {
+                continue;
+            }
+            account.mRefreshing = true;
+            account.mRefreshTime = now + RETRY_MILLIS;
+            proxyConfig.refreshRegister();
+            refreshed++;
+        }
+        Log.d(TAG, "Alarm, refreshed " + refreshed + " of " + mAccounts.size() + " accounts");
+        if (refreshed > 0 || keepAliveDue) {
+            // 保持 CPU 运行直到收到注册结果，NAT 保活由 liblinphone 在 iterate 中发送
+            mPendingRefreshes += refreshed;
+            mWakeLock.acquire(WAKE_LOCK_TIMEOUT_MILLIS);
+            LinphoneManager.wakeUp();
+        }
+        if (mPendingRefreshes == 0) {
+            releaseWakeLock();
+        }
+        reschedule();
+    }
+
+    private void onRefreshFinished(Account account) {
+        if (account.mRefreshing) {
+            account.mRefreshing = false;
+            if (--mPendingRefreshes <= 0) {
+                mPendingRefreshes = 0;
+                releaseWakeLock();
+            }
+        }
+    }
+
+    private void releaseWakeLock() {
+        if (mWakeLock.isHeld()) {
+            mWakeLock.release();
+        }
+    }
+
+    private void reschedule() {
+        if (mLc == null) {
+            return;
+        }
+        long earliest = Long.MAX_VALUE;
+        for (Account account : mAccounts.values()) {
+            earliest = Math.min(earliest, account.mRefreshTime);
+        }
+        long now = SystemClock.elapsedRealtime();
+        long next = nextWakeupTime(now, earliest, mAccounts.isEmpty() ? 0 : mNatKeepAliveMillis);
+        if (next == Long.MAX_VALUE) {
+            if (mScheduledTime != 0) {
+                mAlarmManager.cancel(mPendingIntent);
+                mScheduledTime = 0;
+            }
+            return;
+        }
+        if (next == mScheduledTime) {
+            return;
+        }
+        mScheduledTime = next;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            // 允许系统把唤醒与其他闹钟对齐，窗口在合并范围内不影响刷新
+            mAlarmManager.setWindow(AlarmManager.ELAPSED_REALTIME_WAKEUP, next, COALESCE_WINDOW_MILLIS / 2,
+                    mPendingIntent);
+        } else {
+            mAlarmManager.set(AlarmManager.ELAPSED_REALTIME_WAKEUP, next, mPendingIntent);
+        }
+        Log.d(TAG, "Next refresh wakeup in " + (next - now) + " ms");
+    }
+
+    /**
+     * 计算注册成功后的刷新时间：在有效期的 {@link #REFRESH_RATIO} 处，再提前一个随机抖动
+     * @param now 注册成功的时间
+     * @param expiresSeconds 注册有效期，秒
+     * @param random [0, 1) 的随机数，决定抖动大小
+     * @return 刷新时间
+     */
+    static long refreshTime(long now, int expiresSeconds, float random) {
+        long expiresMillis = expiresSeconds * 1000L;
+        long jitter = (long) (random * Math.min(MAX_JITTER_MILLIS, expiresMillis * JITTER_RATIO));
+        return now + (long) (expiresMillis * REFRESH_RATIO) - jitter;
+    }
+
+    /**
+     * 计算下一次唤醒时间，不早于 {@link #MIN_INTERVAL_MILLIS} 之后
+     * @param now 当前时间
+     * @param earliestRefreshTime 最早的刷新时间，没有账号时为 Long.MAX_VALUE
+     * @param natKeepAliveMillis NAT 保活间隔，小于等于 0 表示不需要保活
+     * @return 唤醒时间，无需唤醒时返回 Long.MAX_VALUE
+     */
+    static long nextWakeupTime(long now, long earliestRefreshTime, long natKeepAliveMillis) {
+        long next = earliestRefreshTime;
+        if (natKeepAliveMillis > 0) {
+            next = Math.min(next, now + natKeepAliveMillis);
+        }
+        if (next == Long.MAX_VALUE) {
+            return next;
+        }
+        return Math.max(next, now + MIN_INTERVAL_MILLIS);
+    }
+
+    private static class Account {
+        long mRefreshTime;
+        boolean mRefreshing;
+    }
+}
@@ -0,0 +1,210 @@
+package com.xuchongyang.easyphone.linphone;
+
+import android.os.Looper;
+import android.os.SystemClock;
+
+import org.linphone.mediastream.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 卡顿监控：统计 iterate()、核心线程命令和回调分发的耗时，超过阈值的记为一次卡顿
+ * iterate() 包含 liblinphone 及库内监听的处理，回调分发是应用代码，可据此区分卡顿来源
+ * 可在任意线程调用
+ */
+
+public class StallWatchdog {
+    private static final String TAG = "StallWatchdog";
+    /**
+     * 默认阈值，60 fps 下一帧的时间
+     */
+    public static final long DEFAULT_THRESHOLD_MILLIS = 16;
+    private static final int MAX_RECENT_STALLS = 32;
+
+    private static volatile StallWatchdog sInstance;
+    private final ConcurrentHashMap<String, SourceStats> mSources = new ConcurrentHashMap<>();
+    private final ArrayDeque<Stall> mRecentStalls = new ArrayDeque<>(MAX_RECENT_STALLS);
+    private volatile long mThresholdNanos = DEFAULT_THRESHOLD_MILLIS * 1000000L;
+
+    /**
+     * 获取 StallWatchdog 实例
+     * @return StallWatchdog 实例
+     */
+    public static StallWatchdog getInstance() {
+        if (sInstance == null) {
+            synchronized (StallWatchdog.class) {
+                if (sInstance == null) {
+                    sInstance = new StallWatchdog();
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    private StallWatchdog() {
+    }
+
+    /**
+     * 设置卡顿阈值
+     * @param thresholdMillis 阈值，ms
+     */
+    public void setThresholdMillis(long thresholdMillis) {
+        mThresholdNanos = Math.max(1, thresholdMillis) * 1000000L;
+    }
+
+    /**
+     * 结束一段计时，超过阈值时记录卡顿
+     * @param source 来源，如 iterate、callback:incoming_call
+     * @param startNanos 开始时间，System.nanoTime()
+     */
+    public void end(String source, long startNanos) {
+        long duration = System.nanoTime() - startNanos;
+        if (duration >= mThresholdNanos) {
+            record(source, duration);
+        }
+    }
+
+    /**
+     * 计算耗时，来源名称需要拼接时先调用此方法，超过阈值再拼接并调用 record
+     * @param startNanos 开始时间，System.nanoTime()
+     * @return 超过阈值时返回耗时，ns，否则返回 -1
+     */
+    public long stallNanos(long startNanos) {
+        long duration = System.nanoTime() - startNanos;
+        return duration >= mThresholdNanos ? duration : -1;
+    }
+
+    /**
+     * 记录一次卡顿
+     * @param source 来源
+     * @param durationNanos 耗时，ns
+     */
+    public void record(String source, long durationNanos) {
+        long durationMillis = durationNanos / 1000000L;
+        boolean mainThread = Looper.myLooper() == Looper.getMainLooper();
+        Stall stall = new Stall(source, durationMillis, Thread.currentThread().getName(),
+                SystemClock.elapsedRealtime());
+        SourceStats stats = mSources.get(source);
+        if (stats == null) {
+            stats = new SourceStats();
+            SourceStats previous = mSources.putIfAbsent(source, stats);
+            if (previous != null) {
+                stats = previous;
+            }
+        }
+        stats.mCount.incrementAndGet();
+        long worst = stats.mWorstMillis.get();
+        while (durationMillis > worst && !stats.mWorstMillis.compareAndSet(worst, durationMillis)) {
+            worst = stats.mWorstMillis.get();
+        }
+        synchronized (mRecentStalls) {
+            if (mRecentStalls.size() == MAX_RECENT_STALLS) {
+                mRecentStalls.removeFirst();
+            }
+            mRecentStalls.addLast(stall);
+        }
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        registry.counter(mainThread ? "stall.main_thread" : "stall.other_thread").increment();
+        registry.histogram("stall.duration").record(durationMillis);
+        Log.w(TAG, "Stall " + durationMillis + " ms in " + source + " on " + stall.getThreadName());
+    }
+
+    /**
+     * 各来源的卡顿次数
+     * @return 来源到次数的映射
+     */
+    public Map<String, Integer> getCounts() {
+        Map<String, Integer> counts = new TreeMap<>();
+        for (Map.Entry<String, SourceStats> entry : mSources.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().mCount.get());
+        }
+        return counts;
+    }
+
+    /**
+     * 各来源最长的一次卡顿
+     * @return 来源到耗时（ms）的映射
+     */
+    public Map<String, Long> getWorstCases() {
+        Map<String, Long> worst = new TreeMap<>();
+        for (Map.Entry<String, SourceStats> entry : mSources.entrySet()) {
+            worst.put(entry.getKey(), entry.getValue().mWorstMillis.get());
+        }
+        return worst;
+    }
+
+    /**
+     * 最近的卡顿，最多保留 32 条
+     * @return 按时间排序的卡顿列表
+     */
+    public List<Stall> getRecentStalls() {
+        synchronized (mRecentStalls) {
+            return Collections.unmodifiableList(new ArrayList<>(mRecentStalls));
+        }
+    }
+
+    /**
+     * 清空统计
+     */
+    public void reset() {
+        mSources.clear();
+        synchronized (mRecentStalls) {
+            mRecentStalls.clear();
+        }
+    }
+
+    private static class SourceStats {
+        final AtomicInteger mCount = new AtomicInteger();
+        final AtomicLong mWorstMillis = new AtomicLong();
+    }
+
+    /**
+     * 一次卡顿记录
+     */
+    public static class Stall {
+        private final String mSource;
+        private final long mDurationMillis;
+        private final String mThreadName;
+        private final long mTime;
+
+        Stall(String source, long durationMillis, String threadName, long time) {
+            mSource = source;
+            mDurationMillis = durationMillis;
+            mThreadName = threadName;
+            mTime = time;
+        }
+
+        public String getSource() {
+            return mSource;
+        }
+
+        public long getDurationMillis() {
+            return mDurationMillis;
+        }
+
+        public String getThreadName() {
+            return mThreadName;
+        }
+
+        /**
+         * 发生时间
+         * @return SystemClock.elapsedRealtime() 时间，ms
+         */
+        public long getTime() {
+            return mTime;
+        }
+
+        @Override
+        public String toString() {
+            return mSource + " " + mDurationMillis + " ms on " + mThreadName;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.xuchongyang.easyphone.linphone;
+
+import android.os.Process;
+
+import org.linphone.mediastream.Log;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 冷启动阶段耗时追踪，记录 LinphoneService 启动到首次注册成功之间各阶段的起止时间
+ * 采样保存在预分配的数组中，记录过程不产生新对象，可在任意线程调用
+ * 结果可输出为文本汇总或 Chrome trace JSON（chrome://tracing 打开）
+ */
+
+public class StartupTracer {
+    private static final String TAG = "StartupTracer";
+    private static final int CAPACITY = 64;
+    private static final long INSTANT = -1;
+
+    private static volatile StartupTracer sInstance;
+    private final String[] mNames = new String[CAPACITY];
+    private final long[] mStartNanos = new long[CAPACITY];
+    private final long[] mEndNanos = new long[CAPACITY];
+    private final long[] mThreadIds = new long[CAPACITY];
+    private final String[] mThreadNames = new String[CAPACITY];
+    private final AtomicInteger mCount = new AtomicInteger();
+    private volatile boolean mRecording;
+    private volatile long mOriginNanos;
+
+    /**
+     * 获取 StartupTracer 实例
+     * @return StartupTracer 实例
+     */
+    public static StartupTracer getInstance() {
+        if (sInstance == null) {
+            synchronized (StartupTracer.class) {
+                if (sInstance == null) {
+                    sInstance = new StartupTracer();
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    private StartupTracer() {
+    }
+
+    /**
+     * 清空之前的记录并开始记录，时间以此刻为起点
+     */
+    public synchronized void start() {
+        mRecording = false;
+        mCount.set(0);
+        mOriginNanos = System.nanoTime();
+        mRecording = true;
+    }
+
+    /**
+     * 开始一个阶段
+     * @param name 阶段名称，应使用常量字符串
+     * @return 阶段 ID，用于 {@link #end(int)}；未在记录或缓冲区已满时返回 -1
+     */
+    public int begin(String name) {
+        if (!mRecording) {
+            return -1;
+        }
+        int id = mCount.getAndIncrement();
+        if (id >= CAPACITY) {
+            return -1;
+        }
+        Thread thread = Thread.currentThread();
+        mNames[id] = name;
+        mThreadIds[id] = thread.getId();
+        mThreadNames[id] = thread.getName();
+        mEndNanos[id] = 0;
+        mStartNanos[id] = System.nanoTime();
+        return id;
+    }
+
+    /**
+     * 结束一个阶段
+     * @param id {@link #begin(String)} 返回的阶段 ID
+     */
+    public void end(int id) {
+        if (id >= 0 && id < CAPACITY && mRecording) {
+            mEndNanos[id] = System.nanoTime();
+        }
+    }
+
+    /**
+     * 记录一个时间点
+     * @param name 名称
+     */
+    public void mark(String name) {
+        int id = begin(name);
+        if (id >= 0) {
+            mEndNanos[id] = INSTANT;
+        }
+    }
+
+    /**
+     * 记录最后一个时间点并停止记录，输出汇总日志，之后的调用被忽略直到再次 {@link #start()}
+     * @param name 名称
+     */
+    public void finish(String name) {
+        if (!mRecording) {
+            return;
+        }
+        mark(name);
+        mRecording = false;
+        Log.i(TAG, getSummary());
+    }
+
+    /**
+     * 是否正在记录
+     * @return 是否正在记录
+     */
+    public boolean isRecording() {
+        return mRecording;
+    }
+
+    /**
+     * 文本汇总，每行一个阶段：起始偏移、耗时、线程、名称
+     * @return 汇总
+     */
+    public synchronized String getSummary() {
+        int count = Math.min(mCount.get(), CAPACITY);
+        StringBuilder builder = new StringBuilder("Startup trace, ").append(count).append(" events\n");
+        for (int i = 0; i < count; i++) {
+            builder.append(String.format("%8.2f ms ", (mStartNanos[i] - mOriginNanos) / 1e6));
+            long end = mEndNanos[i];
+            if (end == INSTANT) {
+                builder.append("       *   ");
+            } else if (end == 0) {
+                builder.append(" running   ");
+            } else {
+                builder.append(String.format("%8.2f ms ", (end - mStartNanos[i]) / 1e6));
+            }
+            builder.append('[').append(mThreadNames[i]).append("] ").append(mNames[i]).append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 输出 Chrome trace JSON，时间单位为微秒
+     * @return JSON 字符串
+     */
+    public synchronized String toChromeTrace() {
+        int count = Math.min(mCount.get(), CAPACITY);
+        int pid = Process.myPid();
+        StringBuilder builder = new StringBuilder("{\"traceEvents\":[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append("{\"name\":\"").append(escape(mNames[i]))
+                    .append("\",\"cat\":\"startup\",\"pid\":").append(pid)
+                    .append(",\"tid\":").append(mThreadIds[i])
+                    .append(",\"ts\":").append((mStartNanos[i] - mOriginNanos) / 1000);
+            long end = mEndNanos[i];
+            if (end == INSTANT) {
+                builder.append(",\"ph\":\"i\",\"s\":\"g\"}");
+            } else {
+                // 未结束的阶段按到当前为止计算
+                long duration = (end == 0 ? System.nanoTime() : end) - mStartNanos[i];
+                builder.append(",\"ph\":\"X\",\"dur\":").append(duration / 1000).append('}');
+            }
+        }
+        // 线程名称元数据
+        for (int i = 0; i < count; i++) {
+            if (isFirstOfThread(i)) {
+                builder.append(",{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":").append(pid)
+                        .append(",\"tid\":").append(mThreadIds[i])
+                        .append(",\"args\":{\"name\":\"").append(escape(mThreadNames[i])).append("\"}}");
+            }
+        }
+        return builder.append("]}").toString();
+    }
+
+    private boolean isFirstOfThread(int index) {
+        for (int i = 0; i < index; i++) {
+            if (mThreadIds[i] == mThreadIds[index]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -0,0 +1,162 @@
+package com.xuchongyang.easyphone.linphone;
+
+import android.os.SystemClock;
+
+import org.linphone.core.LinphoneCall;
+import org.linphone.core.LinphoneCallParams;
+import org.linphone.core.LinphoneCore;
+import org.linphone.mediastream.Log;
+
+import java.util.List;
+
+/**
+ * 视频质量自适应控制器，根据通话中的视频流统计逐级调整分辨率、帧率和带宽
+ * getCurrentLevel 可在任意线程调用，其他方法在 Linphone 核心线程中调用
+ */
+
+public class VideoQualityController implements CallStatsCollector.Listener {
+    private static final String TAG = "VideoQualityController";
+    private volatile VideoQualityPolicy mPolicy;
+    private LinphoneCore mLc;
+    private volatile int mCurrentLevel;
+    private int mStepDownCount;
+    private int mStepUpCount;
+    private long mLastChangeTime;
+    private int mMaxBandwidthKbps;
+
+    VideoQualityController(VideoQualityPolicy policy) {
+        mPolicy = policy;
+        mCurrentLevel = policy.getInitialLevel();
+    }
+
+    /**
+     * 开始工作，并应用初始档位
+     * @param linphoneCore LinphoneCore
+     */
+    void start(LinphoneCore linphoneCore) {
+        mLc = linphoneCore;
+        reset();
+        CallStatsCollector.getInstance().addListener(this);
+    }
+
+    void stop() {
+        CallStatsCollector.getInstance().removeListener(this);
+        mLc = null;
+    }
+
+    /**
+     * 更换调整策略，并回到新策略的初始档位
+     * @param policy VideoQualityPolicy
+     */
+    void setPolicy(VideoQualityPolicy policy) {
+        // 未启动时也回到新策略的初始档位，旧档位序号可能超出新策略的档位数
+        mCurrentLevel = policy.getInitialLevel();
+        mPolicy = policy;
+        mStepDownCount = 0;
+        mStepUpCount = 0;
+        if (mLc != null) {
+            reset();
+        }
+    }
+
+    /**
+     * 设置带宽上限，各档位的带宽不超过该值，对之后的通话和档位调整生效
+     * @param kbps 上限，kbit/s，小于等于 0 表示不限制
+     */
+    void setMaxBandwidth(int kbps) {
+        mMaxBandwidthKbps = Math.max(0, kbps);
+        if (mLc != null) {
+            int bandwidth = bandwidthOf(getCurrentLevel());
+            mLc.setUploadBandwidth(bandwidth);
+            mLc.setDownloadBandwidth(bandwidth);
+        }
+    }
+
+    /**
+     * 通话释放，没有其他通话时回到初始档位
+     */
+    void onCallReleased() {
+        if (mLc != null && mLc.getCallsNb() == 0) {
+            reset();
+        }
+    }
+
+    /**
+     * 获取当前档位
+     * @return VideoQualityLevel
+     */
+    public VideoQualityLevel getCurrentLevel() {
+        // 可在其他线程调用，更换策略期间可能读到新策略和旧档位
+        List<VideoQualityLevel> levels = mPolicy.getLevels();
+        return levels.get(Math.min(mCurrentLevel, levels.size() - 1));
+    }
+
+    @Override
+    public void onCallStatsUpdated(LinphoneCall linphoneCall, CallStatsSummary summary) {
+        if (mLc == null || summary == null || !summary.isVideo()
+                || linphoneCall.getState() != LinphoneCall.State.StreamsRunning) {
+            return;
+        }
+        LinphoneCallParams params = linphoneCall.getCurrentParams();
+        if (params == null || !params.getVideoEnabled()) {
+            return;
+        }
+
+        int advice = mPolicy.evaluate(summary, mCurrentLevel);
+        if (advice == VideoQualityPolicy.STEP_DOWN) {
+            mStepDownCount++;
+            mStepUpCount = 0;
+        } else if (advice == VideoQualityPolicy.STEP_UP) {
+            mStepUpCount++;
+            mStepDownCount = 0;
+        } else {
+            mStepDownCount = 0;
+            mStepUpCount = 0;
+        }
+
+        if (SystemClock.elapsedRealtime() - mLastChangeTime < mPolicy.getCooldownMillis()) {
+            return;
+        }
+        if (mStepDownCount >= mPolicy.getStepDownSamples() && mCurrentLevel > 0) {
+            applyLevel(mCurrentLevel - 1, linphoneCall);
+        } else if (mStepUpCount >= mPolicy.getStepUpSamples()
+                && mCurrentLevel < mPolicy.getLevels().size() - 1) {
+            applyLevel(mCurrentLevel + 1, linphoneCall);
+        }
+    }
+
+    private void reset() {
+        applyLevel(mPolicy.getInitialLevel(), null);
+    }
+
+    /**
+     * 应用档位，通话中时通过 re-INVITE 让新参数生效
+     * @param level 档位序号
+     * @param linphoneCall 正在进行的通话，可为 null
+     */
+    private void applyLevel(int level, LinphoneCall linphoneCall) {
+        VideoQualityLevel quality = mPolicy.getLevels().get(level);
+        Log.i(TAG, "Video quality level " + mCurrentLevel + " -> " + level + " (" + quality + ")");
+        mCurrentLevel = level;
+        mStepDownCount = 0;
+        mStepUpCount = 0;
+        mLastChangeTime = SystemClock.elapsedRealtime();
+
+        mLc.setPreferredVideoSizeByName(quality.getVideoSize());
+        mLc.setPreferredFramerate(quality.getFramerate());
+        int bandwidth = bandwidthOf(quality);
+        mLc.setUploadBandwidth(bandwidth);
+        mLc.setDownloadBandwidth(bandwidth);
+        if (linphoneCall != null) {
+            mLc.updateCall(linphoneCall, null);
+        }
+    }
+
+    private int bandwidthOf(VideoQualityLevel quality) {
+        int bandwidth = quality.getBandwidthKbps();
+        if (mMaxBandwidthKbps > 0 && (bandwidth <= 0 || bandwidth > mMaxBandwidthKbps)) {
+            return mMaxBandwidthKbps;
+        }
+        return bandwidth;
+    }
+}
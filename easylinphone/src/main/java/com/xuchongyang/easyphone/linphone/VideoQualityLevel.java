@@ -0,0 +1,40 @@
+package com.xuchongyang.easyphone.linphone;
+
+/**
+ * 视频质量档位：分辨率、帧率、带宽上限
+ */
+
+public class VideoQualityLevel {
+    private final String mVideoSize;
+    private final float mFramerate;
+    private final int mBandwidthKbps;
+
+    /**
+     * 构造方法
+     * @param videoSize 分辨率名称，如 qvga、vga、720p
+     * @param framerate 帧率
+     * @param bandwidthKbps 上下行带宽上限，kbit/s
+     */
+    public VideoQualityLevel(String videoSize, float framerate, int bandwidthKbps) {
+        mVideoSize = videoSize;
+        mFramerate = framerate;
+        mBandwidthKbps = bandwidthKbps;
+    }
+
+    public String getVideoSize() {
+        return mVideoSize;
+    }
+
+    public float getFramerate() {
+        return mFramerate;
+    }
+
+    public int getBandwidthKbps() {
+        return mBandwidthKbps;
+    }
+
+    @Override
+    public String toString() {
+        return mVideoSize + "@" + mFramerate + "fps/" + mBandwidthKbps + "kbps";
+    }
+}
@@ -0,0 +1,51 @@
+package com.xuchongyang.easyphone.linphone;
+
+import java.util.List;
+
+/**
+ * 视频质量调整策略
+ */
+
+public interface VideoQualityPolicy {
+    int STEP_DOWN = -1;
+    int HOLD = 0;
+    int STEP_UP = 1;
+
+    /**
+     * 可用的质量档位，按质量从低到高排列
+     * @return 档位列表
+     */
+    List<VideoQualityLevel> getLevels();
+
+    /**
+     * 通话开始时使用的档位
+     * @return 档位序号
+     */
+    int getInitialLevel();
+
+    /**
+     * 根据一次视频流统计给出调整建议
+     * @param summary 视频流统计快照
+     * @param currentLevel 当前档位序号
+     * @return STEP_DOWN、HOLD 或 STEP_UP
+     */
+    int evaluate(CallStatsSummary summary, int currentLevel);
+
+    /**
+     * 连续多少次 STEP_DOWN 建议后降档
+     * @return 次数
+     */
+    int getStepDownSamples();
+
+    /**
+     * 连续多少次 STEP_UP 建议后升档
+     * @return 次数
+     */
+    int getStepUpSamples();
+
+    /**
+     * 两次调整之间的最短间隔
+     * @return 毫秒
+     */
+    long getCooldownMillis();
+}
@@ -0,0 +1,398 @@
+package com.xuchongyang.easyphone.service;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+
+import com.xuchongyang.easyphone.callback.PhoneCallback;
+import com.xuchongyang.easyphone.callback.RegistrationCallback;
+import com.xuchongyang.easyphone.linphone.CallSession;
+import com.xuchongyang.easyphone.linphone.CallStatsSummary;
+import com.xuchongyang.easyphone.linphone.StallWatchdog;
+
+import org.linphone.core.LinphoneCall;
+import org.linphone.core.LinphoneCore;
+
+import java.util.Locale;
+
+/**
+ * 通话、注册状态事件总线，支持多个订阅者
+ * 订阅者列表采用写时复制数组，分发时不加锁；跨线程投递使用 Message 池，分发过程不产生新对象
+ */
+
+public class LinphoneEventBus {
+    /**
+     * 通话事件
+     */
+    public enum PhoneEvent {
+        INCOMING_CALL,
+        OUTGOING_INIT,
+        CALL_CONNECTED,
+        CALL_END,
+        CALL_RELEASED,
+        ERROR,
+        CALL_STATS_UPDATED;
+
+        /**
+         * 将通话状态转换为事件
+         * @param state 通话状态
+         * @return 对应事件，无需通知时返回 null
+         */
+        public static PhoneEvent from(LinphoneCall.State state) {
+            if (state == LinphoneCall.State.IncomingReceived) {
+                return INCOMING_CALL;
+            } else if (state == LinphoneCall.State.OutgoingInit) {
+                return OUTGOING_INIT;
+            } else if (state == LinphoneCall.State.Connected) {
+                return CALL_CONNECTED;
+            } else if (state == LinphoneCall.State.CallEnd) {
+                return CALL_END;
+            } else if (state == LinphoneCall.State.CallReleased) {
+                return CALL_RELEASED;
+            } else if (state == LinphoneCall.State.Error) {
+                return ERROR;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 注册事件
+     */
+    public enum RegistrationEvent {
+        NONE,
+        PROGRESS,
+        OK,
+        CLEARED,
+        FAILED;
+
+        /**
+         * 将注册状态转换为事件
+         * @param state 注册状态
+         * @return 对应事件，未知状态返回 null
+         */
+        public static RegistrationEvent from(LinphoneCore.RegistrationState state) {
+            if (state == LinphoneCore.RegistrationState.RegistrationNone) {
+                return NONE;
+            } else if (state == LinphoneCore.RegistrationState.RegistrationProgress) {
+                return PROGRESS;
+            } else if (state == LinphoneCore.RegistrationState.RegistrationOk) {
+                return OK;
+            } else if (state == LinphoneCore.RegistrationState.RegistrationCleared) {
+                return CLEARED;
+            } else if (state == LinphoneCore.RegistrationState.RegistrationFailed) {
+                return FAILED;
+            }
+            return null;
+        }
+    }
+
+    private static final PhoneSubscriber[] NO_PHONE_SUBSCRIBERS = new PhoneSubscriber[0];
+    private static final RegistrationSubscriber[] NO_REGISTRATION_SUBSCRIBERS = new RegistrationSubscriber[0];
+    private static final PhoneEvent[] PHONE_EVENTS = PhoneEvent.values();
+    private static final RegistrationEvent[] REGISTRATION_EVENTS = RegistrationEvent.values();
+    private static final String[] PHONE_EVENT_SOURCES = sourceNames("callback:phone:", PHONE_EVENTS);
+    private static final String[] REGISTRATION_EVENT_SOURCES =
+            sourceNames("callback:registration:", REGISTRATION_EVENTS);
+
+    private volatile PhoneSubscriber[] mPhoneSubscribers = NO_PHONE_SUBSCRIBERS;
+    private volatile RegistrationSubscriber[] mRegistrationSubscribers = NO_REGISTRATION_SUBSCRIBERS;
+
+    /**
+     * 添加通话回调
+     * @param callback 通话回调
+     * @param looper 回调执行所在的 Looper，为 null 时直接在 Linphone 核心线程中回调
+     */
+    public synchronized void addPhoneCallback(PhoneCallback callback, Looper looper) {
+        if (callback == null || indexOf(mPhoneSubscribers, callback) >= 0) {
+            return;
+        }
+        PhoneSubscriber[] old = mPhoneSubscribers;
+        PhoneSubscriber[] subscribers = new PhoneSubscriber[old.length + 1];
+        System.arraycopy(old, 0, subscribers, 0, old.length);
+        subscribers[old.length] = new PhoneSubscriber(callback, looper);
+        mPhoneSubscribers = subscribers;
+    }
+
+    /**
+     * 移除通话回调
+     * @param callback 通话回调
+     */
+    public synchronized void removePhoneCallback(PhoneCallback callback) {
+        PhoneSubscriber[] old = mPhoneSubscribers;
+        int index = indexOf(old, callback);
+        if (index < 0) {
+            return;
+        }
+        old[index].cancel();
+        mPhoneSubscribers = (PhoneSubscriber[]) remove(old, index, new PhoneSubscriber[old.length - 1]);
+    }
+
+    /**
+     * 添加注册状态回调
+     * @param callback 注册状态回调
+     * @param looper 回调执行所在的 Looper，为 null 时直接在 Linphone 核心线程中回调
+     */
+    public synchronized void addRegistrationCallback(RegistrationCallback callback, Looper looper) {
+        if (callback == null || indexOf(mRegistrationSubscribers, callback) >= 0) {
+            return;
+        }
+        RegistrationSubscriber[] old = mRegistrationSubscribers;
+        RegistrationSubscriber[] subscribers = new RegistrationSubscriber[old.length + 1];
+        System.arraycopy(old, 0, subscribers, 0, old.length);
+        subscribers[old.length] = new RegistrationSubscriber(callback, looper);
+        mRegistrationSubscribers = subscribers;
+    }
+
+    /**
+     * 移除注册状态回调
+     * @param callback 注册状态回调
+     */
+    public synchronized void removeRegistrationCallback(RegistrationCallback callback) {
+        RegistrationSubscriber[] old = mRegistrationSubscribers;
+        int index = indexOf(old, callback);
+        if (index < 0) {
+            return;
+        }
+        old[index].cancel();
+        mRegistrationSubscribers = (RegistrationSubscriber[]) remove(old, index,
+                new RegistrationSubscriber[old.length - 1]);
+    }
+
+    /**
+     * 移除所有通话回调
+     */
+    public synchronized void clearPhoneCallbacks() {
+        for (PhoneSubscriber subscriber : mPhoneSubscribers) {
+            subscriber.cancel();
+        }
+        mPhoneSubscribers = NO_PHONE_SUBSCRIBERS;
+    }
+
+    /**
+     * 移除所有注册状态回调
+     */
+    public synchronized void clearRegistrationCallbacks() {
+        for (RegistrationSubscriber subscriber : mRegistrationSubscribers) {
+            subscriber.cancel();
+        }
+        mRegistrationSubscribers = NO_REGISTRATION_SUBSCRIBERS;
+    }
+
+    /**
+     * 分发通话状态
+     * @param session 通话，通话已释放时为 null
+     * @param state 通话状态
+     */
+    void postCallState(CallSession session, LinphoneCall.State state) {
+        PhoneEvent event = PhoneEvent.from(state);
+        if (event == null) {
+            return;
+        }
+        PhoneSubscriber[] subscribers = mPhoneSubscribers;
+        for (int i = 0; i < subscribers.length; i++) {
+            subscribers[i].post(event, session);
+        }
+    }
+
+    /**
+     * 分发通话质量统计
+     * @param summary 统计快照
+     */
+    void postCallStats(CallStatsSummary summary) {
+        PhoneSubscriber[] subscribers = mPhoneSubscribers;
+        for (int i = 0; i < subscribers.length; i++) {
+            subscribers[i].post(PhoneEvent.CALL_STATS_UPDATED.ordinal(), summary);
+        }
+    }
+
+    /**
+     * 分发注册状态
+     * @param state 注册状态
+     */
+    void postRegistrationState(LinphoneCore.RegistrationState state) {
+        RegistrationEvent event = RegistrationEvent.from(state);
+        if (event == null) {
+            return;
+        }
+        RegistrationSubscriber[] subscribers = mRegistrationSubscribers;
+        for (int i = 0; i < subscribers.length; i++) {
+            subscribers[i].post(event);
+        }
+    }
+
+    private static int indexOf(Subscriber[] subscribers, Object callback) {
+        for (int i = 0; i < subscribers.length; i++) {
+            if (subscribers[i].getCallback() == callback) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 预先生成卡顿统计使用的来源名称，分发时不拼接字符串
+     */
+    private static String[] sourceNames(String prefix, Enum<?>[] events) {
+        String[] names = new String[events.length];
+        for (int i = 0; i < events.length; i++) {
+            names[i] = prefix + events[i].name().toLowerCase(Locale.US);
+        }
+        return names;
+    }
+
+    private static Subscriber[] remove(Subscriber[] old, int index, Subscriber[] target) {
+        System.arraycopy(old, 0, target, 0, index);
+        System.arraycopy(old, index + 1, target, index, old.length - index - 1);
+        return target;
+    }
+
+    private abstract static class Subscriber implements Handler.Callback {
+        private final Handler mHandler;
+        private volatile boolean mCancelled;
+
+        Subscriber(Looper looper) {
+            mHandler = looper == null ? null : new Handler(looper, this);
+        }
+
+        abstract Object getCallback();
+
+        abstract void dispatch(int what, Object obj);
+
+        abstract String getSourceName(int what);
+
+        void post(int what, Object obj) {
+            if (mHandler == null) {
+                timedDispatch(what, obj);
+            } else {
+                Message.obtain(mHandler, what, obj).sendToTarget();
+            }
+        }
+
+        void cancel() {
+            mCancelled = true;
+            if (mHandler != null) {
+                mHandler.removeCallbacksAndMessages(null);
+            }
+        }
+
+        @Override
+        public boolean handleMessage(Message msg) {
+            if (!mCancelled) {
+                timedDispatch(msg.what, msg.obj);
+            }
+            return true;
+        }
+
+        /**
+         * 分发事件并统计应用回调的耗时
+         */
+        private void timedDispatch(int what, Object obj) {
+            long start = System.nanoTime();
+            dispatch(what, obj);
+            StallWatchdog watchdog = StallWatchdog.getInstance();
+            long stallNanos = watchdog.stallNanos(start);
+            if (stallNanos >= 0) {
+                watchdog.record(getSourceName(what), stallNanos);
+            }
+        }
+    }
+
+    private static class PhoneSubscriber extends Subscriber {
+        private final PhoneCallback mCallback;
+
+        PhoneSubscriber(PhoneCallback callback, Looper looper) {
+            super(looper);
+            mCallback = callback;
+        }
+
+        @Override
+        Object getCallback() {
+            return mCallback;
+        }
+
+        @Override
+        String getSourceName(int what) {
+            return PHONE_EVENT_SOURCES[what];
+        }
+
+        void post(PhoneEvent event, CallSession session) {
+            post(event.ordinal(), session);
+        }
+
+        @Override
+        void dispatch(int what, Object obj) {
+            switch (PHONE_EVENTS[what]) {
+                case INCOMING_CALL:
+                    mCallback.incomingCall((CallSession) obj);
+                    break;
+                case OUTGOING_INIT:
+                    mCallback.outgoingInit();
+                    break;
+                case CALL_CONNECTED:
+                    mCallback.callConnected();
+                    break;
+                case CALL_END:
+                    mCallback.callEnd();
+                    break;
+                case CALL_RELEASED:
+                    mCallback.callReleased();
+                    break;
+                case ERROR:
+                    mCallback.error();
+                    break;
+                case CALL_STATS_UPDATED:
+                    mCallback.callStatsUpdated((CallStatsSummary) obj);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private static class RegistrationSubscriber extends Subscriber {
+        private final RegistrationCallback mCallback;
+
+        RegistrationSubscriber(RegistrationCallback callback, Looper looper) {
+            super(looper);
+            mCallback = callback;
+        }
+
+        @Override
+        Object getCallback() {
+            return mCallback;
+        }
+
+        @Override
+        String getSourceName(int what) {
+            return REGISTRATION_EVENT_SOURCES[what];
+        }
+
+        void post(RegistrationEvent event) {
+            post(event.ordinal(), null);
+        }
+
+        @Override
+        void dispatch(int what, Object obj) {
+            switch (REGISTRATION_EVENTS[what]) {
+                case NONE:
+                    mCallback.registrationNone();
+                    break;
+                case PROGRESS:
+                    mCallback.registrationProgress();
+                    break;
+                case OK:
+                    mCallback.registrationOk();
+                    break;
+                case CLEARED:
+                    mCallback.registrationCleared();
+                    break;
+                case FAILED:
+                    mCallback.registrationFailed();
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
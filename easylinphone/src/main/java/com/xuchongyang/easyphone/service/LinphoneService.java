@@ -1,19 +1,21 @@
 package com.xuchongyang.easyphone.service;
 
-import android.app.AlarmManager;
-import android.app.PendingIntent;
 import android.app.Service;
-import android.content.Context;
 import android.content.Intent;
 import android.os.IBinder;
-import android.os.SystemClock;
+import android.os.Looper;
 import android.support.annotation.Nullable;
 import android.util.Log;
 
 import com.xuchongyang.easyphone.callback.PhoneCallback;
 import com.xuchongyang.easyphone.callback.RegistrationCallback;
-import com.xuchongyang.easyphone.linphone.KeepAliveHandler;
+import com.xuchongyang.easyphone.callback.ResultCallback;
+import com.xuchongyang.easyphone.linphone.CallRegistry;
+import com.xuchongyang.easyphone.linphone.CallStatsCollector;
+import com.xuchongyang.easyphone.linphone.CallStatsSummary;
 import com.xuchongyang.easyphone.linphone.LinphoneManager;
+import com.xuchongyang.easyphone.linphone.MetricsRegistry;
+import com.xuchongyang.easyphone.linphone.StartupTracer;
 
 import org.linphone.core.LinphoneAddress;
 import org.linphone.core.LinphoneAuthInfo;
@@ -33,7 +35,10 @@ import org.linphone.core.LinphoneProxyConfig;
 import org.linphone.core.PublishState;
 import org.linphone.core.SubscriptionState;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.nio.ByteBuffer;
+import java.util.concurrent.CancellationException;
 
 
 /**
@@ -43,10 +48,15 @@ import java.nio.ByteBuffer;
 
 public class LinphoneService extends Service implements LinphoneCoreListener {
     private static final String TAG = "LinphoneService";
-    private PendingIntent mKeepAlivePendingIntent;
     private static LinphoneService sInstance;
-    private static PhoneCallback sPhoneCallback;
-    private static RegistrationCallback sRegistrationCallback;
+    private static volatile ReadySignal sReadySignal = new ReadySignal();
+    private static final LinphoneEventBus sEventBus = new LinphoneEventBus();
+    private final CallStatsCollector.Listener mCallStatsListener = new CallStatsCollector.Listener() {
+        @Override
+        public void onCallStatsUpdated(LinphoneCall linphoneCall, CallStatsSummary summary) {
+            sEventBus.postCallStats(summary);
+        }
+    };
 
     @Override
     public IBinder onBind(Intent intent) {
@@ -58,66 +68,133 @@ public class LinphoneService extends Service implements LinphoneCoreListener {
      * @return 是否启动完毕
      */
     public static boolean isReady() {
-        return sInstance != null;
+        return sReadySignal.isReady();
+    }
+
+    /**
+     * 获取当前的启动完成信号
+     * @return ReadySignal
+     */
+    public static ReadySignal getReadySignal() {
+        return sReadySignal;
+    }
+
+    /**
+     * 等待 LinphoneService 启动完毕，回调在主线程中执行
+     * @param timeoutMillis 超时时长，小于等于 0 表示不超时
+     * @param callback 启动结果回调
+     */
+    public static void whenReady(long timeoutMillis, ResultCallback<Void> callback) {
+        sReadySignal.addListener(timeoutMillis, callback);
     }
 
     @Override
     public void onCreate() {
         super.onCreate();
-        LinphoneCoreFactoryImpl.instance();
-        LinphoneManager.init(LinphoneService.this);
+        final StartupTracer tracer = StartupTracer.getInstance();
+        tracer.start();
+        int span = tracer.begin("LinphoneService.onCreate");
+        final int readySpan = tracer.begin("LinphoneService.ready");
         sInstance = this;
-        // 每隔一分钟刷新注册状态
-        Intent intent = new Intent(this, KeepAliveHandler.class);
-        mKeepAlivePendingIntent = PendingIntent.getBroadcast(this, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
-        ((AlarmManager)this.getSystemService(Context.ALARM_SERVICE)).setRepeating(AlarmManager.ELAPSED_REALTIME_WAKEUP,
-                SystemClock.elapsedRealtime() + 60000, 60000, mKeepAlivePendingIntent);
+        final ReadySignal readySignal = sReadySignal;
+        CallStatsCollector.getInstance().addListener(mCallStatsListener);
+        LinphoneCoreFactoryImpl.instance();
+        LinphoneManager.init(LinphoneService.this).addCallback(new ResultCallback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                tracer.end(readySpan);
+                readySignal.complete();
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                tracer.end(readySpan);
+                tracer.finish("LinphoneService.failed");
+                Log.e(TAG, "onCreate: LinphoneManager init failed", throwable);
+                readySignal.fail(throwable);
+                stopSelf();
+            }
+        });
+        tracer.end(span);
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        // 被系统杀死后自动重启，重启后 AccountPool 恢复账号并重新注册
+        return START_STICKY;
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
-        removeAllCallback();
-        LinphoneManager.getLc().destroy();
+        sInstance = null;
+        // 先让尚未结束的等待者收到失败，再换成新的信号；应用注册的回调保留到服务重启之后
+        sReadySignal.fail(new CancellationException("LinphoneService is destroyed before ready"));
+        sReadySignal = new ReadySignal();
+        CallStatsCollector.getInstance().removeListener(mCallStatsListener);
         LinphoneManager.destroy();
-        AlarmManager alarmManager = (AlarmManager) getSystemService(Context.ALARM_SERVICE);
-        if (alarmManager != null) {
-            alarmManager.cancel(mKeepAlivePendingIntent);
-        }
     }
 
     /**
-     * 添加通话状态回调
+     * 输出指标快照，通过 adb shell dumpsys activity service LinphoneService 查看
+     */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        writer.print(MetricsRegistry.getInstance().snapshot().toText());
+    }
+
+    /**
+     * 获取事件总线
+     * @return LinphoneEventBus
+     */
+    public static LinphoneEventBus getEventBus() {
+        return sEventBus;
+    }
+
+    /**
+     * 添加通话状态回调，回调在主线程中执行
      * @param phoneCallback phoneCallback
      */
     public static void addPhoneCallback(PhoneCallback phoneCallback) {
-        sPhoneCallback = phoneCallback;
+        sEventBus.addPhoneCallback(phoneCallback, Looper.getMainLooper());
     }
 
     /**
      * 移除通话状态回调
+     * @param phoneCallback phoneCallback
+     */
+    public static void removePhoneCallback(PhoneCallback phoneCallback) {
+        sEventBus.removePhoneCallback(phoneCallback);
+    }
+
+    /**
+     * 移除所有通话状态回调
      */
     public static void removePhoneCallback() {
-        if (sPhoneCallback != null) {
-            sPhoneCallback = null;
-        }
+        sEventBus.clearPhoneCallbacks();
     }
 
     /**
-     * 添加注册状态回调
+     * 添加注册状态回调，回调在主线程中执行
      * @param registrationCallback registrationCallback
      */
     public static void addRegistrationCallback(RegistrationCallback registrationCallback) {
-        sRegistrationCallback = registrationCallback;
+        sEventBus.addRegistrationCallback(registrationCallback, Looper.getMainLooper());
     }
 
     /**
      * 移除注册状态回调
+     * @param registrationCallback registrationCallback
+     */
+    public static void removeRegistrationCallback(RegistrationCallback registrationCallback) {
+        sEventBus.removeRegistrationCallback(registrationCallback);
+    }
+
+    /**
+     * 移除所有注册状态回调
      */
     public static void removeRegistrationCallback() {
-        if (sRegistrationCallback != null) {
-            sRegistrationCallback = null;
-        }
+        sEventBus.clearRegistrationCallbacks();
     }
 
     /**
@@ -131,45 +208,18 @@ public class LinphoneService extends Service implements LinphoneCoreListener {
     @Override
     public void registrationState(LinphoneCore linphoneCore, LinphoneProxyConfig linphoneProxyConfig,
                                   LinphoneCore.RegistrationState registrationState, String s) {
-        String state = registrationState.toString();
-        if (sRegistrationCallback != null && state.equals(LinphoneCore.RegistrationState.RegistrationNone.toString())) {
-            sRegistrationCallback.registrationNone();
-        } else if (state.equals(LinphoneCore.RegistrationState.RegistrationProgress.toString())) {
-            sRegistrationCallback.registrationProgress();
-        } else if (state.equals(LinphoneCore.RegistrationState.RegistrationOk.toString())) {
-            sRegistrationCallback.registrationOk();
-        } else if (state.equals(LinphoneCore.RegistrationState.RegistrationCleared.toString())) {
-            sRegistrationCallback.registrationCleared();
-        } else if (state.equals(LinphoneCore.RegistrationState.RegistrationFailed.toString())) {
-            sRegistrationCallback.registrationFailed();
+        if (registrationState == LinphoneCore.RegistrationState.RegistrationOk) {
+            // 首次注册成功即冷启动结束
+            StartupTracer.getInstance().finish("registrationOk");
         }
-     }
+        sEventBus.postRegistrationState(registrationState);
+    }
 
     @Override
-    public void callState(final LinphoneCore linphoneCore, final LinphoneCall linphoneCall, LinphoneCall.State state, String s) {
-        if (state == LinphoneCall.State.IncomingReceived && sPhoneCallback != null) {
-            sPhoneCallback.incomingCall(linphoneCall);
-        }
-
-        if (state == LinphoneCall.State.OutgoingInit && sPhoneCallback != null) {
-            sPhoneCallback.outgoingInit();
-        }
-
-        if (state == LinphoneCall.State.Connected && sPhoneCallback != null) {
-            sPhoneCallback.callConnected();
-        }
-
-        if (state == LinphoneCall.State.Error && sPhoneCallback != null) {
-            sPhoneCallback.error();
-        }
-
-        if (state == LinphoneCall.State.CallEnd && sPhoneCallback != null) {
-            sPhoneCallback.callEnd();
-        }
-
-        if (state == LinphoneCall.State.CallReleased && sPhoneCallback != null) {
-            sPhoneCallback.callReleased();
-        }
+    public void callState(LinphoneCore linphoneCore, LinphoneCall linphoneCall, LinphoneCall.State state, String s) {
+        // LinphoneManager 是第一个监听者，CallRegistry 此时已更新；只把线程安全的 CallSession 交给主线程
+        CallRegistry callRegistry = LinphoneManager.getCallRegistry();
+        sEventBus.postCallState(callRegistry == null ? null : callRegistry.getSession(linphoneCall), state);
     }
 
     @Override
@@ -0,0 +1,158 @@
+package com.xuchongyang.easyphone.service;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.xuchongyang.easyphone.callback.ResultCallback;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * LinphoneService 启动完成信号，支持阻塞等待和回调通知
+ */
+
+public class ReadySignal {
+    private static final int STATE_PENDING = 0;
+    private static final int STATE_READY = 1;
+    private static final int STATE_FAILED = 2;
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    private final CountDownLatch mLatch = new CountDownLatch(1);
+    private final List<Listener> mListeners = new ArrayList<>();
+    private volatile int mState = STATE_PENDING;
+    private volatile Throwable mFailure;
+
+    /**
+     * 标记启动完成
+     */
+    void complete() {
+        finish(STATE_READY, null);
+    }
+
+    /**
+     * 标记启动失败
+     * @param throwable 失败原因
+     */
+    void fail(Throwable throwable) {
+        finish(STATE_FAILED, throwable);
+    }
+
+    /**
+     * 是否已启动完成
+     * @return 是否启动完成
+     */
+    public boolean isReady() {
+        return mState == STATE_READY;
+    }
+
+    /**
+     * 是否已结束（启动完成或失败）
+     * @return 是否已结束
+     */
+    public boolean isDone() {
+        return mState != STATE_PENDING;
+    }
+
+    /**
+     * 阻塞等待启动完成，不能在主线程中调用
+     * @param timeout 超时时长
+     * @param unit 时间单位
+     * @throws InterruptedException 等待被中断
+     * @throws ExecutionException 启动失败
+     * @throws TimeoutException 等待超时
+     */
+    public void await(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            throw new IllegalStateException("ReadySignal.await() must not be called on the main thread");
+        }
+        if (!mLatch.await(timeout, unit)) {
+            throw new TimeoutException("LinphoneService is not ready after " + unit.toMillis(timeout) + " ms");
+        }
+        if (mState == STATE_FAILED) {
+            throw new ExecutionException(mFailure);
+        }
+    }
+
+    /**
+     * 添加启动结果回调，回调在主线程中执行，已结束时立即回调
+     * @param timeoutMillis 超时时长，小于等于 0 表示不超时
+     * @param callback 回调，超时时 onFailure 收到 TimeoutException
+     */
+    public void addListener(long timeoutMillis, ResultCallback<Void> callback) {
+        final Listener listener = new Listener(callback);
+        synchronized (this) {
+            if (mState == STATE_PENDING) {
+                mListeners.add(listener);
+                if (timeoutMillis > 0) {
+                    final long timeout = timeoutMillis;
+                    listener.mTimeoutTask = new Runnable() {
+                        @Override
+                        public void run() {
+                            synchronized (ReadySignal.this) {
+                                mListeners.remove(listener);
+                            }
+                            listener.deliver(STATE_FAILED, new TimeoutException(
+                                    "LinphoneService is not ready after " + timeout + " ms"));
+                        }
+                    };
+                    sMainHandler.postDelayed(listener.mTimeoutTask, timeoutMillis);
+                }
+                return;
+            }
+        }
+        listener.deliver(mState, mFailure);
+    }
+
+    private void finish(int state, Throwable failure) {
+        List<Listener> listeners;
+        synchronized (this) {
+            if (mState != STATE_PENDING) {
+                return;
+            }
+            mFailure = failure;
+            mState = state;
+            listeners = new ArrayList<>(mListeners);
+            mListeners.clear();
+        }
+        mLatch.countDown();
+        for (Listener listener : listeners) {
+            listener.deliver(state, failure);
+        }
+    }
+
+    private static class Listener {
+        private final ResultCallback<Void> mCallback;
+        private final AtomicBoolean mDelivered = new AtomicBoolean(false);
+        private Runnable mTimeoutTask;
+
+        Listener(ResultCallback<Void> callback) {
+            mCallback = callback;
+        }
+
+        void deliver(final int state, final Throwable failure) {
+            if (!mDelivered.compareAndSet(false, true)) {
+                return;
+            }
+            if (mTimeoutTask != null) {
+                sMainHandler.removeCallbacks(mTimeoutTask);
+            }
+            sMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (state == STATE_READY) {
+                        mCallback.onSuccess(null);
+                    } else {
+                        mCallback.onFailure(failure);
+                    }
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package com.xuchongyang.easyphone.linphone;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.linphone.core.LinphoneAddress;
+import org.linphone.core.LinphoneAuthInfo;
+import org.linphone.core.LinphoneCore;
+import org.linphone.core.LinphoneCoreException;
+import org.linphone.core.LinphoneProxyConfig;
+import org.linphone.core.LpConfig;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * AccountPool 与 LinphoneCore 中已有账号的差异比较
+ */
+public class AccountPoolTest {
+    private FakeCore mCore;
+    private AccountPool mPool;
+
+    @Before
+    public void setUp() {
+        mCore = new FakeCore();
+        mPool = new AccountPool(new FakeFactory());
+        mPool.start(mCore.mProxy);
+    }
+
+    @Test
+    public void addsMissingAccountsAndMakesFirstDefault() throws LinphoneCoreException {
+        mPool.setAccounts(Arrays.asList(account("1001", "pbx.local", "a"), account("1002", "pbx.local:5080", "b")));
+
+        assertEquals(Arrays.asList("sip:1001@pbx.local", "sip:1002@pbx.local:5080"), mCore.identities());
+        assertSame(mCore.mProxyConfigs.get(0), mCore.mDefault);
+        assertEquals(2, mCore.mAuthInfos.size());
+        assertEquals(LinphoneCore.RegistrationState.RegistrationNone, mPool.getState("sip:1002@pbx.local:5080"));
+    }
+
+    @Test
+    public void unchangedAccountsAreLeftAlone() throws LinphoneCoreException {
+        List<PhoneBean> accounts = Arrays.asList(account("1001", "pbx.local", "a"), account("1002", "pbx.local", "b"));
+        mPool.setAccounts(accounts);
+        List<LinphoneProxyConfig> before = new ArrayList<>(mCore.mProxyConfigs);
+        int changes = mCore.mChanges;
+
+        mPool.setAccounts(accounts);
+
+        assertEquals(before, mCore.mProxyConfigs);
+        assertEquals(changes, mCore.mChanges);
+        assertEquals(0, mCore.mRefreshes);
+    }
+
+    @Test
+    public void removedAccountIsUnregisteredWithItsAuthInfo() throws LinphoneCoreException {
+        mPool.setAccounts(Arrays.asList(account("1001", "pbx.local", "a"), account("1002", "pbx.local", "b")));
+
+        mPool.removeAccount("sip:1001@pbx.local");
+
+        assertEquals(Arrays.asList("sip:1002@pbx.local"), mCore.identities());
+        assertEquals(1, mCore.mAuthInfos.size());
+        assertEquals("1002", mCore.mAuthInfos.get(0).getUsername());
+        assertNull(mPool.getState("sip:1001@pbx.local"));
+        // 原默认账号被移除，第一个剩余账号成为默认账号
+        assertSame(mCore.mProxyConfigs.get(0), mCore.mDefault);
+    }
+
+    @Test
+    public void passwordChangeReplacesAuthInfoAndRefreshes() throws LinphoneCoreException {
+        mPool.setAccounts(Arrays.asList(account("1001", "pbx.local", "a")));
+        LinphoneProxyConfig proxyConfig = mCore.mProxyConfigs.get(0);
+
+        mPool.addAccount(account("1001", "pbx.local", "changed"));
+
+        assertSame(proxyConfig, mCore.mProxyConfigs.get(0));
+        assertEquals(1, mCore.mAuthInfos.size());
+        assertEquals("changed", mCore.mAuthInfos.get(0).getPassword());
+        assertEquals(1, mCore.mRefreshes);
+    }
+
+    @Test
+    public void duplicateAndForeignProxyConfigsAreRemoved() throws LinphoneCoreException {
+        mCore.mProxyConfigs.add(proxyConfig(mCore, "sip:1001@pbx.local"));
+        mCore.mProxyConfigs.add(proxyConfig(mCore, "sip:1001@pbx.local"));
+        mCore.mProxyConfigs.add(proxyConfig(mCore, "sip:9999@other.local"));
+
+        mPool.setAccounts(Arrays.asList(account("1001", "pbx.local", "a")));
+
+        assertEquals(Arrays.asList("sip:1001@pbx.local"), mCore.identities());
+    }
+
+    @Test
+    public void registrationStateIsTrackedOnlyForPoolAccounts() throws LinphoneCoreException {
+        mPool.setAccounts(Arrays.asList(account("1001", "pbx.local", "a")));
+        final List<String> notified = new ArrayList<>();
+        mPool.addListener(new AccountPool.Listener() {
+            @Override
+            public void onAccountStateChanged(String identity, LinphoneCore.RegistrationState state) {
+                notified.add(identity + " " + state);
+            }
+        });
+
+        mPool.onRegistrationState(proxyConfig(mCore, "sip:9999@other.local"),
+                LinphoneCore.RegistrationState.RegistrationOk);
+        mPool.onRegistrationState(mCore.mProxyConfigs.get(0), LinphoneCore.RegistrationState.RegistrationOk);
+
+        assertEquals(Arrays.asList("sip:1001@pbx.local RegistrationOk"), notified);
+        assertNull(mPool.getState("sip:9999@other.local"));
+        assertEquals(LinphoneCore.RegistrationState.RegistrationOk, mPool.getState("sip:1001@pbx.local"));
+    }
+
+    private static PhoneBean account(String userName, String host, String password) {
+        PhoneBean bean = new PhoneBean();
+        bean.setUserName(userName);
+        bean.setHost(host);
+        bean.setPassword(password);
+        return bean;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T fake(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == float.class) {
+            return 0f;
+        }
+        return null;
+    }
+
+    /**
+     * 解析 "sip:用户名@域名[:端口]"
+     */
+    private static LinphoneAddress address(String uri) {
+        final String userName = uri.substring(uri.indexOf(':') + 1, uri.indexOf('@'));
+        String hostPort = uri.substring(uri.indexOf('@') + 1);
+        int colon = hostPort.indexOf(':');
+        final String domain = colon < 0 ? hostPort : hostPort.substring(0, colon);
+        final int port = colon < 0 ? 0 : Integer.parseInt(hostPort.substring(colon + 1));
+        final String asString = uri;
+        return fake(LinphoneAddress.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch (method.getName()) {
+                    case "getUserName":
+                        return userName;
+                    case "getDomain":
+                        return domain;
+                    case "getPort":
+                        return port;
+                    case "asString":
+                    case "asStringUriOnly":
+                        return asString;
+                    default:
+                        return defaultValue(method.getReturnType());
+                }
+            }
+        });
+    }
+
+    private static LinphoneProxyConfig proxyConfig(final FakeCore core, final String identity) {
+        final LinphoneAddress address = address(identity);
+        return fake(LinphoneProxyConfig.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch (method.getName()) {
+                    case "getIdentity":
+                        return identity;
+                    case "getAddress":
+                        return address;
+                    case "refreshRegister":
+                        core.mRefreshes++;
+                        return null;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        return defaultValue(method.getReturnType());
+                }
+            }
+        });
+    }
+
+    private static LinphoneAuthInfo authInfo(final String userName, final String password, final String domain) {
+        return fake(LinphoneAuthInfo.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch (method.getName()) {
+                    case "getUsername":
+                        return userName;
+                    case "getPassword":
+                        return password;
+                    case "getDomain":
+                        return domain;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        return defaultValue(method.getReturnType());
+                }
+            }
+        });
+    }
+
+    private static class FakeFactory implements AccountPool.Factory {
+        @Override
+        public LinphoneAddress createAddress(String uri) {
+            // 只有域名的代理地址
+            return uri.indexOf('@') < 0 ? address("sip:@" + uri.substring(4)) : address(uri);
+        }
+
+        @Override
+        public LinphoneAuthInfo createAuthInfo(String userName, String password, String domain) {
+            return authInfo(userName, password, domain);
+        }
+    }
+
+    /**
+     * 保存账号和认证信息的 LinphoneCore，LpConfig 保存在内存中
+     */
+    private static class FakeCore implements InvocationHandler {
+        final LinphoneCore mProxy = fake(LinphoneCore.class, this);
+        final List<LinphoneProxyConfig> mProxyConfigs = new ArrayList<>();
+        final List<LinphoneAuthInfo> mAuthInfos = new ArrayList<>();
+        final Map<String, Object> mConfigValues = new HashMap<>();
+        final LpConfig mConfig = fake(LpConfig.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if (name.startsWith("set")) {
+                    mConfigValues.put(args[0] + "/" + args[1], args[2]);
+                    return null;
+                } else if (name.startsWith("get")) {
+                    Object value = mConfigValues.get(args[0] + "/" + args[1]);
+                    return value != null ? value : args[2];
+                }
+                return defaultValue(method.getReturnType());
+            }
+        });
+        LinphoneProxyConfig mDefault;
+        int mChanges;
+        int mRefreshes;
+
+        List<String> identities() {
+            List<String> identities = new ArrayList<>();
+            for (LinphoneProxyConfig proxyConfig : mProxyConfigs) {
+                identities.add(proxyConfig.getIdentity());
+            }
+            return identities;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "getConfig":
+                    return mConfig;
+                case "getProxyConfigList":
+                    return mProxyConfigs.toArray(new LinphoneProxyConfig[mProxyConfigs.size()]);
+                case "createProxyConfig":
+                    return proxyConfig(this, (String) args[0]);
+                case "addProxyConfig":
+                    mChanges++;
+                    mProxyConfigs.add((LinphoneProxyConfig) args[0]);
+                    return null;
+                case "removeProxyConfig":
+                    mChanges++;
+                    mProxyConfigs.remove(args[0]);
+                    if (mDefault == args[0]) {
+                        mDefault = null;
+                    }
+                    return null;
+                case "getDefaultProxyConfig":
+                    return mDefault;
+                case "setDefaultProxyConfig":
+                    mDefault = (LinphoneProxyConfig) args[0];
+                    return null;
+                case "findAuthInfo":
+                    for (LinphoneAuthInfo authInfo : mAuthInfos) {
+                        if (authInfo.getUsername().equals(args[0]) && authInfo.getDomain().equals(args[2])) {
+                            return authInfo;
+                        }
+                    }
+                    return null;
+                case "addAuthInfo":
+                    mChanges++;
+                    mAuthInfos.add((LinphoneAuthInfo) args[0]);
+                    return null;
+                case "removeAuthInfo":
+                    mChanges++;
+                    mAuthInfos.remove(args[0]);
+                    return null;
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.xuchongyang.easyphone.linphone;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.linphone.core.LinphoneAddress;
+import org.linphone.core.LinphoneCall;
+import org.linphone.core.LinphoneCallLog;
+import org.linphone.core.LinphoneCore;
+import org.linphone.core.LinphoneCoreException;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * CallRegistry 按 Call-ID 登记通话和按 Call-ID 操作通话
+ */
+public class CallRegistryTest {
+    private CallRegistry mRegistry;
+    private FakeCore mCore;
+
+    @Before
+    public void setUp() {
+        mRegistry = new CallRegistry();
+        mCore = new FakeCore();
+    }
+
+    @Test
+    public void registersCallOnFirstStateAndTracksUpdates() {
+        LinphoneCall call = call("call-1", "sip:1001@pbx.local", LinphoneCall.State.IncomingReceived);
+        mRegistry.onCallState(call, LinphoneCall.State.IncomingReceived);
+
+        CallSession session = mRegistry.getSession("call-1");
+        assertSame(session, mRegistry.getSession(call));
+        assertTrue(session.isIncoming());
+        assertEquals("sip:1001@pbx.local", session.getRemoteAddress());
+        assertEquals(LinphoneCall.State.IncomingReceived, session.getState());
+
+        mRegistry.onCallState(call, LinphoneCall.State.StreamsRunning);
+        assertSame(session, mRegistry.getSession("call-1"));
+        assertEquals(LinphoneCall.State.StreamsRunning, session.getState());
+    }
+
+    @Test
+    public void releasedCallIsRemovedAndKeepsFinalState() {
+        LinphoneCall call = call("call-1", "sip:1001@pbx.local", LinphoneCall.State.OutgoingInit);
+        mRegistry.onCallState(call, LinphoneCall.State.OutgoingInit);
+        CallSession session = mRegistry.getSession("call-1");
+        assertFalse(session.isIncoming());
+
+        mRegistry.onCallState(call, LinphoneCall.State.CallReleased);
+
+        assertNull(mRegistry.getSession("call-1"));
+        assertTrue(mRegistry.getSessions().isEmpty());
+        // 应用持有的快照也能看到通话已释放
+        assertEquals(LinphoneCall.State.CallReleased, session.getState());
+    }
+
+    @Test
+    public void callWithoutCallIdIsIgnored() {
+        mRegistry.onCallState(call(null, "sip:1001@pbx.local", LinphoneCall.State.IncomingReceived),
+                LinphoneCall.State.IncomingReceived);
+        assertTrue(mRegistry.getSessions().isEmpty());
+        assertNull(mRegistry.getSession((String) null));
+    }
+
+    @Test
+    public void latestIncomingSkipsAnsweredCalls() {
+        LinphoneCall answered = call("call-1", "sip:1001@pbx.local", LinphoneCall.State.IncomingReceived);
+        LinphoneCall ringing = call("call-2", "sip:1002@pbx.local", LinphoneCall.State.IncomingReceived);
+        mRegistry.onCallState(answered, LinphoneCall.State.IncomingReceived);
+        mRegistry.onCallState(ringing, LinphoneCall.State.IncomingReceived);
+        mRegistry.onCallState(answered, LinphoneCall.State.Connected);
+
+        assertEquals("call-2", mRegistry.getLatestIncoming().getCallId());
+
+        mRegistry.onCallState(ringing, LinphoneCall.State.CallEnd);
+        assertNull(mRegistry.getLatestIncoming());
+    }
+
+    @Test
+    public void operationsTargetTheCallWithThatId() {
+        LinphoneCall first = call("call-1", "sip:1001@pbx.local", LinphoneCall.State.StreamsRunning);
+        LinphoneCall second = call("call-2", "sip:1002@pbx.local", LinphoneCall.State.StreamsRunning);
+        mRegistry.onCallState(first, LinphoneCall.State.StreamsRunning);
+        mRegistry.onCallState(second, LinphoneCall.State.StreamsRunning);
+
+        mRegistry.hold(mCore.mProxy, "call-2");
+        mRegistry.resume(mCore.mProxy, "call-2");
+        mRegistry.terminate(mCore.mProxy, "call-1");
+
+        assertEquals(Arrays.asList("pauseCall call-2", "resumeCall call-2", "terminateCall call-1"), mCore.mCalls);
+    }
+
+    @Test
+    public void unknownCallIdIsRejected() {
+        try {
+            mRegistry.terminate(mCore.mProxy, "missing");
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertTrue(mCore.mCalls.isEmpty());
+    }
+
+    @Test
+    public void switchToPausesCurrentAndAnswersRingingCall() throws LinphoneCoreException {
+        LinphoneCall current = call("call-1", "sip:1001@pbx.local", LinphoneCall.State.StreamsRunning);
+        LinphoneCall ringing = call("call-2", "sip:1002@pbx.local", LinphoneCall.State.IncomingReceived);
+        mRegistry.onCallState(current, LinphoneCall.State.StreamsRunning);
+        mRegistry.onCallState(ringing, LinphoneCall.State.IncomingReceived);
+        mCore.mCurrentCall = current;
+
+        mRegistry.switchTo(mCore.mProxy, "call-2");
+
+        assertEquals(Arrays.asList("pauseCall call-1", "acceptCall call-2"), mCore.mCalls);
+    }
+
+    @Test
+    public void switchToResumesPausedCall() throws LinphoneCoreException {
+        LinphoneCall paused = call("call-1", "sip:1001@pbx.local", LinphoneCall.State.Paused);
+        mRegistry.onCallState(paused, LinphoneCall.State.Paused);
+
+        mRegistry.switchTo(mCore.mProxy, "call-1");
+
+        assertEquals(Arrays.asList("resumeCall call-1"), mCore.mCalls);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T fake(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static Object defaultValue(Method method) {
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == float.class) {
+            return 0f;
+        }
+        return null;
+    }
+
+    private static LinphoneCall call(final String callId, final String remoteAddress, final LinphoneCall.State state) {
+        final LinphoneCallLog callLog = fake(LinphoneCallLog.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return method.getName().equals("getCallId") ? callId : defaultValue(method);
+            }
+        });
+        final LinphoneAddress address = fake(LinphoneAddress.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return method.getName().startsWith("asString") ? remoteAddress : defaultValue(method);
+            }
+        });
+        return fake(LinphoneCall.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch (method.getName()) {
+                    case "getCallLog":
+                        return callLog;
+                    case "getRemoteAddress":
+                        return address;
+                    case "getState":
+                        return state;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    case "toString":
+                        return callId;
+                    default:
+                        return defaultValue(method);
+                }
+            }
+        });
+    }
+
+    /**
+     * 记录对通话的操作
+     */
+    private static class FakeCore implements InvocationHandler {
+        final LinphoneCore mProxy = fake(LinphoneCore.class, this);
+        final List<String> mCalls = new ArrayList<>();
+        LinphoneCall mCurrentCall;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if (name.equals("getCurrentCall")) {
+                return mCurrentCall;
+            }
+            if (args != null && args.length == 1 && args[0] instanceof LinphoneCall) {
+                mCalls.add(name + " " + LinphoneUtils.getCallId((LinphoneCall) args[0]));
+            }
+            return defaultValue(method);
+        }
+    }
+}
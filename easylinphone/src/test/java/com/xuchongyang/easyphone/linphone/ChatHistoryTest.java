@@ -0,0 +1,156 @@
+package com.xuchongyang.easyphone.linphone;
+
+import android.database.Cursor;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ChatHistory 按 (utc, id) 倒序的分页查询和 forEach 的逐批遍历
+ */
+public class ChatHistoryTest {
+    private static final String PEER = "sip:1001@pbx.local";
+
+    private final List<ChatMessage> mTable = new ArrayList<>();
+    private FakeHistory mHistory;
+
+    @Before
+    public void setUp() {
+        mHistory = new FakeHistory();
+        // 每秒 3 条消息，同一秒内的消息会跨越批次边界
+        for (int id = 1; id <= 2 * ChatHistory.BATCH_SIZE + 50; id++) {
+            mTable.add(message(id, PEER, 1000 + id / 3));
+            mTable.add(message(10000 + id, "sip:1002@pbx.local", 1000 + id / 3));
+        }
+    }
+
+    @Test
+    public void firstPageHasNoKey() {
+        String sql = ChatHistory.pageSql(null, 20);
+        assertFalse(sql.contains("utc <"));
+        assertTrue(sql.endsWith("ORDER BY utc DESC, id DESC LIMIT 20"));
+        assertArrayEquals(new String[]{PEER}, ChatHistory.pageArgs(PEER, null));
+    }
+
+    @Test
+    public void nextPageStartsAfterTheLastMessage() {
+        String sql = ChatHistory.pageSql(message(42, PEER, 1500), 20);
+        assertTrue(sql.contains("remoteContact = ? AND utc <= ? AND (utc < ? OR id < ?)"));
+        assertTrue(sql.endsWith("ORDER BY utc DESC, id DESC LIMIT 20"));
+        // 消息时间为毫秒，数据库中的 utc 为秒
+        assertArrayEquals(new String[]{PEER, "1500", "1500", "42"},
+                ChatHistory.pageArgs(PEER, message(42, PEER, 1500)));
+    }
+
+    @Test
+    public void forEachVisitsEveryMessageOnceFromNewest() {
+        final List<Long> ids = new ArrayList<>();
+        mHistory.forEach(PEER, null, new ChatHistory.Visitor() {
+            @Override
+            public boolean visit(ChatMessage message) {
+                ids.add(message.getId());
+                return true;
+            }
+        });
+
+        int count = 2 * ChatHistory.BATCH_SIZE + 50;
+        assertEquals(count, ids.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(count - i, ids.get(i).longValue());
+        }
+        // 最后一批不满时不再查询
+        assertEquals(3, mHistory.mQueries);
+    }
+
+    @Test
+    public void forEachStopsWhenVisitorReturnsFalse() {
+        final List<Long> ids = new ArrayList<>();
+        mHistory.forEach(PEER, null, new ChatHistory.Visitor() {
+            @Override
+            public boolean visit(ChatMessage message) {
+                ids.add(message.getId());
+                return ids.size() < ChatHistory.BATCH_SIZE + 1;
+            }
+        });
+
+        assertEquals(ChatHistory.BATCH_SIZE + 1, ids.size());
+        assertEquals(2, mHistory.mQueries);
+    }
+
+    @Test
+    public void forEachStartsBeforeTheGivenMessage() {
+        final List<Long> ids = new ArrayList<>();
+        ChatMessage before = mHistory.getMessages(PEER, null, 5).get(4);
+        mHistory.forEach(PEER, before, new ChatHistory.Visitor() {
+            @Override
+            public boolean visit(ChatMessage message) {
+                ids.add(message.getId());
+                return ids.size() < 3;
+            }
+        });
+
+        long newest = 2 * ChatHistory.BATCH_SIZE + 50;
+        assertEquals(Arrays.asList(newest - 5, newest - 6, newest - 7), ids);
+    }
+
+    private static ChatMessage message(final long id, final String peer, final long utc) {
+        Cursor cursor = (Cursor) Proxy.newProxyInstance(Cursor.class.getClassLoader(), new Class<?>[]{Cursor.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        int column = (Integer) args[0];
+                        switch (method.getName()) {
+                            case "getLong":
+                                return column == 0 ? id : utc;
+                            case "getString":
+                                return column == 1 ? peer : null;
+                            default:
+                                return 0;
+                        }
+                    }
+                });
+        return ChatMessage.from(cursor);
+    }
+
+    /**
+     * 在内存表上按 pageSql 的条件和顺序返回一页
+     */
+    private class FakeHistory extends ChatHistory {
+        int mQueries;
+
+        FakeHistory() {
+            super(null, "/nonexistent/linphone-history.db");
+        }
+
+        @Override
+        public List<ChatMessage> getMessages(String peer, ChatMessage before, int limit) {
+            mQueries++;
+            List<ChatMessage> page = new ArrayList<>();
+            for (int i = mTable.size() - 1; i >= 0 && page.size() < limit; i--) {
+                ChatMessage message = mTable.get(i);
+                if (message.getPeer().equals(peer) && (before == null || isBefore(message, before))) {
+                    page.add(message);
+                }
+            }
+            return page;
+        }
+
+        private boolean isBefore(ChatMessage message, ChatMessage before) {
+            long utc = message.getTime() / 1000;
+            long beforeUtc = before.getTime() / 1000;
+            return utc <= beforeUtc && (utc < beforeUtc || message.getId() < before.getId());
+        }
+    }
+}
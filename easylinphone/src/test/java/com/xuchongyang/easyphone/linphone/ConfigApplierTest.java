@@ -0,0 +1,188 @@
+package com.xuchongyang.easyphone.linphone;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.linphone.core.LinphoneCore;
+import org.linphone.core.LinphoneProxyConfig;
+import org.linphone.core.LpConfig;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ConfigApplier 只把变化的配置项应用到 LinphoneCore，传输端口在没有通话时才重建
+ */
+public class ConfigApplierTest {
+    private FakeCore mCore;
+    private ConfigApplier mApplier;
+
+    @Before
+    public void setUp() {
+        mCore = new FakeCore();
+        ConfigStore.getInstance().attach(mCore.mConfig);
+        mApplier = new ConfigApplier(new VideoQualityController(new DefaultVideoQualityPolicy()),
+                new CodecSelector(null, null, null), new JitterBufferTuner(null));
+        mApplier.start(mCore.mProxy);
+    }
+
+    @After
+    public void tearDown() {
+        mApplier.stop();
+        ConfigStore.getInstance().detach();
+    }
+
+    @Test
+    public void unchangedValueIsNotApplied() {
+        List<ConfigKey<?>> changed = ConfigStore.getInstance().edit()
+                .set(ConfigKeys.SIP_INC_TIMEOUT, ConfigKeys.SIP_INC_TIMEOUT.getDefaultValue()).commit();
+
+        assertTrue(changed.isEmpty());
+        assertTrue(mCore.mCalls.isEmpty());
+    }
+
+    @Test
+    public void incomingTimeoutIsAppliedImmediately() {
+        ConfigStore.getInstance().edit().set(ConfigKeys.SIP_INC_TIMEOUT, 45).commit();
+
+        assertEquals(Arrays.asList("setIncomingTimeout 45"), mCore.mCalls);
+    }
+
+    @Test
+    public void expiresChangeOnlyUpdatesAccountsUsingTheOldDefault() {
+        LinphoneProxyConfig usingDefault = mCore.addProxyConfig(3600);
+        LinphoneProxyConfig custom = mCore.addProxyConfig(600);
+
+        ConfigStore.getInstance().edit().set(ConfigKeys.SIP_REGISTER_EXPIRES, 1800).commit();
+
+        assertEquals(1800, usingDefault.getExpires());
+        assertEquals(600, custom.getExpires());
+    }
+
+    @Test
+    public void transportsAreAppliedAtOnceWhenIdle() {
+        ConfigStore.getInstance().edit().set(ConfigKeys.SIP_UDP_PORT, 5070).set(ConfigKeys.SIP_TCP_PORT, 5071)
+                .commit();
+
+        // 两个端口在同一批修改中，只重建一次
+        assertEquals(Arrays.asList("setSipTransports 5070/5071/5061", "refreshRegisters"), mCore.mCalls);
+    }
+
+    @Test
+    public void transportsWaitUntilTheLastCallIsReleased() {
+        mCore.mCallsNb = 2;
+        ConfigStore.getInstance().edit().set(ConfigKeys.SIP_UDP_PORT, 5070).commit();
+        assertTrue(mCore.mCalls.isEmpty());
+
+        mCore.mCallsNb = 1;
+        mApplier.onCallReleased();
+        assertTrue(mCore.mCalls.isEmpty());
+
+        mCore.mCallsNb = 0;
+        mApplier.onCallReleased();
+        assertEquals(Arrays.asList("setSipTransports 5070/5060/5061", "refreshRegisters"), mCore.mCalls);
+
+        // 已应用的修改不会在之后的通话结束时重复应用
+        mApplier.onCallReleased();
+        assertEquals(2, mCore.mCalls.size());
+    }
+
+    @Test
+    public void startupOnlyKeysAreNotApplied() {
+        ConfigStore.getInstance().edit().set(ConfigKeys.RTP_NORTP_TIMEOUT, 60)
+                .set(ConfigKeys.SIP_KEEPALIVE_PERIOD, 15000).commit();
+
+        assertTrue(mCore.mCalls.isEmpty());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T fake(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == float.class) {
+            return 0f;
+        }
+        return null;
+    }
+
+    /**
+     * 记录配置应用操作的 LinphoneCore，LpConfig 保存在内存中
+     */
+    private static class FakeCore implements InvocationHandler {
+        final LinphoneCore mProxy = fake(LinphoneCore.class, this);
+        final List<String> mCalls = new ArrayList<>();
+        final List<LinphoneProxyConfig> mProxyConfigs = new ArrayList<>();
+        final Map<String, Object> mConfigValues = new HashMap<>();
+        final LpConfig mConfig = fake(LpConfig.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if (name.startsWith("set")) {
+                    mConfigValues.put(args[0] + "/" + args[1], args[2]);
+                    return null;
+                } else if (name.startsWith("get")) {
+                    Object value = mConfigValues.get(args[0] + "/" + args[1]);
+                    return value != null ? value : args[2];
+                }
+                return defaultValue(method.getReturnType());
+            }
+        });
+        int mCallsNb;
+
+        LinphoneProxyConfig addProxyConfig(final int expires) {
+            final int[] value = {expires};
+            LinphoneProxyConfig proxyConfig = fake(LinphoneProxyConfig.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if (method.getName().equals("getExpires")) {
+                        return value[0];
+                    } else if (method.getName().equals("setExpires")) {
+                        value[0] = (Integer) args[0];
+                    }
+                    return defaultValue(method.getReturnType());
+                }
+            });
+            mProxyConfigs.add(proxyConfig);
+            return proxyConfig;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "getCallsNb":
+                    return mCallsNb;
+                case "getProxyConfigList":
+                    return mProxyConfigs.toArray(new LinphoneProxyConfig[mProxyConfigs.size()]);
+                case "setIncomingTimeout":
+                    mCalls.add("setIncomingTimeout " + args[0]);
+                    return null;
+                case "setSipTransports":
+                    LinphoneCore.Transports transports = (LinphoneCore.Transports) args[0];
+                    mCalls.add("setSipTransports " + transports.udp + "/" + transports.tcp + "/" + transports.tls);
+                    return null;
+                case "refreshRegisters":
+                    mCalls.add("refreshRegisters");
+                    return null;
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        }
+    }
+}
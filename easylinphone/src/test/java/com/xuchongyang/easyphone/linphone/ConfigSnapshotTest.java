@@ -0,0 +1,76 @@
+package com.xuchongyang.easyphone.linphone;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ConfigSnapshot 的读取默认值和比较
+ */
+public class ConfigSnapshotTest {
+    private ConfigSnapshot mEmpty;
+
+    @Before
+    public void setUp() {
+        // 不读取任何配置项时不访问 LpConfig
+        mEmpty = ConfigSnapshot.load(null, Collections.<ConfigKey<?>>emptyList());
+    }
+
+    @Test
+    public void missingKeyReturnsDefault() {
+        assertEquals(Integer.valueOf(60), mEmpty.get(ConfigKeys.RTP_AUDIO_JITT_COMP));
+    }
+
+    @Test
+    public void equalSnapshotsHaveNoDiff() {
+        ConfigSnapshot a = snapshot(ConfigKeys.RTP_AUDIO_JITT_COMP, 80);
+        ConfigSnapshot b = snapshot(ConfigKeys.RTP_AUDIO_JITT_COMP, 80);
+        assertTrue(a.diff(b).isEmpty());
+    }
+
+    @Test
+    public void diffReportsChangedValues() {
+        ConfigSnapshot a = snapshot(ConfigKeys.RTP_AUDIO_JITT_COMP, 80);
+        ConfigSnapshot b = a.with(changes(ConfigKeys.RTP_AUDIO_JITT_COMP, 120));
+        assertEquals(Collections.<ConfigKey<?>>singletonList(ConfigKeys.RTP_AUDIO_JITT_COMP), a.diff(b));
+        assertEquals(Integer.valueOf(80), a.get(ConfigKeys.RTP_AUDIO_JITT_COMP));
+        assertEquals(Integer.valueOf(120), b.get(ConfigKeys.RTP_AUDIO_JITT_COMP));
+    }
+
+    @Test
+    public void diffReportsKeysPresentOnOneSide() {
+        ConfigSnapshot a = snapshot(ConfigKeys.RTP_AUDIO_JITT_COMP, 80);
+        ConfigSnapshot b = a.with(changes(ConfigKeys.CODEC_AUDIO_ORDER, "opus/48000"));
+        assertEquals(Collections.<ConfigKey<?>>singletonList(ConfigKeys.CODEC_AUDIO_ORDER), a.diff(b));
+        assertEquals(Collections.<ConfigKey<?>>singletonList(ConfigKeys.CODEC_AUDIO_ORDER), b.diff(a));
+    }
+
+    @Test
+    public void diffHandlesNullValues() {
+        ConfigSnapshot a = snapshot(ConfigKeys.CODEC_AUDIO_ORDER, null);
+        ConfigSnapshot b = snapshot(ConfigKeys.CODEC_AUDIO_ORDER, null);
+        ConfigSnapshot c = snapshot(ConfigKeys.CODEC_AUDIO_ORDER, "opus/48000");
+        assertTrue(a.diff(b).isEmpty());
+        List<ConfigKey<?>> changed = a.diff(c);
+        assertEquals(1, changed.size());
+        assertEquals(ConfigKeys.CODEC_AUDIO_ORDER, changed.get(0));
+        assertEquals(1, c.diff(a).size());
+    }
+
+    private ConfigSnapshot snapshot(ConfigKey<?> key, Object value) {
+        return mEmpty.with(changes(key, value));
+    }
+
+    private static Map<ConfigKey<?>, Object> changes(ConfigKey<?> key, Object value) {
+        Map<ConfigKey<?>, Object> changes = new HashMap<>();
+        changes.put(key, value);
+        return changes;
+    }
+}
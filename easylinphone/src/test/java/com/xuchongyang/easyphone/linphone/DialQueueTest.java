@@ -0,0 +1,195 @@
+package com.xuchongyang.easyphone.linphone;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.linphone.core.Reason;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * DialQueue 的排队、重试和拨号间隔
+ */
+public class DialQueueTest {
+    private FakeEnvironment mEnvironment;
+    private DialQueue mQueue;
+    private final List<DialJob> mFinished = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mEnvironment = new FakeEnvironment();
+        mQueue = new DialQueue(mEnvironment);
+        mQueue.setPacing(0);
+        mQueue.setRetry(3, 1000);
+        mQueue.addListener(new DialQueue.Listener() {
+            @Override
+            public void onDialJobFinished(DialJob job) {
+                mFinished.add(job);
+            }
+        });
+        mQueue.start(null);
+    }
+
+    @Test
+    public void dialsOneAtATimeByDefault() {
+        mQueue.enqueue(Arrays.asList("1001", "1002"), false);
+        mEnvironment.runDue();
+        assertEquals(Arrays.asList("1001"), mEnvironment.mDialed);
+
+        mQueue.onCallEnded("call-1", Reason.Declined);
+        mEnvironment.runDue();
+        assertEquals(Arrays.asList("1001", "1002"), mEnvironment.mDialed);
+    }
+
+    @Test
+    public void failedDialsAreRequeuedAfterWalkingThePendingQueue() {
+        mEnvironment.mFailDials = true;
+        mQueue.setMaxConcurrent(3);
+        List<DialJob> jobs = mQueue.enqueue(Arrays.asList("1001", "1002", "1003"), false);
+        mEnvironment.runDue();
+        assertEquals(3, mEnvironment.mDialed.size());
+        for (DialJob job : jobs) {
+            assertEquals(DialJob.STATUS_PENDING, job.getStatus());
+            assertEquals(1, job.getAttempts());
+        }
+
+        mEnvironment.advance(1000);
+        assertEquals(6, mEnvironment.mDialed.size());
+    }
+
+    @Test
+    public void retriesWithExponentialBackoff() {
+        List<DialJob> jobs = mQueue.enqueue(Arrays.asList("1001"), false);
+        mEnvironment.runDue();
+        mQueue.onCallEnded("call-1", Reason.Busy);
+
+        mEnvironment.advance(999);
+        assertEquals(1, mEnvironment.mDialed.size());
+        mEnvironment.advance(1);
+        assertEquals(2, mEnvironment.mDialed.size());
+
+        mQueue.onCallEnded("call-2", Reason.Busy);
+        mEnvironment.advance(1999);
+        assertEquals(2, mEnvironment.mDialed.size());
+        mEnvironment.advance(1);
+        assertEquals(3, mEnvironment.mDialed.size());
+
+        mQueue.onCallEnded("call-3", Reason.Busy);
+        mEnvironment.advance(60000);
+        assertEquals(3, mEnvironment.mDialed.size());
+        assertEquals(DialJob.STATUS_FAILED, jobs.get(0).getStatus());
+        assertEquals(jobs, mFinished);
+        assertEquals(1, mQueue.getFailedCount());
+    }
+
+    @Test
+    public void permanentFailureIsNotRetried() {
+        List<DialJob> jobs = mQueue.enqueue(Arrays.asList("1001"), false);
+        mEnvironment.runDue();
+        mQueue.onCallEnded("call-1", Reason.Declined);
+        mEnvironment.advance(60000);
+        assertEquals(1, mEnvironment.mDialed.size());
+        assertEquals(DialJob.STATUS_FAILED, jobs.get(0).getStatus());
+    }
+
+    @Test
+    public void connectedCallCompletes() {
+        List<DialJob> jobs = mQueue.enqueue(Arrays.asList("1001"), false);
+        mEnvironment.runDue();
+        mQueue.onCallConnected("call-1");
+        mQueue.onCallEnded("call-1", Reason.None);
+        assertEquals(DialJob.STATUS_COMPLETED, jobs.get(0).getStatus());
+        assertEquals(1, mQueue.getCompletedCount());
+    }
+
+    @Test
+    public void pacingSpacesOutDials() {
+        mQueue.setMaxConcurrent(2);
+        mQueue.setPacing(500);
+        mQueue.enqueue(Arrays.asList("1001", "1002"), false);
+        mEnvironment.runDue();
+        assertEquals(1, mEnvironment.mDialed.size());
+        mEnvironment.advance(499);
+        assertEquals(1, mEnvironment.mDialed.size());
+        mEnvironment.advance(1);
+        assertEquals(2, mEnvironment.mDialed.size());
+    }
+
+    @Test
+    public void cancelAllCancelsPendingJobs() {
+        List<DialJob> jobs = mQueue.enqueue(Arrays.asList("1001", "1002"), false);
+        mEnvironment.runDue();
+        mQueue.cancelAll();
+        mEnvironment.runDue();
+        assertEquals(DialJob.STATUS_DIALING, jobs.get(0).getStatus());
+        assertEquals(DialJob.STATUS_CANCELLED, jobs.get(1).getStatus());
+    }
+
+    /**
+     * 手动推进的时钟和任务队列，所有任务都在“核心线程”中执行
+     */
+    private static class FakeEnvironment implements DialQueue.Environment {
+        private final List<Runnable> mTasks = new ArrayList<>();
+        private final List<Long> mDueTimes = new ArrayList<>();
+        private final List<String> mDialed = new ArrayList<>();
+        private long mNow = 10000;
+        private boolean mFailDials;
+
+        @Override
+        public long now() {
+            return mNow;
+        }
+
+        @Override
+        public boolean isCoreThread() {
+            return true;
+        }
+
+        @Override
+        public void post(Runnable task, long delayMillis) {
+            mTasks.add(task);
+            mDueTimes.add(mNow + delayMillis);
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            for (int i = mTasks.size() - 1; i >= 0; i--) {
+                if (mTasks.get(i) == task) {
+                    mTasks.remove(i);
+                    mDueTimes.remove(i);
+                }
+            }
+        }
+
+        @Override
+        public String dial(String number, boolean video) {
+            mDialed.add(number);
+            return mFailDials ? null : "call-" + mDialed.size();
+        }
+
+        void advance(long millis) {
+            mNow += millis;
+            runDue();
+        }
+
+        void runDue() {
+            while (true) {
+                int next = -1;
+                for (int i = 0; i < mTasks.size(); i++) {
+                    if (mDueTimes.get(i) <= mNow && (next < 0 || mDueTimes.get(i) < mDueTimes.get(next))) {
+                        next = i;
+                    }
+                }
+                if (next < 0) {
+                    return;
+                }
+                Runnable task = mTasks.remove(next);
+                mDueTimes.remove(next);
+                task.run();
+            }
+        }
+    }
+}
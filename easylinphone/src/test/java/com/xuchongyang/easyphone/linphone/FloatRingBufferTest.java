@@ -0,0 +1,93 @@
+package com.xuchongyang.easyphone.linphone;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * FloatRingBuffer 写满后的覆盖和统计
+ */
+public class FloatRingBufferTest {
+    private static final float DELTA = 1e-6f;
+
+    @Test
+    public void keepsInsertionOrderBeforeFull() {
+        FloatRingBuffer buffer = new FloatRingBuffer(4);
+        buffer.add(1);
+        buffer.add(2);
+        assertEquals(2, buffer.size());
+        assertEquals(4, buffer.capacity());
+        assertEquals(1, buffer.get(0), DELTA);
+        assertEquals(2, buffer.get(1), DELTA);
+        assertEquals(2, buffer.last(), DELTA);
+        assertEquals(1.5f, buffer.mean(), DELTA);
+    }
+
+    @Test
+    public void wrapsAroundAndDropsOldest() {
+        FloatRingBuffer buffer = new FloatRingBuffer(3);
+        for (int i = 1; i <= 5; i++) {
+            buffer.add(i);
+        }
+        assertEquals(3, buffer.size());
+        assertEquals(3, buffer.get(0), DELTA);
+        assertEquals(4, buffer.get(1), DELTA);
+        assertEquals(5, buffer.get(2), DELTA);
+        assertEquals(5, buffer.last(), DELTA);
+        assertEquals(4, buffer.mean(), DELTA);
+        assertEquals(3, buffer.min(), DELTA);
+        assertEquals(5, buffer.max(), DELTA);
+        assertEquals(4, buffer.percentile(50), DELTA);
+        assertEquals(5, buffer.percentile(100), DELTA);
+    }
+
+    @Test
+    public void wrapsAroundManyTimes() {
+        FloatRingBuffer buffer = new FloatRingBuffer(4);
+        for (int i = 0; i < 1003; i++) {
+            buffer.add(i);
+        }
+        assertEquals(999, buffer.get(0), DELTA);
+        assertEquals(1002, buffer.get(3), DELTA);
+        assertEquals(1002, buffer.last(), DELTA);
+        assertEquals(1000.5f, buffer.mean(), 1e-3f);
+    }
+
+    @Test
+    public void getOutsideSizeThrows() {
+        FloatRingBuffer buffer = new FloatRingBuffer(2);
+        buffer.add(1);
+        try {
+            buffer.get(1);
+            fail("expected IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void clearEmptiesBuffer() {
+        FloatRingBuffer buffer = new FloatRingBuffer(2);
+        buffer.add(1);
+        buffer.add(2);
+        buffer.add(3);
+        buffer.clear();
+        assertEquals(0, buffer.size());
+        assertEquals(0, buffer.last(), DELTA);
+        assertEquals(0, buffer.mean(), DELTA);
+        buffer.add(7);
+        assertEquals(7, buffer.get(0), DELTA);
+        assertEquals(7, buffer.mean(), DELTA);
+    }
+
+    @Test
+    public void rejectsNonPositiveCapacity() {
+        try {
+            new FloatRingBuffer(0);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.xuchongyang.easyphone.linphone;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.linphone.core.LpConfig;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JitterBufferTuner 的抖动学习（指数加权平均）和缓冲大小计算
+ */
+public class JitterBufferTunerTest {
+    private static final String KEY = "wifi_office_audio_v2";
+    private static final float DELTA = 0.001f;
+
+    private final Map<String, Float> mValues = new HashMap<>();
+    private LpConfig mConfig;
+
+    @Before
+    public void setUp() {
+        mConfig = (LpConfig) Proxy.newProxyInstance(LpConfig.class.getClassLoader(), new Class<?>[]{LpConfig.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("setFloat")) {
+                            mValues.put((String) args[1], (Float) args[2]);
+                        } else if (method.getName().equals("getFloat")) {
+                            Float value = mValues.get(args[1]);
+                            return value != null ? value : args[2];
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    @Test
+    public void firstCallIsTakenAsIs() {
+        assertTrue(JitterBufferTuner.learn(mConfig, KEY, summary(10, 6, 14)));
+        // 平均值与峰值的中点
+        assertEquals(10f, mValues.get(KEY), DELTA);
+    }
+
+    @Test
+    public void laterCallsAreWeightedAverages() {
+        JitterBufferTuner.learn(mConfig, KEY, summary(10, 10, 10));
+        JitterBufferTuner.learn(mConfig, KEY, summary(10, 20, 20));
+        // 10 + 0.3 × (20 - 10)
+        assertEquals(13f, mValues.get(KEY), DELTA);
+        JitterBufferTuner.learn(mConfig, KEY, summary(10, 3, 3));
+        // 13 + 0.3 × (3 - 13)
+        assertEquals(10f, mValues.get(KEY), DELTA);
+    }
+
+    @Test
+    public void shortCallsAreNotLearned() {
+        assertFalse(JitterBufferTuner.learn(mConfig, KEY, summary(4, 50, 50)));
+        assertFalse(JitterBufferTuner.learn(mConfig, KEY, null));
+        assertTrue(mValues.isEmpty());
+    }
+
+    @Test
+    public void compIsBasePlusMultipleOfJitterWithinBounds() {
+        assertEquals(60, JitterBufferTuner.compFor(-1, 60));
+        // 20 + 10 × 3
+        assertEquals(50, JitterBufferTuner.compFor(10, 60));
+        assertEquals(20, JitterBufferTuner.compFor(0, 60));
+        assertEquals(250, JitterBufferTuner.compFor(500, 60));
+    }
+
+    private static CallStatsSummary summary(int samples, float meanJitter, float maxJitter) {
+        int count = CallStatsSummary.METRICS.length;
+        float[] mean = new float[count];
+        float[] max = new float[count];
+        mean[CallStatsSummary.Metric.LOCAL_JITTER.ordinal()] = meanJitter;
+        max[CallStatsSummary.Metric.LOCAL_JITTER.ordinal()] = maxJitter;
+        return new CallStatsSummary("call-1", false, samples, new float[count], mean, new float[count], max);
+    }
+}
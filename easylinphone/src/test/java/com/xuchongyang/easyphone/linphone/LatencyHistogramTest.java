@@ -0,0 +1,112 @@
+package com.xuchongyang.easyphone.linphone;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * LatencyHistogram 的分桶、百分位数和按窗口清空
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketBoundsIncreaseFromOneMillisecondToTwoMinutes() {
+        long[] bounds = new LatencyHistogram().snapshot().getBucketBounds();
+        assertEquals(1, bounds[0]);
+        for (int i = 1; i < bounds.length; i++) {
+            assertTrue("bounds must increase at " + i, bounds[i] > bounds[i - 1]);
+            // 约 20% 递增，小值处至少加 1
+            assertTrue("bound step too large at " + i, bounds[i] <= Math.ceil(bounds[i - 1] * 1.2) + 1);
+        }
+        assertTrue(bounds[bounds.length - 1] >= 120000);
+        assertTrue(bounds[bounds.length - 2] < 120000);
+    }
+
+    @Test
+    public void valueOnBoundGoesToThatBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] bounds = histogram.snapshot().getBucketBounds();
+        histogram.record(0);
+        histogram.record(bounds[0]);
+        histogram.record(bounds[3]);
+        histogram.record(bounds[3] + 1);
+        histogram.record(bounds[bounds.length - 1] + 1);
+        histogram.record(-1);
+
+        long[] counts = histogram.snapshot().getBucketCounts();
+        assertEquals(bounds.length + 1, counts.length);
+        assertEquals(2, counts[0]);
+        assertEquals(1, counts[3]);
+        assertEquals(1, counts[4]);
+        assertEquals(1, counts[counts.length - 1]);
+        assertEquals(5, histogram.snapshot().getCount());
+    }
+
+    @Test
+    public void percentilesAreWithinBucketWidth() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(1000, snapshot.getMax());
+        assertEquals(500, snapshot.getMean());
+        assertWithin(500, snapshot.getPercentile(50));
+        assertWithin(900, snapshot.getPercentile(90));
+        assertWithin(990, snapshot.getPercentile(99));
+        assertEquals(1000, snapshot.getPercentile(100));
+        assertEquals(1, snapshot.getPercentile(0));
+    }
+
+    @Test
+    public void overflowBucketReportsMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(10);
+        histogram.record(500000);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(500000, snapshot.getPercentile(99));
+        assertWithin(10, snapshot.getPercentile(50));
+    }
+
+    @Test
+    public void emptySnapshotReturnsZero() {
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getMean());
+        assertEquals(0, snapshot.getPercentile(50));
+    }
+
+    @Test
+    public void snapshotAndResetStartsNewWindow() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(20);
+        histogram.record(40);
+
+        LatencyHistogram.Snapshot window = histogram.snapshotAndReset();
+        assertEquals(2, window.getCount());
+        assertEquals(40, window.getMax());
+        assertEquals(30, window.getMean());
+
+        LatencyHistogram.Snapshot empty = histogram.snapshot();
+        assertEquals(0, empty.getCount());
+        assertEquals(0, empty.getMax());
+
+        histogram.record(5);
+        LatencyHistogram.Snapshot next = histogram.snapshotAndReset();
+        assertEquals(1, next.getCount());
+        assertEquals(5, next.getMax());
+        // 之前取得的快照不受影响
+        assertEquals(2, window.getCount());
+    }
+
+    /**
+     * 误差不超过所在桶的宽度，约 20%
+     */
+    private static void assertWithin(long expected, long actual) {
+        long tolerance = Math.max(1, (long) Math.ceil(expected * 0.2));
+        assertTrue("expected " + expected + " +/- " + tolerance + " but was " + actual,
+                Math.abs(actual - expected) <= tolerance);
+    }
+}
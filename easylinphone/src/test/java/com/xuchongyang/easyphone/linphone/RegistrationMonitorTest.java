@@ -0,0 +1,61 @@
+package com.xuchongyang.easyphone.linphone;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * RegistrationMonitor 失败后的退避时间和随机抖动范围
+ */
+public class RegistrationMonitorTest {
+    private static final long BASE = 5000;
+    private static final long MAX = 10 * 60 * 1000;
+    private static final int SAMPLES = 2000;
+
+    private RegistrationMonitor mMonitor;
+
+    @Before
+    public void setUp() {
+        // 计算退避时间不使用核心线程
+        mMonitor = new RegistrationMonitor(null);
+    }
+
+    @Test
+    public void backoffDoublesWithConsecutiveFailures() {
+        assertRange(BASE, 1, RegistrationMonitor.FailureClass.NETWORK);
+        assertRange(BASE * 2, 2, RegistrationMonitor.FailureClass.NETWORK);
+        assertRange(BASE * 8, 4, RegistrationMonitor.FailureClass.SERVER);
+        assertRange(BASE * 64, 7, RegistrationMonitor.FailureClass.OTHER);
+    }
+
+    @Test
+    public void backoffIsCappedAtMax() {
+        assertRange(MAX, 8, RegistrationMonitor.FailureClass.NETWORK);
+        assertRange(MAX, 30, RegistrationMonitor.FailureClass.NETWORK);
+        // 移位次数有上限，不会溢出
+        assertRange(MAX, Integer.MAX_VALUE, RegistrationMonitor.FailureClass.SERVER);
+    }
+
+    @Test
+    public void authFailureUsesMaxBackoffImmediately() {
+        assertRange(MAX, 1, RegistrationMonitor.FailureClass.AUTH);
+    }
+
+    /**
+     * 退避时间落在 [backoff / 2, backoff) 内，且抖动覆盖大部分区间
+     */
+    private void assertRange(long backoff, int failures, RegistrationMonitor.FailureClass failureClass) {
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < SAMPLES; i++) {
+            long delay = mMonitor.backoffMillis(failures, failureClass);
+            assertTrue(failureClass + " x" + failures + ": " + delay + " below " + backoff / 2,
+                    delay >= backoff / 2);
+            assertTrue(failureClass + " x" + failures + ": " + delay + " not below " + backoff, delay < backoff);
+            min = Math.min(min, delay);
+            max = Math.max(max, delay);
+        }
+        assertTrue("jitter too narrow: " + min + " - " + max, min < backoff * 0.6 && max > backoff * 0.9);
+    }
+}
@@ -0,0 +1,65 @@
+package com.xuchongyang.easyphone.linphone;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * RegistrationRefreshScheduler 的刷新时间和唤醒时间计算
+ */
+public class RegistrationRefreshSchedulerTest {
+    private static final long NOW = 1000000;
+
+    @Test
+    public void refreshesAtNinetyPercentOfExpiresWithoutJitter() {
+        assertEquals(NOW + 3240000, RegistrationRefreshScheduler.refreshTime(NOW, 3600, 0f));
+        assertEquals(NOW + 54000, RegistrationRefreshScheduler.refreshTime(NOW, 60, 0f));
+    }
+
+    @Test
+    public void jitterIsFivePercentOfShortExpires() {
+        // 60 s 的 5% 为 3 s，小于抖动上限
+        long earliest = RegistrationRefreshScheduler.refreshTime(NOW, 60, 0.999999f);
+        assertTrue(earliest > NOW + 54000 - 3000);
+        assertEquals(NOW + 54000 - 1500, RegistrationRefreshScheduler.refreshTime(NOW, 60, 0.5f));
+    }
+
+    @Test
+    public void jitterIsCappedForLongExpires() {
+        // 3600 s 的 5% 为 180 s，抖动不超过 30 s
+        assertEquals(NOW + 3240000 - 15000, RegistrationRefreshScheduler.refreshTime(NOW, 3600, 0.5f));
+        long earliest = RegistrationRefreshScheduler.refreshTime(NOW, 3600, 0.999999f);
+        assertTrue(earliest > NOW + 3240000 - 30000);
+    }
+
+    @Test
+    public void largeExpiresDoesNotOverflow() {
+        // 秒转毫秒按 long 计算
+        assertEquals(NOW + (long) (Integer.MAX_VALUE * 1000L * 0.9f),
+                RegistrationRefreshScheduler.refreshTime(NOW, Integer.MAX_VALUE, 0f));
+    }
+
+    @Test
+    public void wakesUpAtEarliestRefresh() {
+        assertEquals(NOW + 600000, RegistrationRefreshScheduler.nextWakeupTime(NOW, NOW + 600000, 0));
+    }
+
+    @Test
+    public void natKeepAliveWakesUpEarlier() {
+        assertEquals(NOW + 120000, RegistrationRefreshScheduler.nextWakeupTime(NOW, NOW + 600000, 120000));
+        assertEquals(NOW + 600000, RegistrationRefreshScheduler.nextWakeupTime(NOW, NOW + 600000, 900000));
+    }
+
+    @Test
+    public void wakeupIsNotSoonerThanMinInterval() {
+        assertEquals(NOW + 15000, RegistrationRefreshScheduler.nextWakeupTime(NOW, NOW - 5000, 0));
+        assertEquals(NOW + 15000, RegistrationRefreshScheduler.nextWakeupTime(NOW, NOW + 600000, 1000));
+    }
+
+    @Test
+    public void noWakeupWithoutAccountsOrKeepAlive() {
+        assertEquals(Long.MAX_VALUE, RegistrationRefreshScheduler.nextWakeupTime(NOW, Long.MAX_VALUE, 0));
+        assertEquals(NOW + 120000, RegistrationRefreshScheduler.nextWakeupTime(NOW, Long.MAX_VALUE, 120000));
+    }
+}
@@ -0,0 +1,93 @@
+package com.xuchongyang.easyphone.linphone;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * StallWatchdog 的阈值判断、按来源统计和最近卡顿列表
+ */
+public class StallWatchdogTest {
+    private static final long MILLIS = 1000000L;
+
+    private StallWatchdog mWatchdog;
+
+    @Before
+    public void setUp() {
+        mWatchdog = StallWatchdog.getInstance();
+        mWatchdog.reset();
+        mWatchdog.setThresholdMillis(StallWatchdog.DEFAULT_THRESHOLD_MILLIS);
+    }
+
+    @After
+    public void tearDown() {
+        mWatchdog.reset();
+        mWatchdog.setThresholdMillis(StallWatchdog.DEFAULT_THRESHOLD_MILLIS);
+    }
+
+    @Test
+    public void shortSectionsAreNotRecorded() {
+        assertEquals(-1, mWatchdog.stallNanos(System.nanoTime()));
+        mWatchdog.end("iterate", System.nanoTime());
+        assertTrue(mWatchdog.getCounts().isEmpty());
+    }
+
+    @Test
+    public void sectionsOverThresholdAreRecorded() {
+        long start = System.nanoTime() - 20 * MILLIS;
+        assertTrue(mWatchdog.stallNanos(start) >= 20 * MILLIS);
+
+        mWatchdog.end("iterate", start);
+
+        assertEquals(Integer.valueOf(1), mWatchdog.getCounts().get("iterate"));
+        assertTrue(mWatchdog.getWorstCases().get("iterate") >= 20);
+    }
+
+    @Test
+    public void thresholdIsAtLeastOneMillisecond() {
+        mWatchdog.setThresholdMillis(0);
+        assertEquals(-1, mWatchdog.stallNanos(System.nanoTime() + MILLIS));
+        assertTrue(mWatchdog.stallNanos(System.nanoTime() - 2 * MILLIS) >= 0);
+    }
+
+    @Test
+    public void countsAndWorstCasesArePerSource() {
+        mWatchdog.record("iterate", 30 * MILLIS);
+        mWatchdog.record("iterate", 50 * MILLIS);
+        mWatchdog.record("iterate", 40 * MILLIS);
+        mWatchdog.record("callback:incoming_call", 17 * MILLIS);
+
+        assertEquals(Integer.valueOf(3), mWatchdog.getCounts().get("iterate"));
+        assertEquals(Integer.valueOf(1), mWatchdog.getCounts().get("callback:incoming_call"));
+        assertEquals(Long.valueOf(50), mWatchdog.getWorstCases().get("iterate"));
+        assertEquals(Long.valueOf(17), mWatchdog.getWorstCases().get("callback:incoming_call"));
+    }
+
+    @Test
+    public void recentStallsKeepTheLatestThirtyTwo() {
+        for (int i = 1; i <= 40; i++) {
+            mWatchdog.record("command:" + i, (100 + i) * MILLIS);
+        }
+
+        List<StallWatchdog.Stall> recent = mWatchdog.getRecentStalls();
+        assertEquals(32, recent.size());
+        assertEquals("command:9", recent.get(0).getSource());
+        assertEquals("command:40", recent.get(31).getSource());
+        assertEquals(140, recent.get(31).getDurationMillis());
+        assertEquals(Thread.currentThread().getName(), recent.get(31).getThreadName());
+    }
+
+    @Test
+    public void resetClearsEverything() {
+        mWatchdog.record("iterate", 30 * MILLIS);
+        mWatchdog.reset();
+        assertTrue(mWatchdog.getCounts().isEmpty());
+        assertTrue(mWatchdog.getWorstCases().isEmpty());
+        assertTrue(mWatchdog.getRecentStalls().isEmpty());
+    }
+}